@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.nio.charset.Charset;
+
+/**
+ * The compact JSON text of a frozen object or array, kept so that writing it
+ * again only copies the text. See {@link JsonObject#cacheJson()}.
+ */
+final class CachedJson {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    final String chars;
+
+    /** The UTF-8 encoding of {@link #chars}, or null until first needed. */
+    private volatile byte[] utf8;
+
+    CachedJson(String chars) {
+        this.chars = chars;
+    }
+
+    byte[] utf8() {
+        byte[] result = utf8;
+        if (result == null) {
+            result = utf8 = chars.getBytes(UTF_8);
+        }
+        return result;
+    }
+}
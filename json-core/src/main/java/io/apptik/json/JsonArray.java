@@ -54,7 +54,16 @@ import static io.apptik.json.JsonNull.JSON_NULL;
 public final class JsonArray extends JsonElement implements List<JsonElement>, Freezable<JsonArray> {
 
     private volatile boolean frozen = false;
-    private final List<JsonElement> values;
+
+    /** The JSON text of this array if it is cached, see {@link #cacheJson()}. */
+    private volatile CachedJson cachedJson;
+
+    /** The hash code of this array once it is frozen, or 0 until first needed. */
+    private int hashCode;
+    private List<JsonElement> values;
+
+    /** Where to read the values from when first needed, or null once they are read. */
+    private LazyArray lazy;
 
     /**
      * Creates a {@code JsonArray} with no values.
@@ -63,6 +72,21 @@ public final class JsonArray extends JsonElement implements List<JsonElement>, F
         values = new ArrayList<JsonElement>();
     }
 
+    /**
+     * Creates a {@code JsonArray} backed by the given primitive values.
+     */
+    JsonArray(PrimitiveList values) {
+        this.values = values;
+    }
+
+    /**
+     * Creates a {@code JsonArray} whose values are read from {@code lazy} when
+     * first needed.
+     */
+    JsonArray(LazyArray lazy) {
+        this.lazy = lazy;
+    }
+
     /**
      * Creates a new {@code JsonArray} by copying all values from the given
      * collection.
@@ -84,11 +108,35 @@ public final class JsonArray extends JsonElement implements List<JsonElement>, F
 
     /**
      * Creates a new {@code JsonArray} with values from the given primitive array.
+     * The values of {@code double[]}, {@code long[]}, {@code int[]} and
+     * {@code boolean[]} arrays are copied as primitives.
      */
     public JsonArray(Object array) throws JsonException {
         if (!array.getClass().isArray()) {
             throw new JsonException("Not a primitive array: " + array.getClass());
         }
+        if (array instanceof double[]) {
+            double[] doubles = ((double[]) array).clone();
+            for (double d : doubles) {
+                JsonNumber.checkDouble(d);
+            }
+            values = new PrimitiveList.OfDouble(doubles);
+            return;
+        } else if (array instanceof long[]) {
+            values = new PrimitiveList.OfLong(((long[]) array).clone());
+            return;
+        } else if (array instanceof int[]) {
+            int[] ints = (int[]) array;
+            long[] longs = new long[ints.length];
+            for (int i = 0; i < ints.length; i++) {
+                longs[i] = ints[i];
+            }
+            values = new PrimitiveList.OfLong(longs);
+            return;
+        } else if (array instanceof boolean[]) {
+            values = new PrimitiveList.OfBoolean(((boolean[]) array).clone());
+            return;
+        }
         final int length = Array.getLength(array);
         values = new ArrayList<JsonElement>(length);
         for (int i = 0; i < length; ++i) {
@@ -100,7 +148,7 @@ public final class JsonArray extends JsonElement implements List<JsonElement>, F
      * Returns the number of values in this array.
      */
     public int length() {
-        return values.size();
+        return values().size();
     }
 
     /**
@@ -221,10 +269,12 @@ public final class JsonArray extends JsonElement implements List<JsonElement>, F
      */
     public JsonArray put(int index, Object value) throws JsonException {
         checkIfFrozen();
+        JsonElement element = wrap(value);
+        List<JsonElement> values = valuesFor(index < values().size() ? element : null);
         while (values.size() <= index) {
             values.add(JSON_NULL);
         }
-        values.set(index, wrap(value));
+        values.set(index, element);
         return this;
     }
 
@@ -246,20 +296,20 @@ public final class JsonArray extends JsonElement implements List<JsonElement>, F
      */
     public JsonElement get(int index) throws JsonException {
         try {
-            JsonElement value = values.get(index);
+            JsonElement value = values().get(index);
             if (value == null) {
                 throw new JsonException("Value at " + index + " is null.");
             }
             return value;
         } catch (IndexOutOfBoundsException e) {
-            throw new JsonException("Index " + index + " out of range [0.." + values.size() + ")");
+            throw new JsonException("Index " + index + " out of range [0.." + values().size() + ")");
         }
     }
 
     @Override
     public JsonElement set(int i, JsonElement jsonElement) {
         checkIfFrozen();
-        return values.set(i, jsonElement);
+        return valuesFor(jsonElement).set(i, jsonElement);
     }
 
     @Override
@@ -273,10 +323,10 @@ public final class JsonArray extends JsonElement implements List<JsonElement>, F
      * at {@code index}.
      */
     public JsonElement opt(int index) {
-        if (index < 0 || index >= values.size()) {
+        if (index < 0 || index >= values().size()) {
             return null;
         }
-        return values.get(index);
+        return values().get(index);
     }
 
     /**
@@ -285,35 +335,35 @@ public final class JsonArray extends JsonElement implements List<JsonElement>, F
      */
     public JsonElement remove(int index) {
         checkIfFrozen();
-        if (index < 0 || index >= values.size()) {
+        if (index < 0 || index >= values().size()) {
             return null;
         }
-        return values.remove(index);
+        return values().remove(index);
     }
 
     @Override
     public int indexOf(Object o) {
-        return values.indexOf(o);
+        return values().indexOf(o);
     }
 
     @Override
     public int lastIndexOf(Object o) {
-        return values.lastIndexOf(o);
+        return values().lastIndexOf(o);
     }
 
     @Override
     public ListIterator<JsonElement> listIterator() {
-        return values.listIterator();
+        return valuesFor(null).listIterator();
     }
 
     @Override
     public ListIterator<JsonElement> listIterator(int i) {
-        return values.listIterator(i);
+        return valuesFor(null).listIterator(i);
     }
 
     @Override
     public List<JsonElement> subList(int i, int i2) {
-        return values.subList(i, i2);
+        return valuesFor(null).subList(i, i2);
     }
 
     /**
@@ -647,7 +697,7 @@ public final class JsonArray extends JsonElement implements List<JsonElement>, F
      */
     public JsonObject toJsonObject(JsonArray names) throws JsonException {
         JsonObject result = new JsonObject();
-        int length = Math.min(names.length(), values.size());
+        int length = Math.min(names.length(), values().size());
         if (length == 0) {
             return null;
         }
@@ -659,44 +709,100 @@ public final class JsonArray extends JsonElement implements List<JsonElement>, F
         return result;
     }
 
+    /**
+     * Returns the values of this array as doubles. This is a plain copy for
+     * arrays that were read or created with numbers only.
+     *
+     * @throws UnsupportedOperationException if a value is not a number.
+     */
+    public double[] toDoubleArray() {
+        List<JsonElement> values = values();
+        if (values instanceof PrimitiveList.OfDouble) {
+            return ((PrimitiveList.OfDouble) values).toDoubleArray();
+        } else if (values instanceof PrimitiveList.OfLong) {
+            return ((PrimitiveList.OfLong) values).toDoubleArray();
+        }
+        double[] result = new double[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i).asDouble();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values of this array as longs. Doubles are truncated.
+     *
+     * @throws UnsupportedOperationException if a value is not a number.
+     */
+    public long[] toLongArray() {
+        List<JsonElement> values = values();
+        if (values instanceof PrimitiveList.OfLong) {
+            return ((PrimitiveList.OfLong) values).toLongArray();
+        } else if (values instanceof PrimitiveList.OfDouble) {
+            return ((PrimitiveList.OfDouble) values).toLongArray();
+        }
+        long[] result = new long[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i).asLong();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values of this array as booleans.
+     *
+     * @throws UnsupportedOperationException if a value is not a boolean.
+     */
+    public boolean[] toBooleanArray() {
+        List<JsonElement> values = values();
+        if (values instanceof PrimitiveList.OfBoolean) {
+            return ((PrimitiveList.OfBoolean) values).toBooleanArray();
+        }
+        boolean[] result = new boolean[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i).asBoolean();
+        }
+        return result;
+    }
+
     public ArrayList<String> toArrayList() {
         ArrayList<String> res = new ArrayList<String>();
-        for (JsonElement el : values) {
+        for (JsonElement el : values()) {
             res.add(el.toString());
         }
         return res;
     }
 
     public boolean isOnlyStrings() {
-        for (JsonElement el : values) {
+        for (JsonElement el : values()) {
             if (!el.isString()) return false;
         }
         return true;
     }
 
     public boolean isOnlyNumbers() {
-        for (JsonElement el : values) {
+        for (JsonElement el : values()) {
             if (!el.isNumber()) return false;
         }
         return true;
     }
 
     public boolean isOnlyBooleans() {
-        for (JsonElement el : values) {
+        for (JsonElement el : values()) {
             if (!el.isBoolean()) return false;
         }
         return true;
     }
 
     public boolean isOnlyObjects() {
-        for (JsonElement el : values) {
+        for (JsonElement el : values()) {
             if (!el.isJsonObject()) return false;
         }
         return true;
     }
 
     public boolean isOnlyArrays() {
-        for (JsonElement el : values) {
+        for (JsonElement el : values()) {
             if (!el.isJsonArray()) return false;
         }
         return true;
@@ -704,9 +810,25 @@ public final class JsonArray extends JsonElement implements List<JsonElement>, F
 
     @Override
     public void write(JsonWriter writer) throws IOException {
+        CachedJson cachedJson = this.cachedJson;
+        if (cachedJson != null && writer.writesCompact()) {
+            writer.cachedValue(cachedJson);
+            return;
+        }
+        LazyArray lazy = this.lazy;
+        if (lazy instanceof Thawed) {
+            // not accessed since it was thawed, so it is the same as the source
+            ((Thawed) lazy).source.write(writer);
+            return;
+        }
         writer.beginArray();
-        for (JsonElement e : this) {
-            e.write(writer);
+        List<JsonElement> values = values();
+        if (values instanceof PrimitiveList) {
+            ((PrimitiveList) values).write(writer);
+        } else {
+            for (JsonElement e : this) {
+                e.write(writer);
+            }
         }
         writer.endArray();
     }
@@ -723,66 +845,87 @@ public final class JsonArray extends JsonElement implements List<JsonElement>, F
 
     @Override
     public boolean equals(Object o) {
-        return o instanceof JsonArray && ((JsonArray) o).values.equals(values);
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof JsonArray)) {
+            return false;
+        }
+        JsonArray other = (JsonArray) o;
+        // frozen trees keep their hash codes, so most unequal ones differ here
+        if (isFrozen() && other.isFrozen() && hashCode() != other.hashCode()) {
+            return false;
+        }
+        return other.values().equals(values());
     }
 
+    /**
+     * Returns the hash code of a {@link List} with the same values, so that equal
+     * arrays have equal hash codes. A frozen array computes it only once.
+     */
     @Override
     public int hashCode() {
-        // diverge from the original, which doesn't implement hashCode
-        return values.hashCode();
+        if (!isFrozen()) {
+            return values().hashCode();
+        }
+        int result = hashCode;
+        if (result == 0) {
+            result = hashCode = values().hashCode();
+        }
+        return result;
     }
 
     @Override
     public int size() {
-        return values.size();
+        return values().size();
     }
 
     @Override
     public boolean isEmpty() {
-        return values.isEmpty();
+        return values().isEmpty();
     }
 
     @Override
     public boolean contains(Object o) {
-        return values.contains(o);
+        return values().contains(o);
     }
 
     @Override
     public Iterator<JsonElement> iterator() {
-        return values.iterator();
+        return values().iterator();
     }
 
     @Override
     public Object[] toArray() {
-        return values.toArray();
+        return values().toArray();
     }
 
     @Override
     public <T> T[] toArray(T[] ts) {
-        return values.toArray(ts);
+        return values().toArray(ts);
     }
 
     @Override
     public boolean add(JsonElement jsonElement) {
         checkIfFrozen();
-        return values.add(jsonElement);
+        return valuesFor(jsonElement).add(jsonElement);
     }
 
     @Override
     public boolean remove(Object o) {
         checkIfFrozen();
-        return values.remove(o);
+        return values().remove(o);
     }
 
     @Override
     public boolean containsAll(Collection<?> objects) {
-        return values.containsAll(objects);
+        return values().containsAll(objects);
     }
 
     @Override
     public boolean addAll(Collection<? extends JsonElement> jsonElements) {
         checkIfFrozen();
-        return values.addAll(jsonElements);
+        return valuesFor(null).addAll(jsonElements);
     }
 
     @Override
@@ -794,19 +937,19 @@ public final class JsonArray extends JsonElement implements List<JsonElement>, F
     @Override
     public boolean removeAll(Collection<?> objects) {
         checkIfFrozen();
-        return values.removeAll(objects);
+        return values().removeAll(objects);
     }
 
     @Override
     public boolean retainAll(Collection<?> objects) {
         checkIfFrozen();
-        return values.retainAll(objects);
+        return values().retainAll(objects);
     }
 
     @Override
     public void clear() {
         checkIfFrozen();
-        values.clear();
+        values().clear();
     }
 
     @Override
@@ -822,7 +965,10 @@ public final class JsonArray extends JsonElement implements List<JsonElement>, F
     @Override
     public JsonArray freeze() {
         frozen = true;
-        for (JsonElement el : values) {
+        if (values() instanceof PrimitiveList) {
+            return this;
+        }
+        for (JsonElement el : values()) {
             if (el.isJsonArray()) {
                 el.asJsonArray().freeze();
             }
@@ -833,14 +979,47 @@ public final class JsonArray extends JsonElement implements List<JsonElement>, F
         return this;
     }
 
+    /**
+     * Keeps the compact JSON text of this frozen array, so that writing it
+     * again with {@link #toString()}, or with a {@link JsonWriter} that has the
+     * default indent, HTML safety and null serialization, only copies that
+     * text. This pays off for arrays that are written many times; the text
+     * takes up memory for as long as the array is reachable.
+     *
+     * @return this array.
+     * @throws IllegalStateException if this array is not frozen.
+     */
+    public JsonArray cacheJson() {
+        if (!isFrozen()) {
+            throw new IllegalStateException("Only a frozen JsonArray can cache its JSON text.");
+        }
+        if (cachedJson == null) {
+            cachedJson = new CachedJson(super.toString());
+        }
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        CachedJson cachedJson = this.cachedJson;
+        return cachedJson != null ? cachedJson.chars : super.toString();
+    }
+
+    /**
+     * Returns a copy of this array that is not frozen. The copy of a frozen
+     * array shares its values until it is first accessed, and then copies
+     * only its own level: values that are objects or arrays are thawed the
+     * same way, when they are accessed in turn. Thawing a large frozen array
+     * to change a few values therefore only copies the path to them.
+     */
     @Override
     public JsonArray cloneAsThawed() {
-        try {
-            return JsonElement.readFrom(this.toString()).asJsonArray();
-        } catch (IOException e) {
-            e.printStackTrace();
-            throw new JsonException("Cannot Recreate Json Array", e);
+        JsonArray copy = new JsonArray(new Thawed(this));
+        if (!isFrozen()) {
+            // the values of this array may still change, so copy them now
+            copy.values();
         }
+        return copy;
     }
 
     public void checkIfFrozen() {
@@ -852,7 +1031,75 @@ public final class JsonArray extends JsonElement implements List<JsonElement>, F
 
     void putInternal(JsonElement value) {
         if (value != null) {
-            values.add(value);
+            valuesFor(value).add(value);
+        }
+    }
+
+    /**
+     * Appends a value that was read on its own, keeping leading numbers or
+     * booleans in a {@link PrimitiveList} like {@link JsonElement#readFrom}
+     * does when it reads the whole array.
+     */
+    void putRead(JsonElement value) {
+        List<JsonElement> values = values();
+        if (values instanceof PrimitiveList || values.isEmpty()) {
+            PrimitiveList list = PrimitiveList.add(
+                    values instanceof PrimitiveList ? (PrimitiveList) values : null, value);
+            if (list != null) {
+                this.values = list;
+                return;
+            }
+        }
+        putInternal(value);
+    }
+
+    /**
+     * The values of a frozen array, which a thawed copy takes over when it is
+     * first accessed.
+     */
+    private static final class Thawed implements LazyArray {
+        final JsonArray source;
+
+        Thawed(JsonArray source) {
+            this.source = source;
+        }
+
+        @Override
+        public List<JsonElement> readElements() {
+            List<JsonElement> values = source.values();
+            if (values instanceof PrimitiveList) {
+                return ((PrimitiveList) values).copy();
+            }
+            List<JsonElement> result = new ArrayList<JsonElement>(values.size());
+            for (JsonElement value : values) {
+                result.add(thaw(value));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Returns the backing list, reading it first if this array was read lazily.
+     */
+    private List<JsonElement> values() {
+        LazyArray lazy = this.lazy;
+        if (lazy != null) {
+            this.lazy = null;
+            values = lazy.readElements();
+        }
+        return values;
+    }
+
+    /**
+     * Returns the backing list, first replacing a primitive one with a regular
+     * list if it cannot store {@code value}. Pass null to always replace it.
+     */
+    private List<JsonElement> valuesFor(JsonElement value) {
+        List<JsonElement> values = values();
+        if (values instanceof PrimitiveList
+                && (value == null || !((PrimitiveList) values).accepts(value))) {
+            values = this.values = new ArrayList<JsonElement>(values);
         }
+        return values;
     }
 }
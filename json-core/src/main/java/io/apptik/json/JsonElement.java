@@ -1,6 +1,10 @@
 package io.apptik.json;
 
+import java.io.CharArrayWriter;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
@@ -36,6 +40,110 @@ public abstract class JsonElement {
 
     }
 
+    /**
+     * Reads UTF-8 encoded JSON from {@code in} without decoding it to chars first.
+     */
+    public static JsonElement readFrom(InputStream in) throws JsonException, IOException {
+        return Adapter.fromJson(new Utf8JsonReader(in));
+    }
+
+    /**
+     * Reads UTF-8 encoded JSON from {@code bytes} without decoding it to chars first.
+     */
+    public static JsonElement readFrom(byte[] bytes) throws JsonException, IOException {
+        return Adapter.fromJson(new Utf8JsonReader(bytes));
+    }
+
+    /**
+     * Reads UTF-8 encoded JSON from {@code file} by memory mapping it.
+     *
+     * @see MappedJsonReader
+     */
+    public static JsonElement readFrom(File file) throws JsonException, IOException {
+        MappedJsonReader reader = new MappedJsonReader(file);
+        try {
+            return Adapter.fromJson(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads only the values on the paths of {@code projection} from the next
+     * value of {@code reader} and skips everything else.
+     *
+     * @return the projected value, or null if the value does not have the type
+     * the projection expects, for example an array where it expects an object.
+     */
+    public static JsonElement readFrom(JsonReader reader, Projection projection) throws JsonException, IOException {
+        return projection.read(reader);
+    }
+
+    /**
+     * Reads the values on the paths of {@code projection}, see
+     * {@link #readFrom(JsonReader, Projection)}.
+     */
+    public static JsonElement readFrom(Reader reader, Projection projection) throws JsonException, IOException {
+        JsonReader in = JsonRecycler.obtainReader(reader);
+        try {
+            in.setNamePool(projection.namePool());
+            return projection.read(in);
+        } finally {
+            JsonRecycler.recycle(in);
+        }
+    }
+
+    public static JsonElement readFrom(String text, Projection projection) throws JsonException, IOException {
+        return readFrom(new StringReader(text), projection);
+    }
+
+    /**
+     * Reads the values on the paths of {@code projection} from UTF-8 encoded
+     * {@code bytes}, see {@link #readFrom(JsonReader, Projection)}.
+     */
+    public static JsonElement readFrom(byte[] bytes, Projection projection) throws JsonException, IOException {
+        JsonReader in = new Utf8JsonReader(bytes);
+        in.setNamePool(projection.namePool());
+        return projection.read(in);
+    }
+
+    /**
+     * Reads {@code text} lazily. The text is scanned once to check that it is
+     * well formed, but the members of objects, the values of arrays and the
+     * content of strings are only parsed the first time they are accessed. This
+     * is much faster when only a few values of a large document are needed.
+     *
+     * <p>The returned tree keeps a reference to the text. Objects and arrays
+     * are read on first access, so they must not be accessed from several
+     * threads before they are {@link io.apptik.json.util.Freezable#freeze()
+     * frozen}, which reads all of them.
+     */
+    public static JsonElement readLazily(String text) throws JsonException, IOException {
+        return LazySource.read(text.toCharArray(), false);
+    }
+
+    /**
+     * Reads all of {@code reader} and then parses it lazily, see
+     * {@link #readLazily(String)}.
+     */
+    public static JsonElement readLazily(Reader reader) throws JsonException, IOException {
+        CharArrayWriter text = new CharArrayWriter();
+        char[] buffer = new char[8192];
+        for (int count; (count = reader.read(buffer)) != -1; ) {
+            text.write(buffer, 0, count);
+        }
+        return LazySource.read(text.toCharArray(), false);
+    }
+
+    /**
+     * Reads the UTF-8 encoded JSON in {@code bytes} lazily, see
+     * {@link #readLazily(String)}. The array must not be modified while the
+     * tree is still being read.
+     */
+    public static JsonElement readLazily(byte[] bytes) throws JsonException, IOException {
+        return LazySource.read(bytes, false);
+    }
+
     public boolean isNull() {
         return false;
     }
@@ -97,20 +205,43 @@ public abstract class JsonElement {
     }
 
     public void writeTo(Writer writer) throws IOException {
-        write(new JsonWriter(writer));
+        JsonWriter jsonWriter = JsonRecycler.obtainWriter(writer);
+        try {
+            write(jsonWriter);
+        } finally {
+            JsonRecycler.recycle(jsonWriter);
+        }
+    }
+
+    /**
+     * Writes this element to {@code out} as UTF-8 encoded JSON, without
+     * encoding it through a {@link Writer} first, and flushes {@code out}.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        JsonWriter jsonWriter = JsonRecycler.obtainWriter(out);
+        try {
+            write(jsonWriter);
+            jsonWriter.flush();
+        } finally {
+            JsonRecycler.recycle(jsonWriter);
+        }
     }
 
     @Override
     public String toString() {
-        StringWriter stringWriter = new StringWriter();
-        JsonWriter jsonWriter = new JsonWriter(stringWriter);
+        StringWriter stringWriter = JsonRecycler.obtainStringWriter();
+        JsonWriter jsonWriter = JsonRecycler.obtainWriter(stringWriter);
         try {
             write(jsonWriter);
         } catch (IOException exception) {
             // StringWriter does not throw IOExceptions
             throw new RuntimeException(exception);
+        } finally {
+            JsonRecycler.recycle(jsonWriter);
         }
-        return stringWriter.toString();
+        String result = stringWriter.toString();
+        JsonRecycler.recycle(stringWriter);
+        return result;
     }
 
     @Override
@@ -123,6 +254,20 @@ public abstract class JsonElement {
         return super.hashCode();
     }
 
+    /**
+     * Returns a thawed copy of {@code value} if it is an object or an array.
+     * Other values can't be changed and are returned as they are.
+     */
+    static JsonElement thaw(JsonElement value) {
+        if (value instanceof JsonObject) {
+            return ((JsonObject) value).cloneAsThawed();
+        }
+        if (value instanceof JsonArray) {
+            return ((JsonArray) value).cloneAsThawed();
+        }
+        return value;
+    }
+
     /**
      * Wraps the given object if to JsonXXX object.
      */
@@ -180,8 +325,12 @@ public abstract class JsonElement {
         }
 
         static public void toJson(Writer out, JsonElement value) throws IOException {
-            JsonWriter writer = new JsonWriter(out);
-            write(writer, value);
+            JsonWriter writer = JsonRecycler.obtainWriter(out);
+            try {
+                write(writer, value);
+            } finally {
+                JsonRecycler.recycle(writer);
+            }
         }
 
         static public String toJson(JsonElement value) throws IOException {
@@ -190,45 +339,156 @@ public abstract class JsonElement {
             return stringWriter.toString();
         }
 
+        /**
+         * Creates the array for the values {@code in} is positioned at. Leading
+         * numbers or booleans are read into a {@link PrimitiveList}, which stays
+         * the backing store if no other kind of value follows.
+         */
+        static JsonArray readArrayStart(JsonReader in) throws IOException {
+            JsonToken token = in.peek();
+            if (token != JsonToken.NUMBER && token != JsonToken.BOOLEAN) {
+                return new JsonArray();
+            }
+            JsonElement[] pending = new JsonElement[1];
+            JsonArray array = new JsonArray(PrimitiveList.read(in, pending));
+            array.putInternal(pending[0]);
+            return array;
+        }
+
+        /**
+         * Reads the next value of {@code in}. This works off the peeked state
+         * of the reader instead of its token API, so each token is dispatched
+         * once, and keeps the open arrays and objects on a stack of its own
+         * instead of recursing. The reader's scopes and path are kept as the
+         * token API would.
+         */
         static public JsonElement read(JsonReader in) throws IOException, JsonException {
-            switch (in.peek()) {
-                case STRING:
-                    return new JsonString(in.nextString());
-                case NUMBER:
-                    return new JsonNumber(in.nextString());
-                case BOOLEAN:
-                    return new JsonBoolean(in.nextBoolean());
-                case NULL:
-                    in.nextNull();
-                    return JSON_NULL;
-                case BEGIN_ARRAY:
-                    JsonArray array = new JsonArray();
-                    in.beginArray();
-                    while (in.hasNext()) {
-                        array.putInternal(read(in));
-                    }
-                    in.endArray();
-                    return array;
-                case BEGIN_OBJECT:
-                    JsonObject object = new JsonObject();
-                    in.beginObject();
-                    while (in.hasNext()) {
-                        object.putInternal(in.nextName(), read(in));
-                    }
-                    in.endObject();
-                    return object;
-                case END_DOCUMENT:
-                case NAME:
-                case END_OBJECT:
-                case END_ARRAY:
-                default:
-                    throw new IllegalArgumentException();
+            JsonElement[] open = null;
+            String[] names = null;
+            int depth = 0;
+            while (true) {
+                int p = in.peeked;
+                if (p == JsonReader.PEEKED_NONE) {
+                    p = in.doPeek();
+                }
+                JsonElement value;
+                switch (p) {
+                    case JsonReader.PEEKED_BEGIN_OBJECT:
+                    case JsonReader.PEEKED_BEGIN_ARRAY:
+                        if (open == null) {
+                            open = new JsonElement[16];
+                            names = new String[16];
+                        } else if (depth == open.length) {
+                            JsonElement[] newOpen = new JsonElement[depth << 1];
+                            String[] newNames = new String[depth << 1];
+                            System.arraycopy(open, 0, newOpen, 0, depth);
+                            System.arraycopy(names, 0, newNames, 0, depth);
+                            open = newOpen;
+                            names = newNames;
+                        }
+                        in.peeked = JsonReader.PEEKED_NONE;
+                        if (p == JsonReader.PEEKED_BEGIN_OBJECT) {
+                            in.push(JsonScope.EMPTY_OBJECT);
+                            open[depth++] = new JsonObject();
+                        } else {
+                            in.push(JsonScope.EMPTY_ARRAY);
+                            in.pathIndices[in.stackSize - 1] = 0;
+                            open[depth++] = readArrayStart(in);
+                        }
+                        continue;
+                    case JsonReader.PEEKED_DOUBLE_QUOTED_NAME:
+                    case JsonReader.PEEKED_SINGLE_QUOTED_NAME:
+                    case JsonReader.PEEKED_UNQUOTED_NAME:
+                        if (depth == 0) {
+                            throw expectedValue(in);
+                        }
+                        String name;
+                        if (p == JsonReader.PEEKED_DOUBLE_QUOTED_NAME) {
+                            name = in.nextQuotedName('"');
+                        } else if (p == JsonReader.PEEKED_SINGLE_QUOTED_NAME) {
+                            name = in.nextQuotedName('\'');
+                        } else {
+                            name = in.nextUnquotedValue();
+                        }
+                        in.peeked = JsonReader.PEEKED_NONE;
+                        in.pathNames[in.stackSize - 1] = name;
+                        names[depth - 1] = name;
+                        continue;
+                    case JsonReader.PEEKED_END_OBJECT:
+                    case JsonReader.PEEKED_END_ARRAY:
+                        if (depth == 0) {
+                            throw expectedValue(in);
+                        }
+                        in.peeked = JsonReader.PEEKED_NONE;
+                        in.stackSize--;
+                        in.pathNames[in.stackSize] = null;
+                        in.pathIndices[in.stackSize - 1]++;
+                        value = open[--depth];
+                        open[depth] = null;
+                        names[depth] = null;
+                        break;
+                    case JsonReader.PEEKED_DOUBLE_QUOTED:
+                        value = new JsonString(in.nextQuotedChars('"'));
+                        break;
+                    case JsonReader.PEEKED_SINGLE_QUOTED:
+                        value = new JsonString(in.nextQuotedValue('\''));
+                        break;
+                    case JsonReader.PEEKED_UNQUOTED:
+                        value = new JsonString(in.nextUnquotedValue());
+                        break;
+                    case JsonReader.PEEKED_BUFFERED:
+                        value = new JsonString(in.peekedString);
+                        in.peekedString = null;
+                        break;
+                    case JsonReader.PEEKED_LONG:
+                        value = new JsonNumber(in.peekedLong);
+                        break;
+                    case JsonReader.PEEKED_NUMBER:
+                        value = new JsonNumber(in.nextNumberLiteral());
+                        break;
+                    case JsonReader.PEEKED_TRUE:
+                        value = new JsonBoolean(true);
+                        break;
+                    case JsonReader.PEEKED_FALSE:
+                        value = new JsonBoolean(false);
+                        break;
+                    case JsonReader.PEEKED_NULL:
+                        value = JSON_NULL;
+                        break;
+                    default:
+                        throw expectedValue(in);
+                }
+                if (p != JsonReader.PEEKED_END_OBJECT && p != JsonReader.PEEKED_END_ARRAY) {
+                    in.peeked = JsonReader.PEEKED_NONE;
+                    in.pathIndices[in.stackSize - 1]++;
+                }
+                if (depth == 0) {
+                    return value;
+                }
+                JsonElement parent = open[depth - 1];
+                if (parent instanceof JsonObject) {
+                    ((JsonObject) parent).putInternal(names[depth - 1], value);
+                } else {
+                    ((JsonArray) parent).putInternal(value);
+                }
             }
         }
 
+        /**
+         * Returns the error for a token that can't start a value, like the
+         * ones of {@link JsonReader}.
+         */
+        private static IllegalStateException expectedValue(JsonReader in) throws IOException {
+            return new IllegalStateException("Expected a value but was " + in.peek() + in.locationString());
+        }
+
         static public JsonElement fromJson(Reader in) throws IOException, JsonException {
-           JsonReader reader = new JsonReader(in);
-            return read(reader);
+            JsonReader reader = JsonRecycler.obtainReader(in);
+            try {
+                return read(reader);
+            } finally {
+                JsonRecycler.recycle(reader);
+            }
         }
 
         static public JsonElement fromJson(JsonReader in) throws IOException, JsonException {
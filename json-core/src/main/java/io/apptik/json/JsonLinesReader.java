@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import io.apptik.json.exception.JsonException;
+import io.apptik.json.util.StringPool;
+
+/**
+ * Reads newline delimited JSON (NDJSON, JSON Lines): a sequence of JSON values,
+ * each starting on a new line. Blank lines are skipped.
+ *
+ * <p>All records are read by the same {@link JsonReader}, so reading a record
+ * costs no more than reading the same value nested in a larger document. The
+ * reader also pools property names, which records of the same kind share.
+ *
+ * <p>Errors reading a record are thrown by {@link #hasNext()} and
+ * {@link #next()} as {@link JsonException}.
+ */
+public final class JsonLinesReader implements Iterator<JsonElement>, Closeable {
+
+    private final JsonReader in;
+
+    public JsonLinesReader(Reader in) {
+        this(new JsonReader(in));
+    }
+
+    /**
+     * Reads UTF-8 encoded records from {@code in} without decoding them to
+     * chars first.
+     */
+    public JsonLinesReader(InputStream in) {
+        this(new Utf8JsonReader(in));
+    }
+
+    /**
+     * Reads records from {@code in}, which must not have read anything yet.
+     */
+    public JsonLinesReader(JsonReader in) {
+        this.in = in;
+        in.lineDelimited = true;
+        if (in.getNamePool() == null) {
+            in.setNamePool(new StringPool());
+        }
+    }
+
+    /**
+     * Returns the reader the records are read with, for example to read a
+     * record with a {@link JsonPath}. The reader must be left after a complete
+     * record.
+     */
+    public JsonReader getReader() {
+        return in;
+    }
+
+    public boolean hasNext() {
+        try {
+            return in.peek() != JsonToken.END_DOCUMENT;
+        } catch (IOException e) {
+            throw new JsonException("Cannot read record", e);
+        }
+    }
+
+    public JsonElement next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            return JsonElement.readFrom(in);
+        } catch (IOException e) {
+            throw new JsonException("Cannot read record", e);
+        }
+    }
+
+    /**
+     * Reads only the values on the paths of {@code projection} from the next
+     * record, see {@link JsonElement#readFrom(JsonReader, Projection)}.
+     */
+    public JsonElement next(Projection projection) {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            return JsonElement.readFrom(in, projection);
+        } catch (IOException e) {
+            throw new JsonException("Cannot read record", e);
+        }
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+}
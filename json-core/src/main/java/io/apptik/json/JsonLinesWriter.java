@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Writes newline delimited JSON (NDJSON, JSON Lines): each record is written
+ * compactly on a line of its own, terminated by {@code '\n'}. All records are
+ * written by the same {@link JsonWriter}.
+ */
+public final class JsonLinesWriter implements Closeable, Flushable {
+
+    private final Writer out;
+    private final JsonWriter writer;
+
+    public JsonLinesWriter(Writer out) {
+        this.out = out;
+        this.writer = new JsonWriter(out);
+        writer.lineDelimited = true;
+    }
+
+    /**
+     * Writes UTF-8 encoded records to {@code out}.
+     */
+    public JsonLinesWriter(OutputStream out) {
+        this(new BufferedWriter(new OutputStreamWriter(out, Charset.forName("UTF-8"))));
+    }
+
+    /**
+     * Returns the writer the records are written with, for example to stream
+     * a record without building it first. Each record written to it directly
+     * must be followed by {@link #endRecord()}.
+     */
+    public JsonWriter getWriter() {
+        return writer;
+    }
+
+    public JsonLinesWriter write(JsonElement record) throws IOException {
+        record.write(writer);
+        endRecord();
+        return this;
+    }
+
+    /**
+     * Ends the line of the record just written to {@link #getWriter()}.
+     */
+    public JsonLinesWriter endRecord() throws IOException {
+        out.write('\n');
+        return this;
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -19,14 +19,44 @@ package io.apptik.json;
 
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.text.NumberFormat;
-import java.text.ParseException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
+/**
+ * A JSON number. Numbers read by {@link JsonReader} or created from a primitive
+ * keep the primitive value and never allocate a {@link Number}. Numbers created
+ * from a literal string are parsed lazily the first time their value is
+ * needed; literals that do not fit in a long or a double are kept as
+ * {@link BigDecimal}.
+ */
 public class JsonNumber extends JsonElement {
 
-    private final String value;
+    private static final byte LITERAL = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte NUMBER = 3;
+    /** A literal with an exponent too large even for a BigDecimal. */
+    private static final byte HUGE = 4;
+
+    /** The doubles from this one on are too large for a long. */
+    private static final double TWO_TO_THE_63 = 0x1p63;
+
+    /** The literal value, or null until {@link #toString()} is first called. */
+    private String value;
+
+    /**
+     * Which of the fields below holds the value, or LITERAL if not parsed yet.
+     * It is written after the value, see {@link #setType(int)}, and read
+     * before it, so a thread that sees a number parsed by another one, as in
+     * a shared frozen tree, also sees its value.
+     */
+    private volatile int type;
+
+    private static final AtomicIntegerFieldUpdater<JsonNumber> TYPE =
+            AtomicIntegerFieldUpdater.newUpdater(JsonNumber.class, "type");
 
-    private Number numValue = null;
+    private long longValue;
+    private double doubleValue;
+    private Number numValue;
 
    public JsonNumber( String string ) {
         if( string == null ) {
@@ -40,11 +70,53 @@ public class JsonNumber extends JsonElement {
             throw new NullPointerException( "value is null" );
         }
         checkDouble(value.doubleValue());
-        this.numValue = value;
-        this.value = numValue.toString();
+        if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            this.longValue = value.longValue();
+            setType(LONG);
+        } else if (value instanceof Double) {
+            this.doubleValue = value.doubleValue();
+            setType(DOUBLE);
+        } else {
+            this.numValue = value;
+            setType(NUMBER);
+        }
+        this.value = value.toString();
+    }
+
+    public JsonNumber( long value ) {
+        this.longValue = value;
+        setType(LONG);
     }
 
-    private double checkDouble(double d) throws IllegalArgumentException {
+    /**
+     * @param value a finite value. May not be {@link Double#isNaN() NaNs} or
+     *              {@link Double#isInfinite() infinities}.
+     */
+    public JsonNumber( double value ) {
+        this.doubleValue = checkDouble(value);
+        setType(DOUBLE);
+    }
+
+    /**
+     * Creates a number from a literal that has already been parsed to
+     * {@code value}.
+     */
+    JsonNumber(String literal, double value) {
+        this.value = literal;
+        this.doubleValue = value;
+        setType(DOUBLE);
+    }
+
+    /**
+     * Publishes the type once the value fields are set. An ordered write is
+     * enough for that and, unlike a plain volatile write, needs no fence.
+     */
+    private void setType(int type) {
+        TYPE.lazySet(this, type);
+    }
+
+    static double checkDouble(double d) throws IllegalArgumentException {
         if (Double.isInfinite(d) || Double.isNaN(d)) {
             throw new IllegalArgumentException("Forbidden numeric value: " + d);
         }
@@ -53,7 +125,11 @@ public class JsonNumber extends JsonElement {
 
     @Override
     public String toString() {
-        return value;
+        String result = value;
+        if (result == null) {
+            result = value = type == LONG ? Long.toString(longValue) : Double.toString(doubleValue);
+        }
+        return result;
     }
 
     @Override
@@ -62,64 +138,303 @@ public class JsonNumber extends JsonElement {
     }
 
 
-    private Number asNumber(){
-        if(numValue==null) {
+    /**
+     * Parses the literal value into a long if it is an integer that fits, into
+     * a double if it is finite as a double, and into a {@link BigDecimal}
+     * otherwise. A literal whose exponent doesn't even fit a BigDecimal is
+     * kept as an infinite double. Threads that parse the same literal at once
+     * store the same value, so they need no lock.
+     *
+     * @throws NumberFormatException if the literal is not a number.
+     */
+    private void parse() {
+        if (type != LITERAL) {
+            return;
+        }
+        String value = this.value;
+        boolean integer = true;
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '.' || c == 'e' || c == 'E') {
+                integer = false;
+            } else if ((c < '0' || c > '9') && c != '-' && c != '+') {
+                throw new NumberFormatException("Not a number: " + value);
+            }
+        }
+        if (integer) {
+            try {
+                longValue = Long.parseLong(value);
+                setType(LONG);
+                return;
+            } catch (NumberFormatException ignored) {
+                // too big, fall through to BigDecimal
+            }
+        } else {
+            double d = Double.parseDouble(value);
+            if (!Double.isInfinite(d)) {
+                doubleValue = d;
+                setType(DOUBLE);
+                return;
+            }
             try {
-                numValue = NumberFormat.getNumberInstance().parse(value);
-            } catch (ParseException ex) {
                 numValue = new BigDecimal(value);
+            } catch (NumberFormatException e) {
+                // keep the infinite value and write the literal as it is
+                numValue = d;
+                setType(HUGE);
+                return;
             }
+            setType(NUMBER);
+            return;
+        }
+        numValue = new BigDecimal(value);
+        setType(NUMBER);
+    }
+
+    /**
+     * Returns true if {@code literal} has no fraction and no exponent.
+     */
+    static boolean isIntegral(String literal) {
+        for (int i = 0, length = literal.length(); i < length; i++) {
+            char c = literal.charAt(i);
+            if (c == '.' || c == 'e' || c == 'E') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the value is an integer that fits in a long.
+     */
+    boolean isLong() {
+        try {
+            parse();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return type == LONG;
+    }
+
+    /**
+     * Returns true if the value is held as a double.
+     */
+    boolean isDouble() {
+        try {
+            parse();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return type == DOUBLE;
+    }
+
+    private Number asNumber(){
+        parse();
+        switch (type) {
+            case LONG:
+                return longValue;
+            case DOUBLE:
+                return doubleValue;
+            default:
+                return numValue;
         }
-        return numValue;
     }
 
     @Override
     public byte asByte() {
-        return asNumber().byteValue();
+        return (byte) asLong();
     }
 
     @Override
     public int asInt() {
-        return asNumber().intValue();
+        parse();
+        switch (type) {
+            case LONG:
+                return (int) longValue;
+            case DOUBLE:
+                return (int) doubleValue;
+            default:
+                return numValue.intValue();
+        }
     }
 
     @Override
     public long asLong() {
-        return asNumber().longValue();
+        parse();
+        switch (type) {
+            case LONG:
+                return longValue;
+            case DOUBLE:
+                return (long) doubleValue;
+            default:
+                return numValue.longValue();
+        }
     }
 
     @Override
     public float asFloat() {
-        return asNumber().floatValue();
+        return (float) asDouble();
     }
 
     @Override
     public double asDouble() {
-        return asNumber().doubleValue();
+        parse();
+        switch (type) {
+            case LONG:
+                return longValue;
+            case DOUBLE:
+                return doubleValue;
+            default:
+                return numValue.doubleValue();
+        }
     }
 
+    /**
+     * Returns a hash of the value, so that numbers that are equal hash alike
+     * however they are written: {@code 1000}, {@code 1e3} and {@code 1000.0}
+     * have the same hash code.
+     */
     @Override
     public int hashCode() {
-        return value.hashCode();
+        try {
+            parse();
+            switch (type) {
+                case LONG:
+                    return hashLong(longValue);
+                case DOUBLE:
+                    return hashDouble(doubleValue);
+                case NUMBER:
+                    return hashDecimal(decimalValue());
+                default:
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            // not a number, so only the same text is equal
+        }
+        return toString().hashCode();
     }
 
+    /**
+     * Compares the values of two numbers, so {@code 1000}, {@code 1e3} and
+     * {@code 1000.0} are all equal. Literals that are not numbers, or whose
+     * exponent is out of range, are only equal to the same text.
+     */
     @Override
     public boolean equals( Object o ) {
-        return (o instanceof JsonNumber && ((JsonNumber) o).value.equals(value))
+        return (o instanceof JsonNumber && valueEquals((JsonNumber) o))
                         ||
-                        (  o !=null && asNumber().equals(o));
+                        (  o instanceof Number && numberEquals((Number) o));
+
+    }
+
+    private boolean valueEquals(JsonNumber other) {
+        if (other == this) {
+            return true;
+        }
+        try {
+            parse();
+            other.parse();
+            if (type == LONG && other.type == LONG) {
+                return longValue == other.longValue;
+            } else if (type == DOUBLE && other.type == DOUBLE) {
+                return doubleValue == other.doubleValue;
+            } else if (type == LONG && other.type == DOUBLE) {
+                return equals(longValue, other.doubleValue);
+            } else if (type == DOUBLE && other.type == LONG) {
+                return equals(other.longValue, doubleValue);
+            } else if (type != HUGE && other.type != HUGE) {
+                return decimalValue().compareTo(other.decimalValue()) == 0;
+            }
+        } catch (NumberFormatException e) {
+            // fall back to the text
+        }
+        return toString().equals(other.toString());
+    }
 
+    private static boolean equals(long l, double d) {
+        return d >= -TWO_TO_THE_63 && d < TWO_TO_THE_63 && (long) d == l && (double) l == d;
+    }
+
+    private static int hashLong(long l) {
+        return (int) (l ^ (l >>> 32));
+    }
+
+    private static int hashDouble(double d) {
+        if (d >= -TWO_TO_THE_63 && d < TWO_TO_THE_63 && (double) (long) d == d) {
+            return hashLong((long) d);
+        }
+        long bits = Double.doubleToLongBits(d);
+        return (int) (bits ^ (bits >>> 32));
+    }
+
+    private static int hashDecimal(BigDecimal decimal) {
+        try {
+            return hashLong(decimal.longValueExact());
+        } catch (ArithmeticException e) {
+            // not an integer that fits a long
+        }
+        double d = decimal.doubleValue();
+        if (!Double.isInfinite(d) && new BigDecimal(d).compareTo(decimal) == 0) {
+            return hashDouble(d);
+        }
+        return decimal.stripTrailingZeros().hashCode();
+    }
+
+    /**
+     * Returns the exact value of a parsed number.
+     *
+     * @throws NumberFormatException if the value is a {@link Number} whose
+     *                               text is not a decimal number.
+     */
+    private BigDecimal decimalValue() {
+        switch (type) {
+            case LONG:
+                return BigDecimal.valueOf(longValue);
+            case DOUBLE:
+                return new BigDecimal(doubleValue);
+            default:
+                return numValue instanceof BigDecimal ? (BigDecimal) numValue : new BigDecimal(toString());
+        }
+    }
+
+    /**
+     * Compares against a boxed number of the same kind without boxing this
+     * value, so a number read as a long equals any integral box of that value.
+     */
+    private boolean numberEquals(Number n) {
+        parse();
+        if (type == LONG && (n instanceof Long || n instanceof Integer
+                || n instanceof Short || n instanceof Byte)) {
+            return longValue == n.longValue();
+        }
+        if (type == DOUBLE && n instanceof Double) {
+            return Double.compare(doubleValue, n.doubleValue()) == 0;
+        }
+        return asNumber().equals(n);
     }
 
     @Override
     public void write( JsonWriter writer ) throws IOException {
-        writer.value( asNumber() );
+        parse();
+        switch (type) {
+            case LONG:
+                writer.value(longValue);
+                break;
+            case DOUBLE:
+                writer.value(doubleValue);
+                break;
+            case HUGE:
+                writer.jsonValue(value);
+                break;
+            default:
+                writer.value(numValue);
+        }
     }
 
 
     @Override
     public String getJsonType() {
-        if(this.asNumber().intValue() == this.asNumber().doubleValue()) {
+        if(asInt() == asDouble()) {
             return TYPE_INTEGER;
         } else {
             return TYPE_NUMBER;
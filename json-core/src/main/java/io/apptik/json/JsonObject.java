@@ -27,8 +27,8 @@ import java.util.Map;
 import java.util.Set;
 
 import io.apptik.json.exception.JsonException;
+import io.apptik.json.util.CompactLinkedMap;
 import io.apptik.json.util.Freezable;
-import io.apptik.json.util.LinkedTreeMap;
 import io.apptik.json.util.Util;
 
 import static io.apptik.json.JsonNull.JSON_NULL;
@@ -90,7 +90,16 @@ import static io.apptik.json.JsonNull.JSON_NULL;
 public final class JsonObject extends JsonElement implements Iterable<Map.Entry<String, JsonElement>>, Freezable<JsonObject> {
 
     private volatile boolean frozen = false;
-    private final LinkedTreeMap<String, JsonElement> nameValuePairs = new LinkedTreeMap<String, JsonElement>();
+
+    /** The JSON text of this object if it is cached, see {@link #cacheJson()}. */
+    private volatile CachedJson cachedJson;
+
+    /** The hash code of this object once it is frozen, or 0 until first needed. */
+    private int hashCode;
+    private final CompactLinkedMap<String, JsonElement> nameValuePairs = new CompactLinkedMap<String, JsonElement>();
+
+    /** Where to read the members from when first needed, or null once they are read. */
+    private LazyObject lazy;
 
     /**
      * Creates a {@code JsonObject} with no name/value mappings.
@@ -99,6 +108,14 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
 
     }
 
+    /**
+     * Creates a {@code JsonObject} whose members are read from {@code lazy} when
+     * first needed.
+     */
+    JsonObject(LazyObject lazy) {
+        this.lazy = lazy;
+    }
+
 
     /**
      * Creates a new {@code JSONObject} by copying all name/value mappings from
@@ -121,7 +138,7 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
             if (key == null) {
                 throw new NullPointerException("key == null");
             }
-            nameValuePairs.put(key, wrap(entry.getValue()));
+            members().put(key, wrap(entry.getValue()));
         }
     }
 
@@ -130,7 +147,7 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
      * Returns the number of name/value mappings in this object.
      */
     public int length() {
-        return nameValuePairs.size();
+        return members().size();
     }
 
 
@@ -204,7 +221,7 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
      */
     public JsonObject put(String name, JsonElement value) throws JsonException {
         checkIfFrozen();
-        putInternal(name, value);
+        putInternal(checkName(name), value);
         return this;
     }
 
@@ -242,7 +259,7 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
     // unhidden.
     public JsonObject accumulate(String name, Object value) throws JsonException {
         checkIfFrozen();
-        Object current = nameValuePairs.get(checkName(name));
+        Object current = members().get(checkName(name));
         if (current == null) {
             return put(name, value);
         }
@@ -254,7 +271,7 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
             JsonArray array = new JsonArray();
             array.put(current);
             array.put(value);
-            nameValuePairs.put(name, array);
+            members().put(name, array);
         }
         return this;
     }
@@ -271,14 +288,14 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
      */
     public JsonObject append(String name, Object value) throws JsonException {
         checkIfFrozen();
-        Object current = nameValuePairs.get(checkName(name));
+        Object current = members().get(checkName(name));
 
         final JsonArray array;
         if (current instanceof JsonArray) {
             array = (JsonArray) current;
         } else if (current == null) {
             JsonArray newArray = new JsonArray();
-            nameValuePairs.put(name, newArray);
+            members().put(name, newArray);
             array = newArray;
         } else {
             throw new JsonException("Key " + name + " is not a JsonArray");
@@ -304,7 +321,7 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
      */
     public Object remove(String name) {
         checkIfFrozen();
-        return nameValuePairs.remove(name);
+        return members().remove(name);
     }
 
     /**
@@ -312,7 +329,7 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
      * a mapping whose value is {@link JsonNull}.
      */
     public boolean isNull(String name) {
-        JsonElement value = nameValuePairs.get(name);
+        JsonElement value = members().get(name);
         return value.isNull();
     }
 
@@ -321,7 +338,7 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
      * may be {@link JsonNull}.
      */
     public boolean has(String name) {
-        return nameValuePairs.containsKey(name);
+        return members().containsKey(name);
     }
 
     /**
@@ -330,7 +347,7 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
      * @throws JsonException if no such mapping exists.
      */
     public JsonElement get(String name) throws JsonException {
-        JsonElement result = nameValuePairs.get(name);
+        JsonElement result = members().get(name);
         if (result == null) {
             throw new JsonException("No value for " + name + ", in: " + this.toString());
         }
@@ -342,7 +359,7 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
      * exists.
      */
     public JsonElement opt(String name) {
-        return nameValuePairs.get(name);
+        return members().get(name);
     }
 
     /**
@@ -705,7 +722,7 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
      * undefined. The order of the keys is undefined.
      */
     public Iterator<String> keys() {
-        return nameValuePairs.keySet().iterator();
+        return members().keySet().iterator();
     }
 
     /**
@@ -719,12 +736,12 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
      * @hide.
      */
     public Set<String> keySet() {
-        return nameValuePairs.keySet();
+        return members().keySet();
     }
 
     public Collection<JsonElement> valuesSet() {
-        if (isFrozen()) Collections.unmodifiableCollection(nameValuePairs.values());
-        return nameValuePairs.values();
+        if (isFrozen()) Collections.unmodifiableCollection(members().values());
+        return members().values();
     }
 
     /**
@@ -732,16 +749,27 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
      * returns null if this object contains no mappings.
      */
     public JsonArray names() throws JsonException {
-        return nameValuePairs.isEmpty()
+        return members().isEmpty()
                 ? null
-                : new JsonArray(new ArrayList<String>(nameValuePairs.keySet()));
+                : new JsonArray(new ArrayList<String>(members().keySet()));
     }
 
     @Override
     public void write(JsonWriter writer) throws IOException {
+        CachedJson cachedJson = this.cachedJson;
+        if (cachedJson != null && writer.writesCompact()) {
+            writer.cachedValue(cachedJson);
+            return;
+        }
+        LazyObject lazy = this.lazy;
+        if (lazy instanceof Thawed) {
+            // not accessed since it was thawed, so it is the same as the source
+            ((Thawed) lazy).source.write(writer);
+            return;
+        }
         writer.beginObject();
-        for (Map.Entry<String, JsonElement> e : nameValuePairs.entrySet()) {
-            writer.name(e.getKey());
+        for (Map.Entry<String, JsonElement> e : members().entrySet()) {
+            writer.memberName(e.getKey());
             e.getValue().write(writer);
         }
         writer.endObject();
@@ -759,7 +787,34 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
 
     @Override
     public boolean equals(Object o) {
-        return o instanceof JsonObject && ((JsonObject) o).nameValuePairs.equals(nameValuePairs);
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof JsonObject)) {
+            return false;
+        }
+        JsonObject other = (JsonObject) o;
+        // frozen trees keep their hash codes, so most unequal ones differ here
+        if (isFrozen() && other.isFrozen() && hashCode() != other.hashCode()) {
+            return false;
+        }
+        return other.members().equals(members());
+    }
+
+    /**
+     * Returns the hash code of a {@link Map} with the same members, so that equal
+     * objects have equal hash codes. A frozen object computes it only once.
+     */
+    @Override
+    public int hashCode() {
+        if (!isFrozen()) {
+            return members().hashCode();
+        }
+        int result = hashCode;
+        if (result == 0) {
+            result = hashCode = members().hashCode();
+        }
+        return result;
     }
 
     @Override
@@ -769,7 +824,7 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
 
     @Override
     public Iterator<Map.Entry<String, JsonElement>> iterator() {
-        return nameValuePairs.entrySet().iterator();
+        return members().entrySet().iterator();
     }
 
     /**
@@ -798,7 +853,7 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
 
     public JsonObject clear() {
         checkIfFrozen();
-        nameValuePairs.clear();
+        members().clear();
         return this;
     }
 
@@ -811,7 +866,7 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
     @Override
     public JsonObject freeze() {
         frozen = true;
-        for (JsonElement el : nameValuePairs.values()) {
+        for (JsonElement el : members().values()) {
             if (el.isJsonArray()) {
                 el.asJsonArray().freeze();
             }
@@ -822,14 +877,47 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
         return this;
     }
 
+    /**
+     * Keeps the compact JSON text of this frozen object, so that writing it
+     * again with {@link #toString()}, or with a {@link JsonWriter} that has the
+     * default indent, HTML safety and null serialization, only copies that
+     * text. This pays off for objects that are written many times; the text
+     * takes up memory for as long as the object is reachable.
+     *
+     * @return this object.
+     * @throws IllegalStateException if this object is not frozen.
+     */
+    public JsonObject cacheJson() {
+        if (!isFrozen()) {
+            throw new IllegalStateException("Only a frozen JsonObject can cache its JSON text.");
+        }
+        if (cachedJson == null) {
+            cachedJson = new CachedJson(super.toString());
+        }
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        CachedJson cachedJson = this.cachedJson;
+        return cachedJson != null ? cachedJson.chars : super.toString();
+    }
+
+    /**
+     * Returns a copy of this object that is not frozen. The copy of a frozen
+     * object shares its members until it is first accessed, and then copies
+     * only its own level: members that are objects or arrays are thawed the
+     * same way, when they are accessed in turn. Thawing a large frozen
+     * object to change a few members therefore only copies the path to them.
+     */
     @Override
     public JsonObject cloneAsThawed() {
-        try {
-            return JsonElement.readFrom(this.toString()).asJsonObject();
-        } catch (IOException e) {
-            e.printStackTrace();
-            throw new JsonException("Cannot Recreate Json Object", e);
+        JsonObject copy = new JsonObject(new Thawed(this));
+        if (!isFrozen()) {
+            // the members of this object may still change, so copy them now
+            copy.members();
         }
+        return copy;
     }
 
     public void checkIfFrozen() {
@@ -839,10 +927,45 @@ public final class JsonObject extends JsonElement implements Iterable<Map.Entry<
         }
     }
 
+    /**
+     * Adds a member read by a parser, whose names are never null.
+     */
     void putInternal(String name, JsonElement value) {
         if (value == null) {
             value = JSON_NULL;
         }
-        nameValuePairs.put(checkName(name), value);
+        members().put(name, value);
+    }
+
+    /**
+     * The members of a frozen object, which a thawed copy takes over when it
+     * is first accessed.
+     */
+    private static final class Thawed implements LazyObject {
+        final JsonObject source;
+
+        Thawed(JsonObject source) {
+            this.source = source;
+        }
+
+        @Override
+        public void readMembers(JsonObject target) {
+            for (Map.Entry<String, JsonElement> e : source.members().entrySet()) {
+                target.putInternal(e.getKey(), thaw(e.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Returns the members of this object, reading them first if this object
+     * was read lazily.
+     */
+    private CompactLinkedMap<String, JsonElement> members() {
+        LazyObject lazy = this.lazy;
+        if (lazy != null) {
+            this.lazy = null;
+            lazy.readMembers(this);
+        }
+        return nameValuePairs;
     }
 }
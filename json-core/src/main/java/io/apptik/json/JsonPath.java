@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import io.apptik.json.exception.JsonException;
+
+/**
+ * A compiled JSONPath expression that finds its matches in a single forward
+ * pass over a {@link JsonReader}. Only matched values are read into elements;
+ * everything else is skipped, so memory use depends on the size of the
+ * matches and the depth of the document, not on its size.
+ *
+ * <p>Supported are member names ({@code .name} or {@code ['name']}), array
+ * indices ({@code [0]}), wildcards ({@code .*} or {@code [*]}) and the
+ * descendant operator ({@code ..name}, {@code ..*}, {@code ..[0]}). Filters,
+ * slices and negative indices need more than one pass and are not supported.
+ *
+ * <p>Matches are reported in document order. A match is read as a whole, so
+ * values inside it that would also match are not reported separately.
+ *
+ * <p>A compiled path is immutable and can be shared between threads.
+ */
+public final class JsonPath {
+
+    /**
+     * Receives the matches of {@link #find(JsonReader, Callback)}.
+     */
+    public interface Callback {
+        /**
+         * @param path  the location of the match, as given by
+         *              {@link JsonReader#getPath()}.
+         * @param value the matched value.
+         */
+        void onMatch(String path, JsonElement value) throws IOException;
+    }
+
+    private final String expression;
+    private final PathSegment[] segments;
+    /** The state set of a value all segments have matched. */
+    private final long matched;
+
+    private JsonPath(String expression, List<PathSegment> segments) {
+        if (segments.size() > 62) {
+            throw new IllegalArgumentException("Too many segments: " + expression);
+        }
+        this.expression = expression;
+        this.segments = segments.toArray(new PathSegment[segments.size()]);
+        this.matched = 1L << segments.size();
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code path} is malformed.
+     */
+    public static JsonPath compile(String path) {
+        return new JsonPath(path, PathSegment.parse(path));
+    }
+
+    /**
+     * Reads the next value of {@code in} and passes each match to
+     * {@code callback}. The reader is left after the value.
+     */
+    public void find(JsonReader in, Callback callback) throws IOException {
+        Matcher matcher = new Matcher(in);
+        JsonElement match;
+        while ((match = matcher.next()) != null) {
+            callback.onMatch(matcher.path, match);
+        }
+    }
+
+    /**
+     * Returns the matches in the next value of {@code in}. The value is read
+     * as the iterator advances; the reader is left after the value once the
+     * iterator has no more matches. Read errors are thrown as
+     * {@link JsonException}.
+     */
+    public Iterator<JsonElement> iterator(JsonReader in) {
+        final Matcher matcher = new Matcher(in);
+        return new Iterator<JsonElement>() {
+            private JsonElement next;
+
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = matcher.next();
+                    } catch (IOException e) {
+                        throw new JsonException("Cannot read " + expression, e);
+                    }
+                }
+                return next != null;
+            }
+
+            public JsonElement next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                JsonElement result = next;
+                next = null;
+                return result;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Returns the states after matching the member {@code name}, or the
+     * element at {@code index} if {@code name} is null, in a container whose
+     * states are {@code states}. Bit {@code i} of a state set is set if the
+     * first {@code i} segments have matched.
+     */
+    private long step(long states, String name, int index) {
+        long result = 0;
+        for (long s = states & ~matched; s != 0; s &= s - 1) {
+            int i = Long.numberOfTrailingZeros(s);
+            PathSegment segment = segments[i];
+            if (segment.matches(name, index)) {
+                result |= 2L << i;
+            }
+            if (segment.descendant) {
+                result |= 1L << i;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /**
+     * Walks one value of a reader, keeping the state set of each enclosing
+     * container on a stack.
+     */
+    private final class Matcher {
+        private final JsonReader in;
+        private long[] states = new long[32];
+        private int depth;
+        private boolean started;
+        /** The path of the last match. */
+        String path;
+
+        Matcher(JsonReader in) {
+            this.in = in;
+        }
+
+        /**
+         * Returns the next match, or null once the whole value has been read.
+         */
+        JsonElement next() throws IOException {
+            if (!started) {
+                started = true;
+                JsonElement match = enter(1L);
+                if (match != null || depth == 0) {
+                    return match;
+                }
+            }
+            while (depth > 0) {
+                if (!in.hasNext()) {
+                    if (in.peek() == JsonToken.END_OBJECT) {
+                        in.endObject();
+                    } else {
+                        in.endArray();
+                    }
+                    depth--;
+                    continue;
+                }
+                long next;
+                if (in.peek() == JsonToken.NAME) {
+                    next = step(states[depth - 1], in.nextName(), -1);
+                } else {
+                    // the reader tracks the index of the element it is at
+                    next = step(states[depth - 1], null, in.pathIndices[in.stackSize - 1]);
+                }
+                JsonElement match = enter(next);
+                if (match != null) {
+                    return match;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Reads the next value if {@code next} is a match, descends into it if
+         * it is a container that may contain matches, or skips it otherwise.
+         */
+        private JsonElement enter(long next) throws IOException {
+            if ((next & matched) != 0) {
+                path = in.getPath();
+                return JsonElement.readFrom(in);
+            }
+            JsonToken token = next != 0 ? in.peek() : null;
+            if (token == JsonToken.BEGIN_OBJECT) {
+                in.beginObject();
+            } else if (token == JsonToken.BEGIN_ARRAY) {
+                in.beginArray();
+            } else {
+                in.skipValue();
+                return null;
+            }
+            if (depth == states.length) {
+                long[] newStates = new long[depth << 1];
+                System.arraycopy(states, 0, newStates, 0, depth);
+                states = newStates;
+            }
+            states[depth++] = next;
+            return null;
+        }
+    }
+}
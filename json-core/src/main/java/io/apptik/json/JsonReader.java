@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.Reader;
 
 import io.apptik.json.exception.MalformedJsonException;
+import io.apptik.json.util.StringPool;
 
 /**
  * Reads a JSON (<a href="http://www.ietf.org/rfc/rfc7159.txt">RFC 7159</a>)
@@ -190,57 +191,68 @@ import io.apptik.json.exception.MalformedJsonException;
 public class JsonReader implements Closeable {
     /** The only non-execute prefix this parser permits */
     private static final char[] NON_EXECUTE_PREFIX = ")]}'\n".toCharArray();
-    private static final long MIN_INCOMPLETE_INTEGER = Long.MIN_VALUE / 10;
-
-    private static final int PEEKED_NONE = 0;
-    private static final int PEEKED_BEGIN_OBJECT = 1;
-    private static final int PEEKED_END_OBJECT = 2;
-    private static final int PEEKED_BEGIN_ARRAY = 3;
-    private static final int PEEKED_END_ARRAY = 4;
-    private static final int PEEKED_TRUE = 5;
-    private static final int PEEKED_FALSE = 6;
-    private static final int PEEKED_NULL = 7;
-    private static final int PEEKED_SINGLE_QUOTED = 8;
-    private static final int PEEKED_DOUBLE_QUOTED = 9;
-    private static final int PEEKED_UNQUOTED = 10;
+    static final long MIN_INCOMPLETE_INTEGER = Long.MIN_VALUE / 10;
+
+    static final int PEEKED_NONE = 0;
+    static final int PEEKED_BEGIN_OBJECT = 1;
+    static final int PEEKED_END_OBJECT = 2;
+    static final int PEEKED_BEGIN_ARRAY = 3;
+    static final int PEEKED_END_ARRAY = 4;
+    static final int PEEKED_TRUE = 5;
+    static final int PEEKED_FALSE = 6;
+    static final int PEEKED_NULL = 7;
+    static final int PEEKED_SINGLE_QUOTED = 8;
+    static final int PEEKED_DOUBLE_QUOTED = 9;
+    static final int PEEKED_UNQUOTED = 10;
     /** When this is returned, the string value is stored in peekedString. */
-    private static final int PEEKED_BUFFERED = 11;
-    private static final int PEEKED_SINGLE_QUOTED_NAME = 12;
-    private static final int PEEKED_DOUBLE_QUOTED_NAME = 13;
-    private static final int PEEKED_UNQUOTED_NAME = 14;
+    static final int PEEKED_BUFFERED = 11;
+    static final int PEEKED_SINGLE_QUOTED_NAME = 12;
+    static final int PEEKED_DOUBLE_QUOTED_NAME = 13;
+    static final int PEEKED_UNQUOTED_NAME = 14;
     /** When this is returned, the integer value is stored in peekedLong. */
-    private static final int PEEKED_LONG = 15;
-    private static final int PEEKED_NUMBER = 16;
-    private static final int PEEKED_EOF = 17;
+    static final int PEEKED_LONG = 15;
+    static final int PEEKED_NUMBER = 16;
+    static final int PEEKED_EOF = 17;
 
     /* State machine when parsing numbers */
-    private static final int NUMBER_CHAR_NONE = 0;
-    private static final int NUMBER_CHAR_SIGN = 1;
-    private static final int NUMBER_CHAR_DIGIT = 2;
-    private static final int NUMBER_CHAR_DECIMAL = 3;
-    private static final int NUMBER_CHAR_FRACTION_DIGIT = 4;
-    private static final int NUMBER_CHAR_EXP_E = 5;
-    private static final int NUMBER_CHAR_EXP_SIGN = 6;
-    private static final int NUMBER_CHAR_EXP_DIGIT = 7;
+    static final int NUMBER_CHAR_NONE = 0;
+    static final int NUMBER_CHAR_SIGN = 1;
+    static final int NUMBER_CHAR_DIGIT = 2;
+    static final int NUMBER_CHAR_DECIMAL = 3;
+    static final int NUMBER_CHAR_FRACTION_DIGIT = 4;
+    static final int NUMBER_CHAR_EXP_E = 5;
+    static final int NUMBER_CHAR_EXP_SIGN = 6;
+    static final int NUMBER_CHAR_EXP_DIGIT = 7;
+
+    /** The default size of the buffer of a reader created with {@link #JsonReader(Reader)}. */
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
 
     /** The input JSON. */
-    private final Reader in;
+    private Reader in;
 
     /** True to accept non-spec compliant JSON */
-    private boolean lenient = false;
+    boolean lenient = false;
+
+    /** True to accept a sequence of top-level values, each on a new line. */
+    boolean lineDelimited = false;
+
+    /** Pool for property names, or null to create a new string for every name. */
+    StringPool namePool;
 
     /**
      * Use a manual buffer to easily read and unread upcoming characters, and
      * also so we can create strings without an intermediate StringBuilder.
      * We decode literals directly out of this buffer, so it must be at least as
-     * long as the longest token that can be reported as a number.
+     * long as the longest token that can be reported as a number. Subclasses
+     * that scan a different kind of input keep their own buffer and leave this
+     * one {@code null}; {@link #pos} and {@link #limit} then index into theirs.
      */
-    private final char[] buffer = new char[1024];
-    private int pos = 0;
-    private int limit = 0;
+    private char[] buffer;
+    int pos = 0;
+    int limit = 0;
 
-    private int lineNumber = 0;
-    private int lineStart = 0;
+    int lineNumber = 0;
+    int lineStart = 0;
 
     int peeked = PEEKED_NONE;
 
@@ -248,26 +260,26 @@ public class JsonReader implements Closeable {
      * A peeked value that was composed entirely of digits with an optional
      * leading dash. Positive values may not have a leading 0.
      */
-    private long peekedLong;
+    long peekedLong;
 
     /**
      * The number of characters in a peeked number literal. Increment 'pos' by
      * this after reading a number.
      */
-    private int peekedNumberLength;
+    int peekedNumberLength;
 
     /**
      * A peeked string that should be parsed on the next double, long or string.
      * This is populated before a numeric value is parsed and used if that parsing
      * fails.
      */
-    private String peekedString;
+    String peekedString;
 
     /*
      * The nesting stack. Using a manual array rather than an ArrayList saves 20%.
      */
-    private int[] stack = new int[32];
-    private int stackSize = 0;
+    int[] stack = new int[32];
+    int stackSize = 0;
     {
         stack[stackSize++] = JsonScope.EMPTY_DOCUMENT;
     }
@@ -280,17 +292,54 @@ public class JsonReader implements Closeable {
      * that array. Otherwise the value is undefined, and we take advantage of that
      * by incrementing pathIndices when doing so isn't useful.
      */
-    private String[] pathNames = new String[32];
-    private int[] pathIndices = new int[32];
+    String[] pathNames = new String[32];
+    int[] pathIndices = new int[32];
 
     /**
      * Creates a new instance that reads a JSON-encoded stream from {@code in}.
      */
     public JsonReader(Reader in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new instance that reads a JSON-encoded stream from {@code in}
+     * through a buffer of {@code bufferSize} chars. A larger buffer means fewer
+     * reads from {@code in} for large documents. Numbers longer than the
+     * buffer can't be read.
+     */
+    public JsonReader(Reader in, int bufferSize) {
         if (in == null) {
             throw new NullPointerException("in == null");
         }
+        if (bufferSize < 16) {
+            throw new IllegalArgumentException("bufferSize < 16: " + bufferSize);
+        }
         this.in = in;
+        this.buffer = new char[bufferSize];
+    }
+
+    /**
+     * Creates a reader that does not read from a {@link Reader}. Subclasses
+     * using this constructor supply their own input by overriding
+     * {@link #doPeek()} and the value reading methods it relies on.
+     */
+    JsonReader() {
+        this.in = null;
+        this.buffer = null;
+    }
+
+    /**
+     * Creates a reader of the chars {@code start} to {@code end} of {@code chars}.
+     * The array is parsed in place rather than copied to a buffer, so it must
+     * not change while this reader is in use.
+     */
+    JsonReader(char[] chars, int start, int end) {
+        this.in = null;
+        this.buffer = chars;
+        this.pos = start;
+        this.limit = end;
+        this.lineStart = start;
     }
 
     /**
@@ -333,6 +382,27 @@ public class JsonReader implements Closeable {
         return lenient;
     }
 
+    /**
+     * Configure this parser to return property names from {@code namePool}.
+     * Documents made of many objects with the same keys then share one string
+     * instance per key instead of allocating a new one for every name read.
+     * The pool may be private to this reader or shared by many readers, see
+     * {@link StringPool}. Names with escape sequences may not be pooled.
+     *
+     * @param namePool the pool to use, or null to stop pooling names.
+     */
+    public final void setNamePool(StringPool namePool) {
+        this.namePool = namePool;
+    }
+
+    /**
+     * Returns the pool property names are read from, or null if names are not
+     * pooled.
+     */
+    public final StringPool getNamePool() {
+        return namePool;
+    }
+
     /**
      * Consumes the next token from the JSON stream and asserts that it is the
      * beginning of a new array.
@@ -458,6 +528,19 @@ public class JsonReader implements Closeable {
         }
     }
 
+    /**
+     * Returns true if the next token is a number that fits in a long and has
+     * already been parsed by {@link #peek()}, so {@link #nextLong()} can return
+     * it without creating a string.
+     */
+    boolean hasPeekedLong() throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        return p == PEEKED_LONG;
+    }
+
     int doPeek() throws IOException {
         int peekStack = stack[stackSize - 1];
         if (peekStack == JsonScope.EMPTY_ARRAY) {
@@ -535,11 +618,14 @@ public class JsonReader implements Closeable {
             }
             stack[stackSize - 1] = JsonScope.NONEMPTY_DOCUMENT;
         } else if (peekStack == JsonScope.NONEMPTY_DOCUMENT) {
+            int line = lineNumber;
             int c = nextNonWhitespace(false);
             if (c == -1) {
                 return peeked = PEEKED_EOF;
             } else {
-                checkLenient();
+                if (!lineDelimited || lineNumber == line) {
+                    checkLenient();
+                }
                 pos--;
             }
         } else if (peekStack == JsonScope.CLOSED) {
@@ -654,7 +740,7 @@ public class JsonReader implements Closeable {
         charactersOfNumber:
         for (; true; i++) {
             if (p + i == l) {
-                if (i == buffer.length) {
+                if (i == buffer.length && in != null) {
                     // Though this looks like a well-formed number, it's too long to continue reading. Give up
                     // and let the application handle this as an unquoted literal.
                     return PEEKED_NONE;
@@ -741,7 +827,7 @@ public class JsonReader implements Closeable {
         }
     }
 
-    private boolean isLiteral(char c) throws IOException {
+    boolean isLiteral(char c) throws IOException {
         switch (c) {
             case '/':
             case '\\':
@@ -782,9 +868,9 @@ public class JsonReader implements Closeable {
         if (p == PEEKED_UNQUOTED_NAME) {
             result = nextUnquotedValue();
         } else if (p == PEEKED_SINGLE_QUOTED_NAME) {
-            result = nextQuotedValue('\'');
+            result = nextQuotedName('\'');
         } else if (p == PEEKED_DOUBLE_QUOTED_NAME) {
-            result = nextQuotedValue('"');
+            result = nextQuotedName('"');
         } else {
             throw new IllegalStateException("Expected a name but was " + peek() + locationString());
         }
@@ -819,8 +905,7 @@ public class JsonReader implements Closeable {
         } else if (p == PEEKED_LONG) {
             result = Long.toString(peekedLong);
         } else if (p == PEEKED_NUMBER) {
-            result = new String(buffer, pos, peekedNumberLength);
-            pos += peekedNumberLength;
+            result = nextNumberLiteral();
         } else {
             throw new IllegalStateException("Expected a string but was " + peek() + locationString());
         }
@@ -895,8 +980,7 @@ public class JsonReader implements Closeable {
         }
 
         if (p == PEEKED_NUMBER) {
-            peekedString = new String(buffer, pos, peekedNumberLength);
-            pos += peekedNumberLength;
+            peekedString = nextNumberLiteral();
         } else if (p == PEEKED_SINGLE_QUOTED || p == PEEKED_DOUBLE_QUOTED) {
             peekedString = nextQuotedValue(p == PEEKED_SINGLE_QUOTED ? '\'' : '"');
         } else if (p == PEEKED_UNQUOTED) {
@@ -940,8 +1024,7 @@ public class JsonReader implements Closeable {
         }
 
         if (p == PEEKED_NUMBER) {
-            peekedString = new String(buffer, pos, peekedNumberLength);
-            pos += peekedNumberLength;
+            peekedString = nextNumberLiteral();
         } else if (p == PEEKED_SINGLE_QUOTED || p == PEEKED_DOUBLE_QUOTED || p == PEEKED_UNQUOTED) {
             if (p == PEEKED_UNQUOTED) {
                 peekedString = nextUnquotedValue();
@@ -982,7 +1065,7 @@ public class JsonReader implements Closeable {
      * @throws NumberFormatException if any unicode escape sequences are
      *     malformed.
      */
-    private String nextQuotedValue(char quote) throws IOException {
+    String nextQuotedValue(char quote) throws IOException {
         // Like nextNonWhitespace, this uses locals 'p' and 'l' to save inner-loop field access.
         char[] buffer = this.buffer;
         StringBuilder builder = new StringBuilder();
@@ -1019,11 +1102,42 @@ public class JsonReader implements Closeable {
         }
     }
 
+    /**
+     * Like {@link #nextQuotedValue(char)}, but returns the name from the
+     * {@link #namePool} if there is one. Names that are already in the buffer
+     * and have no escapes are looked up without creating a string.
+     */
+    String nextQuotedName(char quote) throws IOException {
+        StringPool namePool = this.namePool;
+        if (namePool != null) {
+            char[] buffer = this.buffer;
+            for (int p = pos, l = limit; p < l; p++) {
+                char c = buffer[p];
+                if (c == quote) {
+                    String result = namePool.get(buffer, pos, p - pos);
+                    pos = p + 1;
+                    return result;
+                } else if (c == '\\' || c == '\n') {
+                    break;
+                }
+            }
+        }
+        return nextQuotedValue(quote);
+    }
+
+    /**
+     * Like {@link #nextQuotedValue(char)}, but subclasses may return chars that
+     * refer to their input instead of a copy.
+     */
+    CharSequence nextQuotedChars(char quote) throws IOException {
+        return nextQuotedValue(quote);
+    }
+
     /**
      * Returns an unquoted value as a string.
      */
     @SuppressWarnings("fallthrough")
-    private String nextUnquotedValue() throws IOException {
+    String nextUnquotedValue() throws IOException {
         StringBuilder builder = null;
         int i = 0;
 
@@ -1084,7 +1198,7 @@ public class JsonReader implements Closeable {
         return result;
     }
 
-    private void skipQuotedValue(char quote) throws IOException {
+    void skipQuotedValue(char quote) throws IOException {
         // Like nextNonWhitespace, this uses locals 'p' and 'l' to save inner-loop field access.
         char[] buffer = this.buffer;
         do {
@@ -1111,7 +1225,16 @@ public class JsonReader implements Closeable {
         throw syntaxError("Unterminated string");
     }
 
-    private void skipUnquotedValue() throws IOException {
+    /**
+     * Returns the text of a {@link #PEEKED_NUMBER} literal and consumes it.
+     */
+    String nextNumberLiteral() throws IOException {
+        String result = new String(buffer, pos, peekedNumberLength);
+        pos += peekedNumberLength;
+        return result;
+    }
+
+    void skipUnquotedValue() throws IOException {
         do {
             int i = 0;
             for (; pos + i < limit; i++) {
@@ -1169,8 +1292,7 @@ public class JsonReader implements Closeable {
         }
 
         if (p == PEEKED_NUMBER) {
-            peekedString = new String(buffer, pos, peekedNumberLength);
-            pos += peekedNumberLength;
+            peekedString = nextNumberLiteral();
         } else if (p == PEEKED_SINGLE_QUOTED || p == PEEKED_DOUBLE_QUOTED || p == PEEKED_UNQUOTED) {
             if (p == PEEKED_UNQUOTED) {
                 peekedString = nextUnquotedValue();
@@ -1208,7 +1330,41 @@ public class JsonReader implements Closeable {
         peeked = PEEKED_NONE;
         stack[0] = JsonScope.CLOSED;
         stackSize = 1;
-        in.close();
+        if (in != null) {
+            in.close();
+        }
+    }
+
+    /**
+     * Makes this reader read a new document from {@code in}, as if it had just
+     * been created. The settings of this reader, like {@link #setLenient
+     * leniency} and the {@link #setNamePool name pool}, are kept, and so is the
+     * buffer. The previous input is not closed.
+     *
+     * <p>This is for {@link JsonRecycler}, which only resets plain char
+     * readers; the byte reading subclasses have no {@link Reader} to switch.
+     */
+    void reset(Reader in) {
+        if (in == null) {
+            throw new NullPointerException("in == null");
+        }
+        if (this.in == null) {
+            // the buffer was the input
+            buffer = new char[DEFAULT_BUFFER_SIZE];
+        }
+        this.in = in;
+        pos = 0;
+        limit = 0;
+        lineNumber = 0;
+        lineStart = 0;
+        peeked = PEEKED_NONE;
+        peekedString = null;
+        for (int i = 0; i < stackSize; i++) {
+            pathNames[i] = null;
+        }
+        stack[0] = JsonScope.EMPTY_DOCUMENT;
+        pathIndices[0] = 0;
+        stackSize = 1;
     }
 
     /**
@@ -1252,7 +1408,38 @@ public class JsonReader implements Closeable {
         pathNames[stackSize - 1] = "null";
     }
 
-    private void push(int newTop) {
+    /**
+     * Checks that the input is a well formed document without reading it:
+     * strings, names and numbers are scanned in place and never turned into
+     * objects. In lenient mode several top level values are accepted. Errors
+     * are reported with their location like when reading, except that the
+     * path does not have the names of skipped members.
+     *
+     * <p>This must be called before anything has been read, and leaves the
+     * reader at the end of the document.
+     *
+     * @throws MalformedJsonException at the first syntax error.
+     * @throws EOFException           if the input is empty or ends inside a
+     *                                value.
+     */
+    public void validate() throws IOException {
+        if (stackSize != 1 || stack[0] != JsonScope.EMPTY_DOCUMENT || peeked != PEEKED_NONE) {
+            throw new IllegalStateException("JsonReader is not at the start of the document");
+        }
+        try {
+            if (peek() == JsonToken.END_DOCUMENT) {
+                throw new EOFException("End of input" + locationString());
+            }
+            do {
+                skipValue();
+            } while (peek() != JsonToken.END_DOCUMENT);
+        } catch (NumberFormatException e) {
+            // only thrown for malformed unicode escapes when skipping
+            throw syntaxError("Invalid escape sequence " + e.getMessage());
+        }
+    }
+
+    void push(int newTop) {
         if (stackSize == stack.length) {
             int[] newStack = new int[stackSize * 2];
             int[] newPathIndices = new int[stackSize * 2];
@@ -1273,6 +1460,9 @@ public class JsonReader implements Closeable {
      * false.
      */
     private boolean fillBuffer(int minimum) throws IOException {
+        if (in == null) {
+            return false;
+        }
         char[] buffer = this.buffer;
         lineStart -= pos;
         if (limit != pos) {
@@ -1396,7 +1586,7 @@ public class JsonReader implements Closeable {
         }
     }
 
-    private void checkLenient() throws IOException {
+    void checkLenient() throws IOException {
         if (!lenient) {
             throw syntaxError("Use JsonReader.setLenient(true) to accept malformed JSON");
         }
@@ -1445,7 +1635,7 @@ public class JsonReader implements Closeable {
         return getClass().getSimpleName() + locationString();
     }
 
-    private String locationString() {
+    String locationString() {
         int line = lineNumber + 1;
         int column = pos - lineStart + 1;
         return " at line: " + line + ", column: " + column + ", path: " + getPath()
@@ -1483,7 +1673,7 @@ public class JsonReader implements Closeable {
         return result.toString();
     }
 
-    private CharSequence getSnippet() {
+    CharSequence getSnippet() {
         StringBuilder snippet = new StringBuilder();
         if (buffer.length > 0 && pos == 0 && limit == 0) {
             snippet.append("EOF");
@@ -1569,7 +1759,7 @@ public class JsonReader implements Closeable {
      * Throws a new IO exception with the given message and a context snippet
      * with this reader's content.
      */
-    private IOException syntaxError(String message) throws IOException {
+    IOException syntaxError(String message) throws IOException {
         throw new MalformedJsonException(message + locationString());
     }
 
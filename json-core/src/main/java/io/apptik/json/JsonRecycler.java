@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+ * Keeps a {@link JsonReader} and {@link JsonWriter}s per thread, so that code
+ * reading or writing many small documents does not allocate a new reader or
+ * writer with its buffers and stacks for each of them.
+ * {@link JsonElement#readFrom(Reader)} and {@link JsonElement#toString()} use
+ * these instances too.
+ *
+ * <p>An instance obtained here has the default settings. It must be given back
+ * with {@code recycle} on the same thread once it is no longer used, and not
+ * be used afterwards. While the cached instance is in use, for example when a
+ * document is read while reading another, a new instance is returned, so
+ * nesting only costs an allocation.
+ */
+public final class JsonRecycler {
+
+    /** Longer strings are not worth keeping the buffer of a string writer for. */
+    private static final int MAX_CACHED_CAPACITY = 1 << 16;
+
+    private static final ThreadLocal<JsonRecycler> CACHE = new ThreadLocal<JsonRecycler>() {
+        @Override
+        protected JsonRecycler initialValue() {
+            return new JsonRecycler();
+        }
+    };
+
+    /** Replaces the input of a cached reader so that it is not kept reachable. */
+    private static final Reader NO_INPUT = new Reader() {
+        @Override
+        public int read(char[] buffer, int offset, int count) {
+            return -1;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    /** Replaces the output of a cached writer so that it is not kept reachable. */
+    private static final Writer NO_OUTPUT = new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int count) {
+            throw new IllegalStateException("JsonWriter has been recycled");
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    /** Replaces the output of a cached UTF-8 writer so that it is not kept reachable. */
+    private static final OutputStream NO_OUTPUT_STREAM = new OutputStream() {
+        @Override
+        public void write(int b) {
+            throw new IllegalStateException("JsonWriter has been recycled");
+        }
+    };
+
+    private JsonReader reader;
+    private JsonWriter writer;
+    private Utf8JsonWriter utf8Writer;
+    private StringWriter stringWriter;
+
+    private JsonRecycler() {
+    }
+
+    /**
+     * Returns a reader of {@code in}, reusing the cached one if it is not in
+     * use.
+     */
+    public static JsonReader obtainReader(Reader in) {
+        JsonRecycler cache = CACHE.get();
+        JsonReader result = cache.reader;
+        if (result == null) {
+            return new JsonReader(in);
+        }
+        cache.reader = null;
+        result.reset(in);
+        return result;
+    }
+
+    /**
+     * Gives back a reader obtained with {@link #obtainReader(Reader)}. Its
+     * input is not closed.
+     */
+    public static void recycle(JsonReader reader) {
+        if (reader.getClass() != JsonReader.class) {
+            return;
+        }
+        reader.reset(NO_INPUT);
+        reader.setLenient(false);
+        reader.lineDelimited = false;
+        reader.setNamePool(null);
+        CACHE.get().reader = reader;
+    }
+
+    /**
+     * Returns a writer to {@code out}, reusing the cached one if it is not in
+     * use.
+     */
+    public static JsonWriter obtainWriter(Writer out) {
+        JsonRecycler cache = CACHE.get();
+        JsonWriter result = cache.writer;
+        if (result == null) {
+            return new JsonWriter(out);
+        }
+        cache.writer = null;
+        result.reset(out);
+        return result;
+    }
+
+    /**
+     * Returns a UTF-8 writer to {@code out}, reusing the cached one with its
+     * buffer if it is not in use.
+     */
+    public static Utf8JsonWriter obtainWriter(OutputStream out) {
+        JsonRecycler cache = CACHE.get();
+        Utf8JsonWriter result = cache.utf8Writer;
+        if (result == null) {
+            return new Utf8JsonWriter(out);
+        }
+        cache.utf8Writer = null;
+        result.reset(out);
+        return result;
+    }
+
+    /**
+     * Gives back a writer obtained with {@link #obtainWriter(Writer)} or
+     * {@link #obtainWriter(OutputStream)}. Its output is neither flushed nor
+     * closed.
+     */
+    public static void recycle(JsonWriter writer) {
+        if (writer.getClass() == JsonWriter.class) {
+            writer.reset(NO_OUTPUT);
+            clearSettings(writer);
+            CACHE.get().writer = writer;
+        } else if (writer.getClass() == Utf8JsonWriter.class) {
+            ((Utf8JsonWriter) writer).reset(NO_OUTPUT_STREAM);
+            clearSettings(writer);
+            CACHE.get().utf8Writer = (Utf8JsonWriter) writer;
+        }
+    }
+
+    private static void clearSettings(JsonWriter writer) {
+        writer.setIndent("");
+        writer.setLenient(false);
+        writer.lineDelimited = false;
+        writer.setHtmlSafe(false);
+        writer.setSerializeNulls(true);
+    }
+
+    static StringWriter obtainStringWriter() {
+        JsonRecycler cache = CACHE.get();
+        StringWriter result = cache.stringWriter;
+        if (result == null) {
+            return new StringWriter();
+        }
+        cache.stringWriter = null;
+        return result;
+    }
+
+    static void recycle(StringWriter stringWriter) {
+        StringBuffer buffer = stringWriter.getBuffer();
+        if (buffer.capacity() <= MAX_CACHED_CAPACITY) {
+            buffer.setLength(0);
+            CACHE.get().stringWriter = stringWriter;
+        }
+    }
+}
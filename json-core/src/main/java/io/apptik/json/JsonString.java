@@ -22,13 +22,64 @@ import java.io.IOException;
 
 public final class JsonString extends JsonElement {
 
-    private final String value;
+    private String value;
+
+    /**
+     * The content before it was first needed as a {@link String}; it may refer
+     * to the input it was read from.
+     */
+    private CharSequence chars;
+
+    /** Where to read the value from when first needed, or null if not read lazily. */
+    private final LazyString lazy;
 
     public JsonString( String value) {
         if( value == null ) {
             throw new NullPointerException( "value is null" );
         }
         this.value = value;
+        this.lazy = null;
+    }
+
+    /**
+     * Creates a {@code JsonString} whose value is read from {@code lazy} when
+     * first needed.
+     */
+    JsonString(LazyString lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Creates a {@code JsonString} holding {@code chars}, which is turned into
+     * a {@link String} only when first needed.
+     */
+    JsonString(CharSequence chars) {
+        if (chars instanceof String) {
+            this.value = (String) chars;
+        } else {
+            this.chars = chars;
+        }
+        this.lazy = null;
+    }
+
+    private String value() {
+        String result = value;
+        if (result == null) {
+            CharSequence chars = this.chars;
+            result = value = chars != null ? chars.toString() : lazy.readString();
+        }
+        return result;
+    }
+
+    private CharSequence chars() {
+        CharSequence result = value;
+        if (result == null) {
+            result = chars;
+            if (result == null) {
+                result = chars = lazy.readChars();
+            }
+        }
+        return result;
     }
 
     @Override
@@ -38,31 +89,51 @@ public final class JsonString extends JsonElement {
 
     @Override
     public String toString() {
-        //we dont want to return the same object
-        return new String(value);
+        return value();
     }
 
     @Override
     public String asString() {
-        //we dont want to return the same object
-        return new String(value);
+        return value();
+    }
+
+    /**
+     * Returns the content of this string without copying it. A string read
+     * from a byte array, a mapped file or lazily may refer to that input until
+     * its {@link String} value is first needed; the returned sequence then keeps
+     * the input from being garbage collected.
+     */
+    public CharSequence asCharSequence() {
+        return chars();
+    }
+
+    /**
+     * Returns true if this string holds the same chars as {@code chars}. This
+     * compares strings that refer to their input without copying them.
+     */
+    public boolean contentEquals(CharSequence chars) {
+        return chars != null && SourceString.contentEquals(chars(), chars);
     }
 
     @Override
     public int hashCode() {
-        return value.hashCode();
+        return chars().hashCode();
     }
 
     @Override
     public boolean equals( Object o ) {
-        return (o instanceof JsonString && ((JsonString) o).value.equals(value))
-                || (o != null && o.equals(value))
-                ;
+        if (o instanceof JsonString) {
+            return SourceString.contentEquals(((JsonString) o).chars(), chars());
+        }
+        if (o instanceof String) {
+            return SourceString.contentEquals((String) o, chars());
+        }
+        return o != null && o.equals(value());
     }
 
     @Override
     public void write( JsonWriter writer ) throws IOException {
-        writer.value(value);
+        writer.value(value());
     }
 
     @Override
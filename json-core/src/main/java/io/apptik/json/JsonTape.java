@@ -0,0 +1,919 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.apptik.json.exception.JsonException;
+import io.apptik.json.exception.MalformedJsonException;
+
+import static io.apptik.json.JsonNull.JSON_NULL;
+
+/**
+ * A UTF-8 encoded JSON document parsed into a tape: a flat {@code long[]} with
+ * one entry per token, built in two passes. The first pass finds all
+ * structural characters and string boundaries in bulk, see
+ * {@link StructuralIndex}. The second pass walks these offsets, checks the
+ * grammar and writes the tape without looking at the bytes in between, except
+ * to parse numbers.
+ *
+ * <p>Each entry has the kind of token in its top byte. Objects and arrays have
+ * an entry at both ends that points past the other, so a whole value is
+ * skipped in one step. Longs and short doubles are parsed while the tape is
+ * built and keep their value in the following entry; other numbers and strings
+ * are only decoded when they are read.
+ *
+ * <p>A tape is read with a {@link #cursor() cursor}, or turned into a tree with
+ * {@link #toJsonElement()} whose objects and arrays read their members from
+ * the tape when they are first accessed. The tape keeps a reference to the
+ * input, which must not be modified while the tape is used.
+ *
+ * <p>Only strict JSON is accepted and the input must hold exactly one value.
+ */
+public final class JsonTape {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    static final int OBJECT = '{';
+    static final int OBJECT_END = '}';
+    static final int ARRAY = '[';
+    static final int ARRAY_END = ']';
+    /** Offset of the opening quote; the next entry holds the closing quote's. */
+    static final int STRING = '"';
+    /** The next entry holds the value. */
+    static final int LONG = 'l';
+    /** Offset and length of the literal; the next entry holds the value's bits. */
+    static final int DOUBLE = 'd';
+    /**
+     * Offset and length of a number that is parsed when read: an integer too
+     * large for a long, or a double that needs more than the fast path.
+     */
+    static final int NUMBER = 'n';
+    static final int TRUE = 't';
+    static final int FALSE = 'f';
+    static final int NULL = '0';
+
+    private static final int TYPE_SHIFT = 56;
+    private static final long PAYLOAD = (1L << TYPE_SHIFT) - 1;
+    private static final long OFFSET = 0xffffffffL;
+    /** Largest count stored in the entry opening an object or array. */
+    private static final int MAX_COUNT = (1 << 24) - 1;
+    /** Set in the closing quote entry of strings that have escapes. */
+    private static final long ESCAPED = 1L << 32;
+
+    /** Powers of ten that are exact as a double. */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private final byte[] bytes;
+    private final long[] tape;
+    private final int length;
+
+    private JsonTape(byte[] bytes, long[] tape, int length) {
+        this.bytes = bytes;
+        this.tape = tape;
+        this.length = length;
+    }
+
+    /**
+     * Parses the UTF-8 encoded JSON in {@code bytes}.
+     *
+     * @throws MalformedJsonException if the input is not a single well formed
+     *                                JSON value.
+     */
+    public static JsonTape parse(byte[] bytes) throws IOException {
+        return parse(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parses {@code length} bytes of UTF-8 encoded JSON at {@code offset}.
+     */
+    public static JsonTape parse(byte[] bytes, int offset, int length) throws IOException {
+        int start = offset;
+        int end = offset + length;
+        if (length >= 3 && (bytes[start] & 0xff) == 0xef
+                && (bytes[start + 1] & 0xff) == 0xbb && (bytes[start + 2] & 0xff) == 0xbf) {
+            start += 3;
+        }
+        StructuralIndex index = StructuralIndex.build(bytes, start, end);
+        return new Builder(bytes, index, end).build();
+    }
+
+    public static JsonTape parse(String json) throws IOException {
+        return parse(json.getBytes(UTF_8));
+    }
+
+    /**
+     * Returns a new cursor positioned before the value of the document.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Returns the value of the document. Its objects and arrays read their
+     * members from the tape when first accessed, like those of
+     * {@link JsonElement#readLazily(byte[])}.
+     */
+    public JsonElement toJsonElement() {
+        return element(0);
+    }
+
+    private static int type(long entry) {
+        return (int) (entry >>> TYPE_SHIFT);
+    }
+
+    private static long entry(int type, long payload) {
+        return ((long) type << TYPE_SHIFT) | payload;
+    }
+
+    /**
+     * Returns the index of the entry after the value at {@code index}.
+     */
+    private int next(int index) {
+        long entry = tape[index];
+        switch (type(entry)) {
+            case OBJECT:
+            case ARRAY:
+                return (int) (entry & OFFSET);
+            case STRING:
+            case LONG:
+            case DOUBLE:
+                return index + 2;
+            default:
+                return index + 1;
+        }
+    }
+
+    /**
+     * Returns the number of members or values of the object or array at
+     * {@code index}, or {@link #MAX_COUNT} if there are at least as many.
+     */
+    private int count(int index) {
+        return (int) ((tape[index] & PAYLOAD) >>> 32);
+    }
+
+    private JsonElement element(int index) {
+        long entry = tape[index];
+        switch (type(entry)) {
+            case OBJECT:
+                return new JsonObject(new Value(index));
+            case ARRAY:
+                return new JsonArray(new Value(index));
+            case STRING:
+                return new JsonString(new Value(index));
+            case LONG:
+                return new JsonNumber(tape[index + 1]);
+            case DOUBLE:
+                return new JsonNumber(literal(entry), Double.longBitsToDouble(tape[index + 1]));
+            case NUMBER:
+                return new JsonNumber(literal(entry));
+            case TRUE:
+                return new JsonBoolean(true);
+            case FALSE:
+                return new JsonBoolean(false);
+            default:
+                return JSON_NULL;
+        }
+    }
+
+    private String literal(long entry) {
+        return new String(bytes, (int) (entry & OFFSET), (int) ((entry & PAYLOAD) >>> 32), ISO_8859_1);
+    }
+
+    /**
+     * Returns the content of the string at {@code index}, referring to the
+     * tape's bytes if it has no escapes.
+     */
+    private CharSequence chars(int index) {
+        int start = (int) (tape[index] & OFFSET);
+        long end = tape[index + 1];
+        if ((end & ESCAPED) == 0) {
+            int length = (int) (end & OFFSET) - start - 1;
+            boolean ascii = true;
+            for (int i = start + 1, e = start + 1 + length; i < e && ascii; i++) {
+                ascii = bytes[i] >= 0;
+            }
+            return new SourceString(ByteBuffer.wrap(bytes), start + 1, length, ascii);
+        }
+        return string(index);
+    }
+
+    private String string(int index) {
+        int start = (int) (tape[index] & OFFSET);
+        long end = tape[index + 1];
+        if ((end & ESCAPED) == 0) {
+            return new String(bytes, start + 1, (int) (end & OFFSET) - start - 1, UTF_8);
+        }
+        try {
+            return new Utf8JsonReader(ByteBuffer.wrap(bytes, start, (int) (end & OFFSET) + 1 - start)).nextString();
+        } catch (IOException e) {
+            throw new JsonException("Cannot read string", e);
+        }
+    }
+
+    /**
+     * The content of an object, array or string on the tape.
+     */
+    private final class Value implements LazyObject, LazyArray, LazyString {
+        private final int index;
+
+        Value(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void readMembers(JsonObject target) {
+            int end = (int) (tape[index] & OFFSET) - 1;
+            for (int i = index + 1; i < end; ) {
+                String name = string(i);
+                i += 2;
+                target.putInternal(name, element(i));
+                i = next(i);
+            }
+        }
+
+        @Override
+        public List<JsonElement> readElements() {
+            int end = (int) (tape[index] & OFFSET) - 1;
+            int count = count(index);
+            // count the kinds of values first, primitives are only copied
+            // out if all values fit in the same kind of list
+            int longs = 0;
+            int doubles = 0;
+            int booleans = 0;
+            boolean exact = true;
+            for (int i = index + 1; i < end; i = next(i)) {
+                switch (type(tape[i])) {
+                    case LONG:
+                        longs++;
+                        long value = tape[i + 1];
+                        exact &= value <= PrimitiveList.MAX_EXACT_DOUBLE && value >= -PrimitiveList.MAX_EXACT_DOUBLE;
+                        break;
+                    case DOUBLE:
+                    case NUMBER:
+                        doubles++;
+                        break;
+                    case TRUE:
+                    case FALSE:
+                        booleans++;
+                        break;
+                    default:
+                        return readValues(end, count);
+                }
+            }
+            if (longs + doubles + booleans == 0) {
+                return new ArrayList<JsonElement>();
+            }
+            if (booleans == 0 && doubles == 0) {
+                long[] values = new long[longs];
+                for (int i = index + 1, j = 0; i < end; i += 2) {
+                    values[j++] = tape[i + 1];
+                }
+                return new PrimitiveList.OfLong(values);
+            }
+            if (booleans == 0 && exact) {
+                PrimitiveList.OfDouble values = new PrimitiveList.OfDouble();
+                values.values = new double[longs + doubles];
+                for (int i = index + 1; i < end; i = next(i)) {
+                    long entry = tape[i];
+                    switch (type(entry)) {
+                        case LONG:
+                            values.addIntegral(tape[i + 1]);
+                            break;
+                        case DOUBLE:
+                            values.addDouble(Double.longBitsToDouble(tape[i + 1]));
+                            break;
+                        default:
+                            String literal = literal(entry);
+                            double value = JsonNumber.isIntegral(literal) ? Double.NaN : Double.parseDouble(literal);
+                            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                                return readValues(end, count);
+                            }
+                            values.addDouble(value);
+                    }
+                }
+                return values;
+            }
+            if (longs + doubles == 0) {
+                boolean[] values = new boolean[booleans];
+                for (int i = index + 1, j = 0; i < end; i++) {
+                    values[j++] = type(tape[i]) == TRUE;
+                }
+                return new PrimitiveList.OfBoolean(values);
+            }
+            return readValues(end, count);
+        }
+
+        private List<JsonElement> readValues(int end, int count) {
+            List<JsonElement> result = new ArrayList<JsonElement>(count);
+            for (int i = index + 1; i < end; i = next(i)) {
+                result.add(element(i));
+            }
+            return result;
+        }
+
+        @Override
+        public String readString() {
+            return string(index);
+        }
+
+        @Override
+        public CharSequence readChars() {
+            return chars(index);
+        }
+    }
+
+    /**
+     * Reads the tape token by token, like {@link JsonReader} reads text.
+     * Skipping an object or array takes constant time.
+     */
+    public final class Cursor {
+        private static final int IN_ARRAY = 1;
+        private static final int OBJECT_NAME = 2;
+        private static final int OBJECT_VALUE = 3;
+
+        private int pos;
+        private int[] stack = new int[32];
+        private int depth;
+
+        private Cursor() {
+        }
+
+        public JsonToken peek() {
+            if (pos == length) {
+                return JsonToken.END_DOCUMENT;
+            }
+            switch (type(tape[pos])) {
+                case OBJECT:
+                    return JsonToken.BEGIN_OBJECT;
+                case OBJECT_END:
+                    return JsonToken.END_OBJECT;
+                case ARRAY:
+                    return JsonToken.BEGIN_ARRAY;
+                case ARRAY_END:
+                    return JsonToken.END_ARRAY;
+                case STRING:
+                    return depth > 0 && stack[depth - 1] == OBJECT_NAME ? JsonToken.NAME : JsonToken.STRING;
+                case LONG:
+                case DOUBLE:
+                case NUMBER:
+                    return JsonToken.NUMBER;
+                case TRUE:
+                case FALSE:
+                    return JsonToken.BOOLEAN;
+                default:
+                    return JsonToken.NULL;
+            }
+        }
+
+        /**
+         * Returns true if the current object or array has another element.
+         */
+        public boolean hasNext() {
+            JsonToken token = peek();
+            return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY
+                    && token != JsonToken.END_DOCUMENT;
+        }
+
+        public void beginObject() {
+            expect(JsonToken.BEGIN_OBJECT);
+            pos++;
+            push(OBJECT_NAME);
+        }
+
+        public void endObject() {
+            expect(JsonToken.END_OBJECT);
+            pos++;
+            depth--;
+            valueRead();
+        }
+
+        public void beginArray() {
+            expect(JsonToken.BEGIN_ARRAY);
+            pos++;
+            push(IN_ARRAY);
+        }
+
+        public void endArray() {
+            expect(JsonToken.END_ARRAY);
+            pos++;
+            depth--;
+            valueRead();
+        }
+
+        public String nextName() {
+            expect(JsonToken.NAME);
+            String result = string(pos);
+            pos += 2;
+            stack[depth - 1] = OBJECT_VALUE;
+            return result;
+        }
+
+        /**
+         * Returns the next string, or the literal of the next number.
+         */
+        public String nextString() {
+            String result;
+            switch (peek()) {
+                case STRING:
+                    result = string(pos);
+                    break;
+                case NUMBER:
+                    long entry = tape[pos];
+                    result = type(entry) == LONG ? Long.toString(tape[pos + 1]) : literal(entry);
+                    break;
+                default:
+                    throw unexpected(JsonToken.STRING);
+            }
+            pos = next(pos);
+            valueRead();
+            return result;
+        }
+
+        public boolean nextBoolean() {
+            expect(JsonToken.BOOLEAN);
+            boolean result = type(tape[pos]) == TRUE;
+            pos++;
+            valueRead();
+            return result;
+        }
+
+        public void nextNull() {
+            expect(JsonToken.NULL);
+            pos++;
+            valueRead();
+        }
+
+        /**
+         * @throws NumberFormatException if the next number is not a long.
+         */
+        public long nextLong() {
+            expect(JsonToken.NUMBER);
+            long entry = tape[pos];
+            long result;
+            if (type(entry) == LONG) {
+                result = tape[pos + 1];
+            } else {
+                double value = type(entry) == DOUBLE
+                        ? Double.longBitsToDouble(tape[pos + 1]) : Double.parseDouble(literal(entry));
+                result = (long) value;
+                if (result != value) {
+                    throw new NumberFormatException("Expected a long but was " + literal(entry));
+                }
+            }
+            pos = next(pos);
+            valueRead();
+            return result;
+        }
+
+        /**
+         * @throws NumberFormatException if the next number is not an int.
+         */
+        public int nextInt() {
+            int at = pos;
+            long result = nextLong();
+            if (result != (int) result) {
+                pos = at;
+                throw new NumberFormatException("Expected an int but was " + result);
+            }
+            return (int) result;
+        }
+
+        public double nextDouble() {
+            expect(JsonToken.NUMBER);
+            long entry = tape[pos];
+            double result;
+            switch (type(entry)) {
+                case LONG:
+                    result = tape[pos + 1];
+                    break;
+                case DOUBLE:
+                    result = Double.longBitsToDouble(tape[pos + 1]);
+                    break;
+                default:
+                    result = Double.parseDouble(literal(entry));
+            }
+            pos = next(pos);
+            valueRead();
+            return result;
+        }
+
+        /**
+         * Reads the next value as a {@link JsonElement}, see
+         * {@link JsonTape#toJsonElement()}.
+         */
+        public JsonElement nextElement() {
+            JsonToken token = peek();
+            if (token == JsonToken.NAME || !hasNext()) {
+                throw new IllegalStateException("Expected a value but was " + token + " at tape entry " + pos);
+            }
+            JsonElement result = element(pos);
+            pos = next(pos);
+            valueRead();
+            return result;
+        }
+
+        /**
+         * Skips the next value, or the next name and its value.
+         */
+        public void skipValue() {
+            if (!hasNext()) {
+                throw new IllegalStateException("No value to skip at " + peek());
+            }
+            if (peek() == JsonToken.NAME) {
+                pos += 2;
+            }
+            pos = next(pos);
+            valueRead();
+        }
+
+        private void push(int scope) {
+            if (depth == stack.length) {
+                int[] newStack = new int[depth << 1];
+                System.arraycopy(stack, 0, newStack, 0, depth);
+                stack = newStack;
+            }
+            stack[depth++] = scope;
+        }
+
+        private void valueRead() {
+            if (depth > 0 && stack[depth - 1] == OBJECT_VALUE) {
+                stack[depth - 1] = OBJECT_NAME;
+            }
+        }
+
+        private void expect(JsonToken token) {
+            if (peek() != token) {
+                throw unexpected(token);
+            }
+        }
+
+        private IllegalStateException unexpected(JsonToken token) {
+            return new IllegalStateException("Expected " + token + " but was " + peek() + " at tape entry " + pos);
+        }
+    }
+
+    /**
+     * The second pass: checks the grammar of the indexed document and writes
+     * its tape.
+     */
+    private static final class Builder {
+        private final byte[] bytes;
+        private final int[] offsets;
+        private final StructuralIndex index;
+        private final int end;
+
+        private final long[] tape;
+        private int length;
+        /** Tape indices of the entries opening the enclosing objects and arrays. */
+        private int[] open = new int[32];
+        private int[] counts = new int[32];
+        private int depth;
+
+        Builder(byte[] bytes, StructuralIndex index, int end) {
+            this.bytes = bytes;
+            this.offsets = index.offsets;
+            this.index = index;
+            this.end = end;
+            // every offset adds at most two entries
+            this.tape = new long[(index.count << 1) + 1];
+        }
+
+        JsonTape build() throws MalformedJsonException {
+            int i = 0;
+            int count = index.count;
+            if (count == 0) {
+                throw new MalformedJsonException("End of input");
+            }
+            while (true) {
+                // a value is expected at offsets[i]
+                int offset = offsets[i];
+                int c = i < count ? bytes[offset] & 0xff : -1;
+                switch (c) {
+                    case '{':
+                        push(OBJECT);
+                        i++;
+                        if (i < count && bytes[offsets[i]] == '}') {
+                            i = close(i, OBJECT_END);
+                        } else {
+                            i = name(i);
+                            continue;
+                        }
+                        break;
+                    case '[':
+                        push(ARRAY);
+                        i++;
+                        if (i < count && bytes[offsets[i]] == ']') {
+                            i = close(i, ARRAY_END);
+                        } else {
+                            continue;
+                        }
+                        break;
+                    case '"':
+                        string(offset, offsets[i + 1]);
+                        i += 2;
+                        break;
+                    case 't':
+                        literal(offset, "true", TRUE);
+                        i++;
+                        break;
+                    case 'f':
+                        literal(offset, "false", FALSE);
+                        i++;
+                        break;
+                    case 'n':
+                        literal(offset, "null", NULL);
+                        i++;
+                        break;
+                    default:
+                        if (c == '-' || (c >= '0' && c <= '9')) {
+                            number(offset);
+                            i++;
+                            break;
+                        }
+                        throw syntaxError(c < 0 ? "End of input" : "Expected value", offset);
+                }
+
+                // after a value: a comma, the end of the enclosing object or
+                // array, or the end of the document
+                while (true) {
+                    if (depth == 0) {
+                        if (i < count) {
+                            throw syntaxError("Expected end of input", offsets[i]);
+                        }
+                        return new JsonTape(bytes, tape, length);
+                    }
+                    int type = type(tape[open[depth - 1]]);
+                    c = i < count ? bytes[offsets[i]] & 0xff : -1;
+                    if (c == ',') {
+                        counts[depth - 1]++;
+                        i++;
+                        if (type == OBJECT) {
+                            i = name(i);
+                        }
+                        break;
+                    } else if (type == OBJECT && c == '}') {
+                        counts[depth - 1]++;
+                        i = close(i, OBJECT_END);
+                    } else if (type == ARRAY && c == ']') {
+                        counts[depth - 1]++;
+                        i = close(i, ARRAY_END);
+                    } else if (c < 0) {
+                        throw syntaxError(type == OBJECT ? "Unterminated object" : "Unterminated array", end);
+                    } else {
+                        throw syntaxError(type == OBJECT ? "Expected ',' or '}'" : "Expected ',' or ']'",
+                                offsets[i]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes the name at {@code offsets[i]} and checks the colon after it.
+         *
+         * @return the index of the offset of the value.
+         */
+        private int name(int i) throws MalformedJsonException {
+            int offset = offsets[i];
+            if (i >= index.count || bytes[offset] != '"') {
+                throw syntaxError("Expected name", offset);
+            }
+            string(offset, offsets[i + 1]);
+            if (i + 2 >= index.count || bytes[offsets[i + 2]] != ':') {
+                throw syntaxError("Expected ':'", offsets[i + 2]);
+            }
+            return i + 3;
+        }
+
+        private void push(int type) {
+            if (depth == open.length) {
+                int[] newOpen = new int[depth << 1];
+                System.arraycopy(open, 0, newOpen, 0, depth);
+                open = newOpen;
+                int[] newCounts = new int[depth << 1];
+                System.arraycopy(counts, 0, newCounts, 0, depth);
+                counts = newCounts;
+            }
+            open[depth] = length;
+            counts[depth] = 0;
+            depth++;
+            tape[length++] = entry(type, 0);
+        }
+
+        private int close(int i, int type) {
+            depth--;
+            int start = open[depth];
+            tape[length] = entry(type, start);
+            length++;
+            tape[start] |= ((long) Math.min(counts[depth], MAX_COUNT) << 32) | length;
+            return i + 1;
+        }
+
+        private void string(int start, int end) throws MalformedJsonException {
+            long flags = 0;
+            if (index.mayHaveBackslash(start, end)) {
+                for (int p = start + 1; p < end; p++) {
+                    if (bytes[p] == '\\') {
+                        p = escape(p, end);
+                        flags = ESCAPED;
+                    }
+                }
+            }
+            tape[length++] = entry(STRING, start);
+            tape[length++] = end | flags;
+        }
+
+        /**
+         * Checks the escape sequence at {@code p} of a string that ends at
+         * {@code end} and returns the offset of its last byte.
+         */
+        private int escape(int p, int end) throws MalformedJsonException {
+            switch (bytes[p + 1]) {
+                case 'u':
+                    if (p + 6 > end) {
+                        throw syntaxError("Invalid escape sequence", p);
+                    }
+                    for (int i = p + 2; i < p + 6; i++) {
+                        int c = bytes[i];
+                        if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F')) {
+                            throw syntaxError("Invalid escape sequence", p);
+                        }
+                    }
+                    return p + 5;
+                case 't':
+                case 'b':
+                case 'n':
+                case 'r':
+                case 'f':
+                case '\n':
+                case '\'':
+                case '"':
+                case '\\':
+                case '/':
+                    return p + 1;
+                default:
+                    throw syntaxError("Invalid escape sequence", p);
+            }
+        }
+
+        private void literal(int offset, String literal, int type) throws MalformedJsonException {
+            int to = offset + literal.length();
+            if (to > end) {
+                throw syntaxError("Expected value", offset);
+            }
+            for (int p = offset + 1; p < to; p++) {
+                if (bytes[p] != literal.charAt(p - offset)) {
+                    throw syntaxError("Expected value", offset);
+                }
+            }
+            checkDelimiter(to, offset);
+            tape[length++] = entry(type, 0);
+        }
+
+        /**
+         * Checks the number at {@code offset}. Integers that fit are stored as
+         * longs and doubles that take no more than the exact fast path as
+         * doubles. Anything else keeps only its literal.
+         */
+        private void number(int offset) throws MalformedJsonException {
+            int p = offset;
+            boolean negative = bytes[p] == '-';
+            if (negative) {
+                p++;
+            }
+            int digitsStart = p;
+            long mantissa = 0;
+            int c = p < end ? bytes[p] : -1;
+            if (c == '0') {
+                p++;
+            } else if (c >= '1' && c <= '9') {
+                do {
+                    mantissa = mantissa * 10 + (c - '0');
+                    c = ++p < end ? bytes[p] : -1;
+                } while (c >= '0' && c <= '9');
+            } else {
+                throw syntaxError("Expected value", offset);
+            }
+            int digits = p - digitsStart;
+            int exponent = 0;
+            boolean integer = true;
+            if (p < end && bytes[p] == '.') {
+                integer = false;
+                int fractionStart = ++p;
+                while (p < end && bytes[p] >= '0' && bytes[p] <= '9') {
+                    mantissa = mantissa * 10 + (bytes[p] - '0');
+                    p++;
+                }
+                if (p == fractionStart) {
+                    throw syntaxError("Expected value", offset);
+                }
+                digits += p - fractionStart;
+                exponent = fractionStart - p;
+            }
+            if (p < end && (bytes[p] == 'e' || bytes[p] == 'E')) {
+                integer = false;
+                p++;
+                boolean negativeExponent = false;
+                if (p < end && (bytes[p] == '+' || bytes[p] == '-')) {
+                    negativeExponent = bytes[p] == '-';
+                    p++;
+                }
+                int exponentStart = p;
+                int value = 0;
+                while (p < end && bytes[p] >= '0' && bytes[p] <= '9') {
+                    if (value < 100000) {
+                        value = value * 10 + (bytes[p] - '0');
+                    }
+                    p++;
+                }
+                if (p == exponentStart) {
+                    throw syntaxError("Expected value", offset);
+                }
+                exponent += negativeExponent ? -value : value;
+            }
+            checkDelimiter(p, offset);
+            int literalLength = p - offset;
+            if (literalLength > MAX_COUNT) {
+                throw syntaxError("Number too long", offset);
+            }
+
+            // leading zeros are not allowed, so the digit count is exact
+            if (integer) {
+                if (digits <= 18) {
+                    tape[length++] = entry(LONG, offset);
+                    tape[length++] = negative ? -mantissa : mantissa;
+                    return;
+                }
+                // 19 digits are below 2^64, so the mantissa is exact when
+                // read as unsigned and it fits if it's within the signed range
+                if (digits == 19 && (mantissa >= 0 || negative && mantissa == Long.MIN_VALUE)) {
+                    tape[length++] = entry(LONG, offset);
+                    tape[length++] = negative ? -mantissa : mantissa;
+                    return;
+                }
+                tape[length++] = entry(NUMBER, ((long) literalLength << 32) | offset);
+                return;
+            }
+            if (digits <= 15 && exponent >= -22 && exponent <= 22) {
+                // both the mantissa and the power of ten are exact, so a
+                // single correctly rounded operation gives the exact result
+                double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+                tape[length++] = entry(DOUBLE, ((long) literalLength << 32) | offset);
+                tape[length++] = Double.doubleToRawLongBits(negative ? -value : value);
+                return;
+            }
+            tape[length++] = entry(NUMBER, ((long) literalLength << 32) | offset);
+        }
+
+        /**
+         * Checks that the value before {@code p} is not followed by anything
+         * but whitespace, a structural character or the end of input.
+         */
+        private void checkDelimiter(int p, int offset) throws MalformedJsonException {
+            if (p == end) {
+                return;
+            }
+            switch (bytes[p]) {
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                case ',':
+                case ':':
+                case '}':
+                case ']':
+                case '{':
+                case '[':
+                case '"':
+                    return;
+                default:
+                    throw syntaxError("Expected value", offset);
+            }
+        }
+
+        private MalformedJsonException syntaxError(String message, int offset) {
+            return new MalformedJsonException(message + " at offset " + offset);
+        }
+    }
+}
@@ -79,5 +79,12 @@ public enum JsonToken {
      * JsonReader#peek()} to signal that the Util-encoded value has no more
      * tokens.
      */
-    END_DOCUMENT
+    END_DOCUMENT,
+
+    /**
+     * Returned by {@link NonBlockingJsonReader#peek()} when the input fed so
+     * far ends before the next token does. The token can be read once more
+     * input has been fed.
+     */
+    NEED_MORE_INPUT
 }
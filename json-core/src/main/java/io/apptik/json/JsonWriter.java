@@ -76,7 +76,7 @@ import static io.apptik.json.JsonScope.NONEMPTY_OBJECT;
  * ]}</pre>
  * This code encodes the above structure: <pre>   {@code
  *   public void writeJsonStream(OutputStream out, List<Message> messages) throws IOException {
- *     JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, "UTF-8"));
+ *     JsonWriter writer = new Utf8JsonWriter(out);
  *     writer.setIndent("    ");
  *     writeMessagesArray(writer, messages);
  *     writer.close();
@@ -139,8 +139,8 @@ public class JsonWriter implements Closeable, Flushable {
      * newline characters. This prevents eval() from failing with a syntax
      * error. http://code.google.com/p/google-gson/issues/detail?id=341
      */
-    private static final String[] REPLACEMENT_CHARS;
-    private static final String[] HTML_SAFE_REPLACEMENT_CHARS;
+    static final String[] REPLACEMENT_CHARS;
+    static final String[] HTML_SAFE_REPLACEMENT_CHARS;
     static {
         REPLACEMENT_CHARS = new String[128];
         for (int i = 0; i <= 0x1f; i++) {
@@ -161,8 +161,18 @@ public class JsonWriter implements Closeable, Flushable {
         HTML_SAFE_REPLACEMENT_CHARS['\''] = "\\u0027";
     }
 
+    /** How many recently written member names are remembered. */
+    private static final int NAME_CACHE_SIZE = 256;
+
+    /**
+     * Longer member names are not remembered. A writer that
+     * {@link JsonRecycler} keeps for a thread keeps its names too, and this
+     * bounds what they hold on to.
+     */
+    private static final int MAX_CACHED_NAME_LENGTH = 64;
+
     /** The output data, containing at most one top-level array or object. */
-    private final Writer out;
+    private Writer out;
 
     private int[] stack = new int[32];
     private int stackSize = 0;
@@ -183,12 +193,28 @@ public class JsonWriter implements Closeable, Flushable {
 
     private boolean lenient;
 
+    /** True to accept a sequence of top-level values; the caller separates them. */
+    boolean lineDelimited;
+
     private boolean htmlSafe;
 
     private String deferredName;
 
+    /** The serialized form of {@link #deferredName}, if it has one. */
+    private SerializedName deferredSerializedName;
+
+    /**
+     * The most recent names of object members written, by identity hash.
+     * {@link #memberName(String)} serializes a name once it is seen again.
+     */
+    private String[] recentNames;
+    private SerializedName[] serializedNames;
+
     private boolean serializeNulls = true;
 
+    /** Scratch space numbers are formatted in. */
+    private final char[] digits = new char[24];
+
     /**
      * Creates a new instance that writes a JSON-encoded stream to {@code out}.
      * For best performance, ensure {@link Writer} is buffered; wrapping in
@@ -201,6 +227,43 @@ public class JsonWriter implements Closeable, Flushable {
         this.out = out;
     }
 
+    /**
+     * Creates a writer for subclasses that encode their output themselves by
+     * overriding {@link #write(String)}, {@link #write(char)},
+     * {@link #string(String)}, {@link #flushOutput()} and
+     * {@link #closeOutput()}.
+     */
+    JsonWriter() {
+        this.out = null;
+    }
+
+    /**
+     * Makes this writer write a new document to {@code out}, as if it had just
+     * been created. The settings of this writer, like the
+     * {@link #setIndent indent} and {@link #setLenient leniency}, are kept.
+     * The previous output is neither flushed nor closed.
+     *
+     * <p>This is for {@link JsonRecycler}, which only resets plain char
+     * writers; {@link Utf8JsonWriter} has resets of its own for its outputs.
+     */
+    void reset(Writer out) {
+        if (out == null) {
+            throw new NullPointerException("out == null");
+        }
+        this.out = out;
+        resetState();
+    }
+
+    /**
+     * Forgets the document written so far.
+     */
+    void resetState() {
+        stackSize = 0;
+        push(EMPTY_DOCUMENT);
+        deferredName = null;
+        deferredSerializedName = null;
+    }
+
     /**
      * Sets the indentation string to be repeated for each level of indentation
      * in the encoded document. If {@code indent.isEmpty()} the encoded document
@@ -324,7 +387,7 @@ public class JsonWriter implements Closeable, Flushable {
     private JsonWriter open(int empty, String openBracket) throws IOException {
         beforeValue();
         push(empty);
-        out.write(openBracket);
+        write(openBracket);
         return this;
     }
 
@@ -346,7 +409,7 @@ public class JsonWriter implements Closeable, Flushable {
         if (context == nonempty) {
             newline();
         }
-        out.write(closeBracket);
+        write(closeBracket);
         return this;
     }
 
@@ -393,17 +456,71 @@ public class JsonWriter implements Closeable, Flushable {
             throw new IllegalStateException("JsonWriter is closed.");
         }
         deferredName = name;
+        deferredSerializedName = null;
         return this;
     }
 
+    /**
+     * Encodes the property name, which has been quoted and escaped already.
+     *
+     * @param name the name of the forthcoming value. May not be null.
+     * @return this writer.
+     */
+    public JsonWriter name(SerializedName name) throws IOException {
+        if (name == null) {
+            throw new NullPointerException("name == null");
+        }
+        name(name.toString());
+        deferredSerializedName = name;
+        return this;
+    }
+
+    /**
+     * Like {@link #name(String)} for the name of a {@link JsonObject} member.
+     * Objects with the same keys often share the name instances, so a name
+     * that is written again is serialized and kept for the next time. The
+     * names stay remembered across {@link #reset resets}, so that recycled
+     * writers keep the benefit, which is why long names are not.
+     */
+    JsonWriter memberName(String name) throws IOException {
+        if (name.length() > MAX_CACHED_NAME_LENGTH) {
+            return name(name);
+        }
+        String[] recentNames = this.recentNames;
+        if (recentNames == null) {
+            recentNames = this.recentNames = new String[NAME_CACHE_SIZE];
+            serializedNames = new SerializedName[NAME_CACHE_SIZE];
+        }
+        int i = System.identityHashCode(name) & (NAME_CACHE_SIZE - 1);
+        if (recentNames[i] != name) {
+            recentNames[i] = name;
+            serializedNames[i] = null;
+            return name(name);
+        }
+        SerializedName serialized = serializedNames[i];
+        if (serialized == null) {
+            serialized = serializedNames[i] = SerializedName.of(name);
+        }
+        return name(serialized);
+    }
+
     private void writeDeferredName() throws IOException {
         if (deferredName != null) {
             beforeName();
-            string(deferredName);
+            if (deferredSerializedName != null) {
+                writeName(deferredSerializedName);
+                deferredSerializedName = null;
+            } else {
+                string(deferredName);
+            }
             deferredName = null;
         }
     }
 
+    void writeName(SerializedName name) throws IOException {
+        write(name.quoted(htmlSafe));
+    }
+
     /**
      * Encodes {@code value}.
      *
@@ -433,10 +550,32 @@ public class JsonWriter implements Closeable, Flushable {
         }
         writeDeferredName();
         beforeValue();
-        out.append(value);
+        write(value);
         return this;
     }
 
+    /**
+     * Returns true if this writer writes values exactly like
+     * {@link JsonElement#toString()} does, so that the cached text of a value
+     * can be written in its place.
+     */
+    boolean writesCompact() {
+        return indent == null && !htmlSafe && serializeNulls;
+    }
+
+    /**
+     * Writes the cached text of an object or array, like {@link #jsonValue}.
+     */
+    void cachedValue(CachedJson json) throws IOException {
+        writeDeferredName();
+        beforeValue();
+        writeCached(json);
+    }
+
+    void writeCached(CachedJson json) throws IOException {
+        write(json.chars);
+    }
+
     /**
      * Encodes {@code null}.
      *
@@ -448,11 +587,12 @@ public class JsonWriter implements Closeable, Flushable {
                 writeDeferredName();
             } else {
                 deferredName = null;
+                deferredSerializedName = null;
                 return this; // skip the name and the value
             }
         }
         beforeValue();
-        out.write("null");
+        write("null");
         return this;
     }
 
@@ -464,7 +604,7 @@ public class JsonWriter implements Closeable, Flushable {
     public JsonWriter value(boolean value) throws IOException {
         writeDeferredName();
         beforeValue();
-        out.write(value ? "true" : "false");
+        write(value ? "true" : "false");
         return this;
     }
 
@@ -479,7 +619,7 @@ public class JsonWriter implements Closeable, Flushable {
         }
         writeDeferredName();
         beforeValue();
-        out.write(value ? "true" : "false");
+        write(value ? "true" : "false");
         return this;
     }
 
@@ -496,7 +636,7 @@ public class JsonWriter implements Closeable, Flushable {
         }
         writeDeferredName();
         beforeValue();
-        out.append(Double.toString(value));
+        writeDouble(value);
         return this;
     }
 
@@ -508,7 +648,7 @@ public class JsonWriter implements Closeable, Flushable {
     public JsonWriter value(long value) throws IOException {
         writeDeferredName();
         beforeValue();
-        out.write(Long.toString(value));
+        writeLong(value);
         return this;
     }
 
@@ -525,13 +665,27 @@ public class JsonWriter implements Closeable, Flushable {
         }
 
         writeDeferredName();
+        if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            beforeValue();
+            writeLong(value.longValue());
+            return this;
+        }
+        if (value instanceof Double) {
+            double d = value.doubleValue();
+            if (!Double.isNaN(d) && !Double.isInfinite(d)) {
+                beforeValue();
+                writeDouble(d);
+                return this;
+            }
+        }
         String string = value.toString();
         if (!lenient
                 && (string.equals("-Infinity") || string.equals("Infinity") || string.equals("NaN"))) {
             throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
         }
         beforeValue();
-        out.append(string);
+        write(string);
         return this;
     }
 
@@ -543,7 +697,7 @@ public class JsonWriter implements Closeable, Flushable {
         if (stackSize == 0) {
             throw new IllegalStateException("JsonWriter is closed.");
         }
-        out.flush();
+        flushOutput();
     }
 
     /**
@@ -552,7 +706,7 @@ public class JsonWriter implements Closeable, Flushable {
      * @throws IOException if the JSON document is incomplete.
      */
     public void close() throws IOException {
-        out.close();
+        closeOutput();
 
         int size = stackSize;
         if (size > 1 || size == 1 && stack[size - 1] != NONEMPTY_DOCUMENT) {
@@ -561,7 +715,40 @@ public class JsonWriter implements Closeable, Flushable {
         stackSize = 0;
     }
 
-    private void string(String value) throws IOException {
+    /**
+     * Writes {@code value} as is.
+     */
+    void write(String value) throws IOException {
+        out.write(value);
+    }
+
+    /**
+     * Writes {@code c}, which is an ASCII char.
+     */
+    void write(char c) throws IOException {
+        out.write(c);
+    }
+
+    /**
+     * Writes {@code length} ASCII chars of {@code chars} starting at
+     * {@code offset}.
+     */
+    void write(char[] chars, int offset, int length) throws IOException {
+        out.write(chars, offset, length);
+    }
+
+    void flushOutput() throws IOException {
+        out.flush();
+    }
+
+    void closeOutput() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Writes {@code value} quoted and escaped.
+     */
+    void string(String value) throws IOException {
         String[] replacements = htmlSafe ? HTML_SAFE_REPLACEMENT_CHARS : REPLACEMENT_CHARS;
         out.write("\"");
         int last = 0;
@@ -593,14 +780,115 @@ public class JsonWriter implements Closeable, Flushable {
         out.write("\"");
     }
 
+    private void writeLong(long value) throws IOException {
+        char[] digits = this.digits;
+        write(digits, 0, formatLong(value, digits, 0));
+    }
+
+    private void writeDouble(double value) throws IOException {
+        char[] digits = this.digits;
+        int length = formatDouble(value, digits);
+        if (length >= 0) {
+            write(digits, 0, length);
+        } else {
+            write(Double.toString(value));
+        }
+    }
+
+    /**
+     * Writes the decimal digits of {@code value} into {@code chars} at
+     * {@code pos}, which must have room for 20 chars, and returns the position
+     * after the last digit.
+     */
+    static int formatLong(long value, char[] chars, int pos) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                String min = "-9223372036854775808";
+                min.getChars(0, min.length(), chars, pos);
+                return pos + min.length();
+            }
+            chars[pos++] = '-';
+            value = -value;
+        }
+        int end = pos + 1;
+        for (long v = value; v >= 10; v /= 10) {
+            end++;
+        }
+        for (int i = end; i > pos; ) {
+            long q = value / 10;
+            chars[--i] = (char) ('0' + (value - q * 10));
+            value = q;
+        }
+        return end;
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    /**
+     * Formats {@code value} the way {@link Double#toString(double)} does into
+     * {@code chars}, which must have room for 24 chars, and returns the number
+     * of chars written. This handles values from 10<sup>-3</sup> up to
+     * 10<sup>7</sup> with at most 15 significant digits, which covers most
+     * values that are not the result of a computation, and returns -1 for
+     * any other value.
+     */
+    static int formatDouble(double value, char[] chars) {
+        int pos = 0;
+        if (Double.doubleToRawLongBits(value) < 0) {
+            chars[pos++] = '-';
+            value = -value;
+        }
+        if (value == 0) {
+            chars[pos++] = '0';
+            chars[pos++] = '.';
+            chars[pos++] = '0';
+            return pos;
+        }
+        if (!(value >= 1e-3 && value < 1e7)) {
+            return -1;
+        }
+        // Find the fewest fraction digits that read back as this value. As
+        // both the digits and the power of ten are exact, the division is
+        // correctly rounded like parsing the decimal would be.
+        for (int scale = 0; scale < POWERS_OF_TEN.length; scale++) {
+            double power = POWERS_OF_TEN[scale];
+            double scaled = value * power;
+            if (scaled >= 1e15) {
+                return -1;
+            }
+            long digits = (long) Math.rint(scaled);
+            if (digits / power != value) {
+                continue;
+            }
+            long integer = (long) (digits / power);
+            pos = formatLong(integer, chars, pos);
+            chars[pos++] = '.';
+            if (scale == 0) {
+                chars[pos++] = '0';
+                return pos;
+            }
+            long fraction = digits - integer * (long) power;
+            for (int i = pos + scale; i > pos; ) {
+                long q = fraction / 10;
+                chars[--i] = (char) ('0' + (fraction - q * 10));
+                fraction = q;
+            }
+            return pos + scale;
+        }
+        return -1;
+    }
+
     private void newline() throws IOException {
         if (indent == null) {
             return;
         }
 
-        out.write("\n");
+        write('\n');
         for (int i = 1, size = stackSize; i < size; i++) {
-            out.write(indent);
+            write(indent);
         }
     }
 
@@ -611,7 +899,7 @@ public class JsonWriter implements Closeable, Flushable {
     private void beforeName() throws IOException {
         int context = peek();
         if (context == NONEMPTY_OBJECT) { // first in object
-            out.write(',');
+            write(',');
         } else if (context != EMPTY_OBJECT) { // not in an object!
             throw new IllegalStateException("Nesting problem.");
         }
@@ -628,7 +916,7 @@ public class JsonWriter implements Closeable, Flushable {
     private void beforeValue() throws IOException {
         switch (peek()) {
             case NONEMPTY_DOCUMENT:
-                if (!lenient) {
+                if (!lenient && !lineDelimited) {
                     throw new IllegalStateException(
                             "JSON must have only one top-level value.");
                 }
@@ -643,12 +931,12 @@ public class JsonWriter implements Closeable, Flushable {
                 break;
 
             case NONEMPTY_ARRAY: // another in array
-                out.append(',');
+                write(',');
                 newline();
                 break;
 
             case DANGLING_NAME: // value for name
-                out.append(separator);
+                write(separator);
                 replaceTop(NONEMPTY_OBJECT);
                 break;
 
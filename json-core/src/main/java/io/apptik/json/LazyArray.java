@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.util.List;
+
+/**
+ * The not yet read values of an array. {@link JsonArray} holds on to it until
+ * its values are first needed and then drops it.
+ */
+interface LazyArray {
+
+    /**
+     * Reads the values of the array into a new list, which may be a
+     * {@link PrimitiveList}.
+     */
+    List<JsonElement> readElements();
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.apptik.json.exception.JsonException;
+
+/**
+ * The complete text of a lazily read document. Objects, arrays and strings of
+ * such a document only remember the {@link Span} of the source they were read
+ * from, and parse it the first time their content is needed. Reading a span
+ * records the spans of its direct children but skips over their content, so
+ * each level of the tree is parsed only once it is accessed.
+ */
+final class LazySource {
+
+    private final char[] chars;
+    private final byte[] bytes;
+    private final boolean lenient;
+
+    private LazySource(char[] chars, byte[] bytes, boolean lenient) {
+        this.chars = chars;
+        this.bytes = bytes;
+        this.lenient = lenient;
+    }
+
+    /**
+     * Reads the document in {@code chars}. The whole document is scanned once to
+     * check that it is well formed, but only the top level value is created.
+     */
+    static JsonElement read(char[] chars, boolean lenient) throws IOException {
+        int start = chars.length > 0 && chars[0] == '\ufeff' ? 1 : 0;
+        return new LazySource(chars, null, lenient).read(start, chars.length);
+    }
+
+    /**
+     * Reads the UTF-8 encoded document in {@code bytes}, see {@link #read(char[], boolean)}.
+     */
+    static JsonElement read(byte[] bytes, boolean lenient) throws IOException {
+        return new LazySource(null, bytes, lenient).read(0, bytes.length);
+    }
+
+    private JsonElement read(int start, int end) throws IOException {
+        return readValue(reader(start, end), start);
+    }
+
+    private JsonReader reader(int start, int end) {
+        JsonReader reader = chars != null
+                ? new JsonReader(chars, start, end)
+                : new Utf8JsonReader(ByteBuffer.wrap(bytes, start, end - start));
+        reader.setLenient(lenient);
+        return reader;
+    }
+
+    /**
+     * Returns the offset in the source of the next char or byte {@code in} reads.
+     */
+    private int position(JsonReader in, int start) {
+        return chars != null ? in.pos : start + in.pos;
+    }
+
+    /**
+     * Reads the next value of {@code in}, which reads the span at {@code start}.
+     * Objects, arrays and quoted strings are skipped and returned as lazy values.
+     */
+    private JsonElement readValue(JsonReader in, int start) throws IOException {
+        switch (in.peek()) {
+            case BEGIN_OBJECT:
+                return new JsonObject(skip(in, start));
+            case BEGIN_ARRAY:
+                return new JsonArray(skip(in, start));
+            case STRING:
+                if (in.peeked == JsonReader.PEEKED_DOUBLE_QUOTED
+                        || in.peeked == JsonReader.PEEKED_SINGLE_QUOTED) {
+                    return new JsonString(skip(in, start));
+                }
+                return JsonElement.readFrom(in);
+            default:
+                return JsonElement.readFrom(in);
+        }
+    }
+
+    /**
+     * Skips the value {@code in} has just peeked at and returns its span. The
+     * opening character of the value has already been consumed.
+     */
+    private Span skip(JsonReader in, int start) throws IOException {
+        int valueStart = position(in, start) - 1;
+        in.skipValue();
+        return new Span(this, valueStart, position(in, start));
+    }
+
+    /**
+     * A value of a lazily read document.
+     */
+    static final class Span implements LazyObject, LazyArray, LazyString {
+        final LazySource source;
+        final int start;
+        final int end;
+
+        Span(LazySource source, int start, int end) {
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public void readMembers(JsonObject target) {
+            try {
+                JsonReader in = source.reader(start, end);
+                in.beginObject();
+                while (in.hasNext()) {
+                    target.putInternal(in.nextName(), source.readValue(in, start));
+                }
+                in.endObject();
+            } catch (IOException e) {
+                throw new JsonException("Cannot read lazy object", e);
+            }
+        }
+
+        @Override
+        public List<JsonElement> readElements() {
+            try {
+                JsonReader in = source.reader(start, end);
+                in.beginArray();
+                List<JsonElement> result = null;
+                JsonToken token = in.peek();
+                if (token == JsonToken.NUMBER || token == JsonToken.BOOLEAN) {
+                    JsonElement[] pending = new JsonElement[1];
+                    PrimitiveList primitives = PrimitiveList.read(in, pending);
+                    if (pending[0] == null && !in.hasNext()) {
+                        in.endArray();
+                        return primitives;
+                    }
+                    result = new ArrayList<JsonElement>(primitives);
+                    if (pending[0] != null) {
+                        result.add(pending[0]);
+                    }
+                } else {
+                    result = new ArrayList<JsonElement>();
+                }
+                while (in.hasNext()) {
+                    result.add(source.readValue(in, start));
+                }
+                in.endArray();
+                return result;
+            } catch (IOException e) {
+                throw new JsonException("Cannot read lazy array", e);
+            }
+        }
+
+        @Override
+        public String readString() {
+            CharSequence chars = readChars();
+            return chars instanceof String ? (String) chars : chars.toString();
+        }
+
+        @Override
+        public CharSequence readChars() {
+            int from = start + 1;
+            int to = end - 1;
+            LazySource source = this.source;
+            if (source.chars != null) {
+                char[] chars = source.chars;
+                int i = from;
+                while (i < to && chars[i] != '\\') {
+                    i++;
+                }
+                if (i == to) {
+                    return new SourceString(chars, from, to - from);
+                }
+            } else {
+                byte[] bytes = source.bytes;
+                int i = from;
+                boolean ascii = true;
+                while (i < to && bytes[i] != '\\') {
+                    ascii &= bytes[i] >= 0;
+                    i++;
+                }
+                if (i == to) {
+                    return new SourceString(ByteBuffer.wrap(bytes), from, to - from, ascii);
+                }
+            }
+            try {
+                return source.reader(start, end).nextString();
+            } catch (IOException e) {
+                throw new JsonException("Cannot read lazy string", e);
+            }
+        }
+    }
+}
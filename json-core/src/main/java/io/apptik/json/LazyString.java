@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+/**
+ * The not yet read content of a string. {@link JsonString} holds on to it
+ * until the content is first needed and then drops it.
+ */
+interface LazyString {
+
+    String readString();
+
+    /**
+     * Returns the content of the string, referring to the source rather than
+     * copying it where possible.
+     */
+    CharSequence readChars();
+}
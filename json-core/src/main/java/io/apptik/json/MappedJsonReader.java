@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link Utf8JsonReader} that parses a file through memory mapped windows
+ * of {@link FileChannel#map(FileChannel.MapMode, long, long)}. The parser
+ * walks the mapped bytes in place, so the file content is never copied into
+ * an intermediate buffer.
+ *
+ * <p>A single mapping cannot exceed 2 GB, so larger files are mapped one
+ * window at a time. When a token reaches the end of the current window, the
+ * next window is mapped starting at that token. Strings may span windows, but
+ * numbers and unquoted literals may not be longer than the window size.
+ *
+ * <p>Closing this reader closes the underlying channel. Instances of this
+ * class are not thread safe.
+ */
+public class MappedJsonReader extends Utf8JsonReader {
+
+    /** The default window size, 1 GB. */
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+
+    /** The file offset of the first byte in the current window. */
+    private long windowStart = 0;
+
+    /**
+     * Creates a new instance that reads UTF-8 encoded JSON from {@code file}.
+     */
+    public MappedJsonReader(File file) throws IOException {
+        this(new FileInputStream(file).getChannel(), DEFAULT_WINDOW_SIZE, true);
+    }
+
+    /**
+     * Creates a new instance that reads UTF-8 encoded JSON from {@code channel},
+     * starting at its beginning.
+     */
+    public MappedJsonReader(FileChannel channel) throws IOException {
+        this(channel, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Creates a new instance that reads UTF-8 encoded JSON from {@code channel},
+     * mapping at most {@code windowSize} bytes at a time.
+     */
+    public MappedJsonReader(FileChannel channel, int windowSize) throws IOException {
+        this(channel, windowSize, false);
+    }
+
+    /**
+     * @param ownsChannel whether the channel was opened for this reader, and
+     *                    so is closed here if the first window can't be mapped.
+     */
+    private MappedJsonReader(FileChannel channel, int windowSize, boolean ownsChannel) throws IOException {
+        if (channel == null) {
+            throw new NullPointerException("channel == null");
+        }
+        this.channel = channel;
+        this.windowSize = windowSize;
+        boolean mapped = false;
+        try {
+            if (windowSize <= 0) {
+                throw new IllegalArgumentException("windowSize <= 0: " + windowSize);
+            }
+            this.size = channel.size();
+            map(0);
+            skipByteOrderMark();
+            mapped = true;
+        } finally {
+            if (!mapped && ownsChannel) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // the error that got us here is the one to report
+                }
+            }
+        }
+    }
+
+    @Override
+    boolean nextWindow(int minimum) throws IOException {
+        if (limit - pos >= minimum) {
+            return true;
+        }
+        if (windowStart + limit == size) {
+            return false;
+        }
+        lineStart -= pos;
+        map(windowStart + pos);
+        pos = 0;
+        return limit >= minimum;
+    }
+
+    @Override
+    int capacity() {
+        return windowSize;
+    }
+
+    private void map(long start) throws IOException {
+        int length = (int) Math.min(windowSize, size - start);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        windowStart = start;
+        limit = length;
+    }
+
+    /**
+     * Closes this JSON reader and the underlying {@link FileChannel}.
+     */
+    @Override
+    public void close() throws IOException {
+        super.close();
+        channel.close();
+    }
+}
@@ -0,0 +1,451 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link Utf8JsonReader} that never blocks for input. Instead of reading
+ * from a stream, the caller {@link #feed(ByteBuffer) feeds} bytes as they
+ * arrive, for example from a network event loop, and calls
+ * {@link #endOfInput()} once there are no more.
+ *
+ * <p>{@link #peek()} returns {@link JsonToken#NEED_MORE_INPUT} when the bytes
+ * fed so far end before the next token does. Nothing is consumed in that case:
+ * the nesting of arrays and objects and the position in the input are kept,
+ * and the same call can be repeated after feeding more bytes. Once
+ * {@code peek()} has returned any other token, that token is buffered
+ * completely, so the matching {@code next} or {@code begin} method reads it
+ * without needing more input. Calling such a method while more input is
+ * needed throws an {@link IllegalStateException}, as does {@link #hasNext()}.
+ *
+ * <p>{@link #skipValue()} never waits for input: the part of the value that
+ * has not arrived yet is skipped by the following calls. {@link #nextElement()}
+ * reads whole values the same way, keeping the partially read value between
+ * feeds.
+ *
+ * <p>Bytes that have been read are dropped when more are fed, so the reader
+ * only holds the token that is being read and the unread input. Instances of
+ * this class are not thread safe.
+ */
+public class NonBlockingJsonReader extends Utf8JsonReader {
+
+    private static final NeedMoreInput NEED_MORE_INPUT = new NeedMoreInput();
+
+    private byte[] bytes = new byte[8192];
+    private boolean ended;
+    private boolean byteOrderMarkChecked;
+    /** Where to continue looking for the end of the current string, or -1. */
+    private int scanFrom = -1;
+
+    /** Number of values {@link #skipValue()} has still to skip. */
+    private int pendingSkips;
+    /** Nesting of the value that is being skipped. */
+    private int skipDepth;
+
+    /** The arrays and objects {@link #nextElement()} is in. */
+    private JsonElement[] open = new JsonElement[16];
+    private String[] openNames = new String[16];
+    private int openCount;
+
+    public NonBlockingJsonReader() {
+        buffer = ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Appends the remaining bytes of {@code input} to the input of this
+     * reader. The position of {@code input} is moved to its limit.
+     *
+     * @throws IllegalStateException if {@link #endOfInput()} has been called.
+     */
+    public void feed(ByteBuffer input) {
+        if (ended) {
+            throw new IllegalStateException("Input has ended");
+        }
+        int length = input.remaining();
+        // drop what has been read; everything the reader keeps is relative to pos
+        if (pos > 0) {
+            System.arraycopy(bytes, pos, bytes, 0, limit - pos);
+            limit -= pos;
+            lineStart -= pos;
+            if (scanFrom >= 0) {
+                scanFrom -= pos;
+            }
+            pos = 0;
+        }
+        if (limit + length > bytes.length) {
+            byte[] newBytes = new byte[Math.max(limit + length, bytes.length << 1)];
+            System.arraycopy(bytes, 0, newBytes, 0, limit);
+            bytes = newBytes;
+            buffer = ByteBuffer.wrap(bytes);
+        }
+        input.get(bytes, limit, length);
+        limit += length;
+    }
+
+    /**
+     * Appends {@code length} bytes of {@code input} starting at
+     * {@code offset}, see {@link #feed(ByteBuffer)}.
+     */
+    public void feed(byte[] input, int offset, int length) {
+        feed(ByteBuffer.wrap(input, offset, length));
+    }
+
+    /**
+     * Signals that no more input will be fed. Afterwards {@link #peek()}
+     * returns {@link JsonToken#END_DOCUMENT} at the end of the input, and
+     * input that ends inside a value is reported as malformed.
+     */
+    public void endOfInput() {
+        ended = true;
+    }
+
+    /**
+     * Returns true if {@link #endOfInput()} has been called.
+     */
+    public boolean isEndOfInput() {
+        return ended;
+    }
+
+    /**
+     * Returns the type of the next token without consuming it, or
+     * {@link JsonToken#NEED_MORE_INPUT} if it has not been fed completely.
+     */
+    @Override
+    public JsonToken peek() throws IOException {
+        if ((peeked == PEEKED_NONE || pendingSkips > 0) && doPeek() == PEEKED_NONE) {
+            return JsonToken.NEED_MORE_INPUT;
+        }
+        return super.peek();
+    }
+
+    /**
+     * Returns true if the current array or object has another element.
+     *
+     * @throws IllegalStateException if more input is needed to tell.
+     */
+    @Override
+    public boolean hasNext() throws IOException {
+        if (peek() == JsonToken.NEED_MORE_INPUT) {
+            throw new IllegalStateException("Need more input at path " + getPath());
+        }
+        return super.hasNext();
+    }
+
+    /**
+     * Skips the next value. If the value has not been fed completely, the
+     * rest of it is skipped as more input arrives, before any following token
+     * is returned.
+     */
+    @Override
+    public void skipValue() throws IOException {
+        pendingSkips++;
+        continueSkip();
+    }
+
+    /**
+     * Checks that the input is a well formed document, see
+     * {@link JsonReader#validate()}.
+     *
+     * @throws IllegalStateException if {@link #endOfInput()} has not been
+     *                               called yet.
+     */
+    @Override
+    public void validate() throws IOException {
+        if (!ended) {
+            throw new IllegalStateException("All input must be fed before validating");
+        }
+        super.validate();
+    }
+
+    /**
+     * Reads as much of the next value as has been fed. Returns the value once
+     * it is complete, or null if more input is needed; the part read so far
+     * is kept and the next call continues with it.
+     */
+    public JsonElement nextElement() throws IOException {
+        while (true) {
+            JsonToken token = peek();
+            JsonElement value;
+            if (token == JsonToken.NEED_MORE_INPUT) {
+                return null;
+            } else if (token == JsonToken.BEGIN_ARRAY) {
+                beginArray();
+                open(new JsonArray());
+                continue;
+            } else if (token == JsonToken.BEGIN_OBJECT) {
+                beginObject();
+                open(new JsonObject());
+                continue;
+            } else if (token == JsonToken.NAME && openCount > 0) {
+                openNames[openCount - 1] = nextName();
+                continue;
+            } else if (token == JsonToken.END_ARRAY && openCount > 0) {
+                endArray();
+                value = open[--openCount];
+                open[openCount] = null;
+            } else if (token == JsonToken.END_OBJECT && openCount > 0) {
+                endObject();
+                value = open[--openCount];
+                open[openCount] = null;
+                openNames[openCount] = null;
+            } else if (token == JsonToken.STRING || token == JsonToken.NUMBER
+                    || token == JsonToken.BOOLEAN || token == JsonToken.NULL) {
+                value = JsonElement.readFrom(this);
+            } else {
+                throw new IllegalStateException("Expected a value but was " + token + " at path " + getPath());
+            }
+            if (openCount == 0) {
+                return value;
+            }
+            JsonElement parent = open[openCount - 1];
+            if (parent instanceof JsonArray) {
+                ((JsonArray) parent).putRead(value);
+            } else {
+                ((JsonObject) parent).putInternal(openNames[openCount - 1], value);
+            }
+        }
+    }
+
+    private void open(JsonElement container) {
+        if (openCount == open.length) {
+            JsonElement[] newOpen = new JsonElement[openCount << 1];
+            String[] newOpenNames = new String[openCount << 1];
+            System.arraycopy(open, 0, newOpen, 0, openCount);
+            System.arraycopy(openNames, 0, newOpenNames, 0, openCount);
+            open = newOpen;
+            openNames = newOpenNames;
+        }
+        open[openCount++] = container;
+    }
+
+    /**
+     * Finishes a pending {@link #skipValue()} before peeking, and peeks
+     * without consuming anything if the next token is incomplete.
+     *
+     * @return the peeked token, or {@link #PEEKED_NONE} if more input is
+     * needed.
+     */
+    @Override
+    int doPeek() throws IOException {
+        if (pendingSkips > 0 && !continueSkip()) {
+            return PEEKED_NONE;
+        }
+        if (peeked != PEEKED_NONE) {
+            return peeked;
+        }
+        return peekBuffered();
+    }
+
+    private int peekBuffered() throws IOException {
+        if (!byteOrderMarkChecked) {
+            if (!ended && mayBeByteOrderMark()) {
+                return PEEKED_NONE;
+            }
+            byteOrderMarkChecked = true;
+            skipByteOrderMark();
+        }
+        int savedPos = pos;
+        int savedLineNumber = lineNumber;
+        int savedLineStart = lineStart;
+        int savedScope = stack[stackSize - 1];
+        try {
+            int p = super.doPeek();
+            if (isBuffered(p)) {
+                scanFrom = -1;
+                return p;
+            }
+        } catch (NeedMoreInput e) {
+            // fall through
+        }
+        pos = savedPos;
+        lineNumber = savedLineNumber;
+        lineStart = savedLineStart;
+        stack[stackSize - 1] = savedScope;
+        peeked = PEEKED_NONE;
+        return PEEKED_NONE;
+    }
+
+    /**
+     * Returns true if the input fed so far is a prefix of a byte order mark.
+     */
+    private boolean mayBeByteOrderMark() {
+        return limit < 3 && (limit < 1 || bytes[0] == (byte) 0xef) && (limit < 2 || bytes[1] == (byte) 0xbb);
+    }
+
+    /**
+     * Returns true if the whole token {@code p} is in the buffer. Numbers and
+     * literals are only peeked once the byte after them has been seen, but
+     * strings are read after peeking, so their end is looked for here.
+     */
+    private boolean isBuffered(int p) {
+        if (ended) {
+            return true;
+        }
+        switch (p) {
+            case PEEKED_DOUBLE_QUOTED:
+            case PEEKED_DOUBLE_QUOTED_NAME:
+                return findQuote('"');
+            case PEEKED_SINGLE_QUOTED:
+            case PEEKED_SINGLE_QUOTED_NAME:
+                return findQuote('\'');
+            case PEEKED_UNQUOTED:
+            case PEEKED_UNQUOTED_NAME:
+                return findLiteralEnd();
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Looks for the quote that ends the current string, continuing where the
+     * last call stopped. Escapes must be complete, so that reading the string
+     * never runs out of input.
+     */
+    private boolean findQuote(char quote) {
+        byte[] bytes = this.bytes;
+        int p = Math.max(pos, scanFrom);
+        while (p < limit) {
+            byte b = bytes[p];
+            if (b == quote) {
+                return true;
+            } else if (b == '\\') {
+                // a unicode escape is read as a whole, even if it holds a quote
+                int length = p + 1 < limit && bytes[p + 1] == 'u' ? 6 : 2;
+                if (p + length > limit) {
+                    break;
+                }
+                p += length;
+            } else {
+                p++;
+            }
+        }
+        scanFrom = p;
+        return false;
+    }
+
+    private boolean findLiteralEnd() {
+        for (int p = pos; p < limit; p++) {
+            switch (bytes[p]) {
+                case '/':
+                case '\\':
+                case ';':
+                case '#':
+                case '=':
+                case '{':
+                case '}':
+                case '[':
+                case ']':
+                case ':':
+                case ',':
+                case ' ':
+                case '\t':
+                case '\f':
+                case '\r':
+                case '\n':
+                    return true;
+                default:
+                    break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Skips tokens for {@link #skipValue()} until its values are skipped or
+     * more input is needed.
+     *
+     * @return true once all pending values are skipped.
+     */
+    private boolean continueSkip() throws IOException {
+        while (pendingSkips > 0) {
+            int p = peeked;
+            if (p == PEEKED_NONE && (p = peekBuffered()) == PEEKED_NONE) {
+                return false;
+            }
+            if (p == PEEKED_BEGIN_ARRAY) {
+                beginArray();
+                skipDepth++;
+                continue;
+            } else if (p == PEEKED_BEGIN_OBJECT) {
+                beginObject();
+                skipDepth++;
+                continue;
+            }
+            if (skipDepth == 0 && (p == PEEKED_END_ARRAY || p == PEEKED_END_OBJECT || p == PEEKED_EOF)) {
+                pendingSkips = 0;
+                throw new IllegalStateException("Expected a value but was " + super.peek() + " at path " + getPath());
+            }
+            if (p == PEEKED_END_ARRAY) {
+                endArray();
+                skipDepth--;
+            } else if (p == PEEKED_END_OBJECT) {
+                endObject();
+                skipDepth--;
+            } else {
+                // a name or a value, which is buffered completely
+                super.skipValue();
+            }
+            if (skipDepth == 0) {
+                pendingSkips--;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true once {@code limit - pos >= minimum}, or false at the end of
+     * the input. Until then running out of input aborts the token that is
+     * being read, which {@link #peekBuffered()} then restores.
+     */
+    @Override
+    boolean nextWindow(int minimum) throws IOException {
+        if (limit - pos >= minimum) {
+            return true;
+        }
+        if (ended) {
+            return false;
+        }
+        throw NEED_MORE_INPUT;
+    }
+
+    /**
+     * Fed bytes are compacted in place, so strings can't refer to them.
+     */
+    @Override
+    boolean stableInput() {
+        return false;
+    }
+
+    /**
+     * Thrown from deep inside the reader when the buffer runs out before the
+     * end of the input. Shared and without a stack trace, as it is expected.
+     */
+    private static final class NeedMoreInput extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        NeedMoreInput() {
+            super("Need more input");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
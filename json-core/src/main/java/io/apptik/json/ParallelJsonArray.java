@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import io.apptik.json.exception.JsonException;
+import io.apptik.json.exception.MalformedJsonException;
+import io.apptik.json.util.StringPool;
+
+/**
+ * Reads a large UTF-8 encoded JSON array on several threads. The positions of
+ * the top level elements are found first with a quick scan that only keeps
+ * track of strings and nesting. The elements are then split into slices of
+ * about {@link #setSliceSize(int) slice size} bytes, and each slice is parsed
+ * by its own {@link Utf8JsonReader} on a worker of the
+ * {@link #setExecutor(ExecutorService) executor}.
+ *
+ * <p>The result is the same array {@link JsonElement#readFrom(byte[])} would
+ * return, and malformed input is rejected just the same. Arrays that fit into
+ * a single slice are parsed on the calling thread.
+ */
+public final class ParallelJsonArray {
+
+    /** The default size of a slice, 1 MiB. */
+    public static final int DEFAULT_SLICE_SIZE = 1 << 20;
+
+    private ExecutorService executor;
+    private int sliceSize = DEFAULT_SLICE_SIZE;
+
+    /**
+     * Sets the executor that parses slices, for example a
+     * {@link java.util.concurrent.ForkJoinPool}. By default a pool with a
+     * thread per processor is created for each read that has more than one
+     * slice.
+     */
+    public ParallelJsonArray setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Sets the number of bytes after which a slice ends with the current
+     * element.
+     */
+    public ParallelJsonArray setSliceSize(int sliceSize) {
+        if (sliceSize <= 0) {
+            throw new IllegalArgumentException("sliceSize: " + sliceSize);
+        }
+        this.sliceSize = sliceSize;
+        return this;
+    }
+
+    public JsonArray read(byte[] bytes) throws JsonException, IOException {
+        return read(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Reads the array in the {@code length} bytes of {@code bytes} starting at
+     * {@code offset}. If a slice can't be read, the remaining slices are
+     * cancelled and the error is thrown.
+     *
+     * @throws MalformedJsonException if the bytes are not a single well formed
+     *                                array.
+     */
+    public JsonArray read(byte[] bytes, int offset, int length) throws JsonException, IOException {
+        int start = offset;
+        int end = offset + length;
+        if (end - start >= 3 && bytes[start] == (byte) 0xef && bytes[start + 1] == (byte) 0xbb
+                && bytes[start + 2] == (byte) 0xbf) {
+            start += 3;
+        }
+        int[] separators = separators(bytes, start, end);
+        int count = separators.length - 1;
+
+        List<Slice> slices = new ArrayList<Slice>();
+        StringPool namePool = new StringPool();
+        for (int first = 0; first < count; ) {
+            int last = first + 1;
+            while (last < count && separators[last] - separators[first] < sliceSize) {
+                last++;
+            }
+            slices.add(new Slice(bytes, separators, first, last, namePool));
+            first = last;
+        }
+
+        JsonArray result = new JsonArray();
+        if (slices.size() <= 1) {
+            for (Slice slice : slices) {
+                for (JsonElement element : slice.call()) {
+                    result.putRead(element);
+                }
+            }
+            return result;
+        }
+        ExecutorService executor = this.executor;
+        boolean ownExecutor = executor == null;
+        if (ownExecutor) {
+            int processors = Runtime.getRuntime().availableProcessors();
+            executor = Executors.newFixedThreadPool(Math.min(processors, slices.size()), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "json-array");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        List<Future<JsonElement[]>> pending = new ArrayList<Future<JsonElement[]>>(slices.size());
+        try {
+            for (Slice slice : slices) {
+                pending.add(executor.submit(slice));
+            }
+            for (Future<JsonElement[]> future : pending) {
+                for (JsonElement element : get(future)) {
+                    result.putRead(element);
+                }
+            }
+        } finally {
+            for (Future<JsonElement[]> future : pending) {
+                future.cancel(true);
+            }
+            if (ownExecutor) {
+                executor.shutdownNow();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the offsets of the opening bracket, of the commas between the top
+     * level elements and of the closing bracket of the array in {@code bytes}.
+     * Each element is checked to be a single value, which leaves checking the
+     * values themselves to the readers of the slices.
+     */
+    private static int[] separators(byte[] bytes, int start, int end) throws MalformedJsonException {
+        StructuralIndex index = StructuralIndex.build(bytes, start, end);
+        int[] offsets = index.offsets;
+        if (index.count == 0 || bytes[offsets[0]] != '[') {
+            throw new MalformedJsonException("Expected an array at offset " + (index.count == 0 ? end : offsets[0]));
+        }
+        int[] result = new int[64];
+        int count = 0;
+        result[count++] = offsets[0];
+        int depth = 1;
+        boolean expectValue = true;
+        boolean empty = false;
+        int i = 1;
+        for (; i < index.count && depth > 0; i++) {
+            int offset = offsets[i];
+            byte c = bytes[offset];
+            if (depth > 1) {
+                if (c == '[' || c == '{') {
+                    depth++;
+                } else if (c == ']' || c == '}') {
+                    depth--;
+                }
+                continue;
+            }
+            if (c == ',' || c == ']') {
+                if (expectValue && (c == ',' || count > 1)) {
+                    throw new MalformedJsonException("Expected a value at offset " + offset);
+                }
+                empty = expectValue;
+                if (count == result.length) {
+                    int[] newResult = new int[count << 1];
+                    System.arraycopy(result, 0, newResult, 0, count);
+                    result = newResult;
+                }
+                result[count++] = offset;
+                expectValue = true;
+                if (c == ']') {
+                    depth = 0;
+                }
+            } else if (!expectValue || c == '}' || c == ':') {
+                throw new MalformedJsonException("Expected ',' or ']' at offset " + offset);
+            } else {
+                expectValue = false;
+                if (c == '[' || c == '{') {
+                    depth++;
+                } else if (c == '"') {
+                    // skip the closing quote
+                    i++;
+                }
+            }
+        }
+        if (depth > 0) {
+            throw new MalformedJsonException("Unterminated array at offset " + end);
+        }
+        if (i < index.count) {
+            throw new MalformedJsonException("Expected end of input at offset " + offsets[i]);
+        }
+        // an empty array has no elements between its brackets
+        int[] trimmed = new int[empty ? 1 : count];
+        System.arraycopy(result, 0, trimmed, 0, trimmed.length);
+        return trimmed;
+    }
+
+    private static JsonElement[] get(Future<JsonElement[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new JsonException("Cannot read slice", (Exception) cause);
+        }
+    }
+
+    /**
+     * Parses the elements {@code first} (inclusive) to {@code last}
+     * (exclusive) of the array.
+     */
+    private static final class Slice implements Callable<JsonElement[]> {
+        private final byte[] bytes;
+        private final int[] separators;
+        private final int first;
+        private final int last;
+        private final StringPool namePool;
+
+        Slice(byte[] bytes, int[] separators, int first, int last, StringPool namePool) {
+            this.bytes = bytes;
+            this.separators = separators;
+            this.first = first;
+            this.last = last;
+            this.namePool = namePool;
+        }
+
+        public JsonElement[] call() throws IOException {
+            int start = separators[first] + 1;
+            Utf8JsonReader in = new Utf8JsonReader(bytes, start, separators[last] - start);
+            in.setNamePool(namePool);
+            // continue as if the reader had just begun the array, so that the
+            // commas are checked and paths in errors have the right index
+            in.push(JsonScope.EMPTY_ARRAY);
+            in.pathIndices[in.stackSize - 1] = first;
+            JsonElement[] result = new JsonElement[last - first];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = JsonElement.readFrom(in);
+            }
+            return result;
+        }
+    }
+}
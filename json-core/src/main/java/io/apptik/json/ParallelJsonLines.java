@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import io.apptik.json.exception.JsonException;
+
+/**
+ * Reads a newline delimited JSON file on several threads. The file is split
+ * into chunks of about {@link #setChunkSize(int) chunk size} bytes that end at
+ * a newline, and each chunk is parsed by a {@link JsonLinesReader} on a worker
+ * of the {@link #setExecutor(ExecutorService) executor}.
+ *
+ * <p>Records are passed to the handler on the thread that called
+ * {@link #read(Handler)}, either in file order or in the order chunks finish.
+ * At most {@link #setMaxPendingChunks(int) max pending chunks} are read or
+ * waiting to be handled at any time, so memory use is bounded no matter how
+ * large the file is.
+ *
+ * <p>The file must be UTF-8 encoded and records must not contain raw
+ * newlines, as required by NDJSON.
+ */
+public final class ParallelJsonLines {
+
+    /** The default size of a chunk, 4 MiB. */
+    public static final int DEFAULT_CHUNK_SIZE = 4 << 20;
+
+    /**
+     * Receives the records of a file.
+     */
+    public interface Handler {
+        void onRecord(JsonElement record) throws IOException;
+    }
+
+    private final File file;
+    private ExecutorService executor;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private boolean ordered = true;
+    private int maxPendingChunks;
+
+    public ParallelJsonLines(File file) {
+        if (file == null) {
+            throw new NullPointerException("file == null");
+        }
+        this.file = file;
+    }
+
+    /**
+     * Sets the executor that parses chunks, for example a
+     * {@link java.util.concurrent.ForkJoinPool}. By default a pool with a
+     * thread per processor is created for each {@link #read(Handler)} call.
+     */
+    public ParallelJsonLines setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Sets the number of bytes after which a chunk ends at the next newline.
+     */
+    public ParallelJsonLines setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Sets whether records are handled in file order, which is the default.
+     * Unordered handling never waits for a slow chunk while others are done.
+     */
+    public ParallelJsonLines setOrdered(boolean ordered) {
+        this.ordered = ordered;
+        return this;
+    }
+
+    /**
+     * Sets the number of chunks that may be parsed or waiting to be handled at
+     * the same time. Defaults to twice the number of processors.
+     */
+    public ParallelJsonLines setMaxPendingChunks(int maxPendingChunks) {
+        if (maxPendingChunks <= 0) {
+            throw new IllegalArgumentException("maxPendingChunks: " + maxPendingChunks);
+        }
+        this.maxPendingChunks = maxPendingChunks;
+        return this;
+    }
+
+    /**
+     * Reads all records of the file and passes them to {@code handler}. If a
+     * chunk can't be read or the handler fails, the remaining chunks are
+     * cancelled and the error is thrown.
+     */
+    public void read(Handler handler) throws IOException {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int maxPending = maxPendingChunks > 0 ? maxPendingChunks : processors << 1;
+        ExecutorService executor = this.executor;
+        boolean ownExecutor = executor == null;
+        if (ownExecutor) {
+            executor = Executors.newFixedThreadPool(processors, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "json-lines");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        CompletionService<List<JsonElement>> completion = ordered
+                ? null : new ExecutorCompletionService<List<JsonElement>>(executor);
+        Deque<Future<List<JsonElement>>> pending = new ArrayDeque<Future<List<JsonElement>>>();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel();
+        try {
+            long size = channel.size();
+            long position = 0;
+            while (position < size || !pending.isEmpty()) {
+                while (position < size && pending.size() < maxPending) {
+                    long end = chunkEnd(channel, position, size);
+                    Chunk chunk = new Chunk(channel, position, end);
+                    pending.addLast(ordered ? executor.submit(chunk) : completion.submit(chunk));
+                    position = end;
+                }
+                Future<List<JsonElement>> done;
+                if (ordered) {
+                    done = pending.removeFirst();
+                } else {
+                    done = take(completion);
+                    pending.remove(done);
+                }
+                for (JsonElement record : get(done)) {
+                    handler.onRecord(record);
+                }
+            }
+        } finally {
+            for (Future<List<JsonElement>> future : pending) {
+                future.cancel(true);
+            }
+            if (ownExecutor) {
+                executor.shutdownNow();
+            }
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the offset after the first newline at or after
+     * {@code start + chunkSize - 1}, or {@code size} if there is none.
+     */
+    private long chunkEnd(FileChannel channel, long start, long size) throws IOException {
+        long position = start + chunkSize - 1;
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear();
+            int count = channel.read(buffer, position);
+            if (count <= 0) {
+                break;
+            }
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < count; i++) {
+                if (bytes[i] == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += count;
+        }
+        return size;
+    }
+
+    private static Future<List<JsonElement>> take(CompletionService<List<JsonElement>> completion)
+            throws IOException {
+        try {
+            return completion.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static List<JsonElement> get(Future<List<JsonElement>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new JsonException("Cannot read chunk", (Exception) cause);
+        }
+    }
+
+    /**
+     * Reads and parses the records from {@code start} to {@code end}.
+     */
+    private static final class Chunk implements Callable<List<JsonElement>> {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+
+        Chunk(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        public List<JsonElement> call() throws IOException {
+            long length = end - start;
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Record too long at offset " + start);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) {
+                    throw new IOException("File truncated at offset " + (start + buffer.position()));
+                }
+            }
+            List<JsonElement> result = new ArrayList<JsonElement>();
+            JsonLinesReader reader = new JsonLinesReader(new Utf8JsonReader(buffer.array()));
+            try {
+                while (reader.hasNext()) {
+                    result.add(reader.next());
+                }
+            } catch (JsonException e) {
+                throw new IOException("Cannot read chunk at offset " + start, e);
+            }
+            return result;
+        }
+    }
+}
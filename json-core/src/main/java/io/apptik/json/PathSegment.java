@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One step of a JSONPath expression: a member name, an array index or a
+ * wildcard that matches every member and every element. A step preceded by
+ * {@code ..} matches at any depth below the previous one.
+ *
+ * <p>Paths are written like {@code $.user.id}, {@code $.items[*].price},
+ * {@code $['odd name'][0]} or {@code $..id}. The leading {@code $} may be left
+ * out.
+ */
+final class PathSegment {
+
+    static final PathSegment WILDCARD = new PathSegment(null, -1, false);
+    private static final PathSegment ANY_DESCENDANT = new PathSegment(null, -1, true);
+
+    /** The member name, or null if this segment is an index or a wildcard. */
+    final String name;
+    /** The array index, or -1 if this segment is a name or a wildcard. */
+    final int index;
+    /** True if this segment matches at any depth, not only at the next one. */
+    final boolean descendant;
+
+    private PathSegment(String name, int index, boolean descendant) {
+        this.name = name;
+        this.index = index;
+        this.descendant = descendant;
+    }
+
+    boolean isWildcard() {
+        return name == null && index < 0;
+    }
+
+    /**
+     * Returns true if this segment matches the member {@code name}, or the
+     * element at {@code index} if {@code name} is null.
+     */
+    boolean matches(String name, int index) {
+        if (this.name != null) {
+            return this.name.equals(name);
+        }
+        return this.index < 0 || name == null && this.index == index;
+    }
+
+    /**
+     * Parses {@code path} into its segments.
+     *
+     * @throws IllegalArgumentException if the path is malformed.
+     */
+    static List<PathSegment> parse(String path) {
+        List<PathSegment> result = new ArrayList<PathSegment>();
+        int length = path.length();
+        int pos = 0;
+        if (pos < length && path.charAt(pos) == '$') {
+            pos++;
+        } else if (pos < length && path.charAt(pos) != '.' && path.charAt(pos) != '[') {
+            // a bare member name
+            path = "." + path;
+            length++;
+        }
+        while (pos < length) {
+            char c = path.charAt(pos);
+            boolean descendant = c == '.' && pos + 1 < length && path.charAt(pos + 1) == '.';
+            if (descendant) {
+                pos++;
+                if (pos + 1 < length && path.charAt(pos + 1) == '[') {
+                    c = path.charAt(++pos);
+                }
+            }
+            if (c == '.') {
+                int start = ++pos;
+                while (pos < length && path.charAt(pos) != '.' && path.charAt(pos) != '[') {
+                    pos++;
+                }
+                if (pos == start) {
+                    throw malformed(path, start);
+                }
+                String name = path.substring(start, pos);
+                if (name.equals("*")) {
+                    result.add(descendant ? ANY_DESCENDANT : WILDCARD);
+                } else {
+                    result.add(new PathSegment(name, -1, descendant));
+                }
+            } else if (c == '[') {
+                pos++;
+                if (pos < length && path.charAt(pos) == '*') {
+                    result.add(descendant ? ANY_DESCENDANT : WILDCARD);
+                    pos++;
+                } else if (pos < length && (path.charAt(pos) == '\'' || path.charAt(pos) == '"')) {
+                    char quote = path.charAt(pos++);
+                    StringBuilder name = new StringBuilder();
+                    while (pos < length && path.charAt(pos) != quote) {
+                        char n = path.charAt(pos++);
+                        if (n == '\\' && pos < length) {
+                            n = path.charAt(pos++);
+                        }
+                        name.append(n);
+                    }
+                    if (pos++ == length) {
+                        throw malformed(path, pos - 1);
+                    }
+                    result.add(new PathSegment(name.toString(), -1, descendant));
+                } else {
+                    int start = pos;
+                    while (pos < length && path.charAt(pos) >= '0' && path.charAt(pos) <= '9') {
+                        pos++;
+                    }
+                    if (pos == start || pos - start > 9) {
+                        throw malformed(path, start);
+                    }
+                    result.add(new PathSegment(null, Integer.parseInt(path.substring(start, pos)), descendant));
+                }
+                if (pos == length || path.charAt(pos) != ']') {
+                    throw malformed(path, pos);
+                }
+                pos++;
+            } else {
+                throw malformed(path, pos);
+            }
+        }
+        return result;
+    }
+
+    private static IllegalArgumentException malformed(String path, int pos) {
+        return new IllegalArgumentException("Malformed path at " + pos + ": " + path);
+    }
+
+    @Override
+    public String toString() {
+        String prefix = descendant ? ".." : "";
+        if (name != null) {
+            return prefix + "['" + name + "']";
+        }
+        return prefix + (index >= 0 ? "[" + index + "]" : "[*]");
+    }
+}
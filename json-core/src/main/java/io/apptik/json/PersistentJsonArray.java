@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import io.apptik.json.exception.JsonException;
+
+import static io.apptik.json.PersistentJsonObject.mutable;
+import static io.apptik.json.PersistentJsonObject.persistent;
+
+/**
+ * An immutable JSON array. {@link #append(JsonElement)} and
+ * {@link #with(int, JsonElement)} return a new version of the array in
+ * O(log<sub>32</sub> n), which shares everything but the changed path with
+ * the version it was made from. Appending is amortized constant time.
+ *
+ * <p>Objects and arrays in a persistent array are persistent themselves;
+ * {@link #from(JsonArray)} and {@link #toJsonArray()} convert whole trees.
+ * A persistent array is not a {@link JsonArray}, so {@link #isJsonArray()}
+ * returns false. Instances of this class are immutable and may be shared by
+ * threads.
+ */
+public final class PersistentJsonArray extends JsonElement implements Iterable<JsonElement> {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final Object[] NO_VALUES = new Object[0];
+
+    private static final PersistentJsonArray EMPTY =
+            new PersistentJsonArray(0, BITS, NO_VALUES, NO_VALUES);
+
+    private final int size;
+
+    /** The number of bits of an index that the root picks a child by. */
+    private final int shift;
+
+    /**
+     * A trie of full 32 value chunks: inner nodes hold child arrays and
+     * leaves hold values. Every value but the ones in {@link #tail} is in it.
+     */
+    private final Object[] root;
+
+    /**
+     * The last up to 32 values, which are kept out of the trie so that most
+     * appends only copy this.
+     */
+    private final Object[] tail;
+
+    private int hashCode;
+
+    private PersistentJsonArray(int size, int shift, Object[] root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    /**
+     * Returns the array with no values.
+     */
+    public static PersistentJsonArray empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns a persistent copy of {@code array}, with its objects and arrays
+     * converted as well.
+     */
+    public static PersistentJsonArray from(JsonArray array) {
+        PersistentJsonArray result = EMPTY;
+        for (JsonElement value : array) {
+            result = result.append(value);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new mutable array with the values of this one, with its
+     * objects and arrays converted as well.
+     */
+    public JsonArray toJsonArray() {
+        JsonArray result = new JsonArray();
+        for (JsonElement value : this) {
+            result.putInternal(mutable(value));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of values in this array.
+     */
+    public int length() {
+        return size;
+    }
+
+    /**
+     * Returns the value at {@code index}.
+     *
+     * @throws JsonException if this array has no value at {@code index}.
+     */
+    public JsonElement get(int index) throws JsonException {
+        if (index < 0 || index >= size) {
+            throw new JsonException("Index " + index + " out of range [0.." + size + ")");
+        }
+        return (JsonElement) chunkFor(index)[index & MASK];
+    }
+
+    /**
+     * Returns the value at {@code index}, or null if the array has no value
+     * at {@code index}.
+     */
+    public JsonElement opt(int index) {
+        if (index < 0 || index >= size) {
+            return null;
+        }
+        return (JsonElement) chunkFor(index)[index & MASK];
+    }
+
+    /**
+     * Returns a version of this array with {@code value} appended.
+     *
+     * @param value the value to append. A {@link JsonObject} or
+     *              {@link JsonArray} is copied into a persistent one, and null
+     *              is appended as {@link JsonNull}.
+     */
+    public PersistentJsonArray append(JsonElement value) {
+        value = persistent(value);
+        if (tail.length < WIDTH) {
+            Object[] newTail = new Object[tail.length + 1];
+            System.arraycopy(tail, 0, newTail, 0, tail.length);
+            newTail[tail.length] = value;
+            return new PersistentJsonArray(size + 1, shift, root, newTail);
+        }
+
+        // the tail is full, so it moves into the trie
+        Object[] newRoot;
+        int newShift = shift;
+        if ((size >>> BITS) > (1 << shift)) {
+            // the trie is full too and grows a level
+            newRoot = new Object[]{root, newPath(shift, tail)};
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(shift, root, tail);
+        }
+        return new PersistentJsonArray(size + 1, newShift, newRoot, new Object[]{value});
+    }
+
+    /**
+     * Returns a version of this array with the value at {@code index}
+     * replaced by {@code value}.
+     *
+     * @param value the value to set, converted like by
+     *              {@link #append(JsonElement)}.
+     * @throws JsonException if this array has no value at {@code index}.
+     */
+    public PersistentJsonArray with(int index, JsonElement value) throws JsonException {
+        if (index < 0 || index >= size) {
+            throw new JsonException("Index " + index + " out of range [0.." + size + ")");
+        }
+        value = persistent(value);
+        if (index >= tailOffset()) {
+            Object[] newTail = tail.clone();
+            newTail[index & MASK] = value;
+            return new PersistentJsonArray(size, shift, root, newTail);
+        }
+        return new PersistentJsonArray(size, shift, set(shift, root, index, value), tail);
+    }
+
+    private int tailOffset() {
+        return size - tail.length;
+    }
+
+    /**
+     * Returns the chunk of up to 32 values that holds {@code index}.
+     */
+    private Object[] chunkFor(int index) {
+        if (index >= tailOffset()) {
+            return tail;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    /**
+     * Returns a copy of {@code parent} with the full {@code tailChunk} added
+     * as its last leaf. Only the nodes on the path to the new leaf are copied.
+     */
+    private Object[] pushTail(int level, Object[] parent, Object[] tailChunk) {
+        int subIndex = ((size - 1) >>> level) & MASK;
+        Object[] child;
+        if (level == BITS) {
+            child = tailChunk;
+        } else if (subIndex < parent.length) {
+            child = pushTail(level - BITS, (Object[]) parent[subIndex], tailChunk);
+        } else {
+            child = newPath(level - BITS, tailChunk);
+        }
+        Object[] result;
+        if (subIndex < parent.length) {
+            result = parent.clone();
+        } else {
+            result = new Object[subIndex + 1];
+            System.arraycopy(parent, 0, result, 0, parent.length);
+        }
+        result[subIndex] = child;
+        return result;
+    }
+
+    /**
+     * Returns a chain of single child nodes down from {@code level} that ends
+     * in {@code leaf}.
+     */
+    private static Object[] newPath(int level, Object[] leaf) {
+        Object[] node = leaf;
+        for (; level > 0; level -= BITS) {
+            node = new Object[]{node};
+        }
+        return node;
+    }
+
+    private static Object[] set(int level, Object[] node, int index, JsonElement value) {
+        Object[] result = node.clone();
+        if (level == 0) {
+            result[index & MASK] = value;
+        } else {
+            int subIndex = (index >>> level) & MASK;
+            result[subIndex] = set(level - BITS, (Object[]) node[subIndex], index, value);
+        }
+        return result;
+    }
+
+    @Override
+    public Iterator<JsonElement> iterator() {
+        return new Iterator<JsonElement>() {
+            int index;
+            Object[] chunk;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public JsonElement next() {
+                if (index == size) {
+                    throw new NoSuchElementException();
+                }
+                if ((index & MASK) == 0) {
+                    chunk = chunkFor(index);
+                }
+                return (JsonElement) chunk[index++ & MASK];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public void write(JsonWriter writer) throws IOException {
+        writer.beginArray();
+        for (JsonElement value : this) {
+            value.write(writer);
+        }
+        writer.endArray();
+    }
+
+    @Override
+    public String getJsonType() {
+        return TYPE_ARRAY;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof PersistentJsonArray)) {
+            return false;
+        }
+        PersistentJsonArray other = (PersistentJsonArray) o;
+        if (other.size != size || other.hashCode() != hashCode()) {
+            return false;
+        }
+        Iterator<JsonElement> others = other.iterator();
+        for (JsonElement value : this) {
+            if (!value.equals(others.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the hash code of a {@link java.util.List} with the same values.
+     */
+    @Override
+    public int hashCode() {
+        int result = hashCode;
+        if (result == 0) {
+            result = 1;
+            for (JsonElement value : this) {
+                result = 31 * result + value.hashCode();
+            }
+            hashCode = result;
+        }
+        return result;
+    }
+}
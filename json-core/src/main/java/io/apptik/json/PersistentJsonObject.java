@@ -0,0 +1,549 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable JSON object. {@link #with(String, JsonElement)} and
+ * {@link #without(String)} return a new version of the object in
+ * O(log<sub>32</sub> n), which shares everything but the changed path with
+ * the version it was made from, so many versions of a large object can be
+ * kept at little cost. Members keep the order they were first added in, like
+ * they do in a {@link JsonObject}.
+ *
+ * <p>Objects and arrays in a persistent object are persistent themselves;
+ * {@link #from(JsonObject)} and {@link #toJsonObject()} convert whole trees.
+ * A persistent object is not a {@link JsonObject}, so
+ * {@link #isJsonObject()} returns false. Instances of this class are
+ * immutable and may be shared by threads.
+ */
+public final class PersistentJsonObject extends JsonElement implements Iterable<Map.Entry<String, JsonElement>> {
+
+    private static final PersistentJsonObject EMPTY = new PersistentJsonObject(null, 0, 0);
+
+    private static final Comparator<Entry> IN_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            return a.order < b.order ? -1 : a.order == b.order ? 0 : 1;
+        }
+    };
+
+    /** The root of the hash trie, or null if this object is empty. */
+    private final Node root;
+    private final int size;
+
+    /** The order to give the next member added. */
+    private final long nextOrder;
+
+    private int hashCode;
+
+    private PersistentJsonObject(Node root, int size, long nextOrder) {
+        this.root = root;
+        this.size = size;
+        this.nextOrder = nextOrder;
+    }
+
+    /**
+     * Returns the object with no members.
+     */
+    public static PersistentJsonObject empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns a persistent copy of {@code object}, with its objects and arrays
+     * converted as well.
+     */
+    public static PersistentJsonObject from(JsonObject object) {
+        PersistentJsonObject result = EMPTY;
+        for (Map.Entry<String, JsonElement> e : object) {
+            result = result.with(e.getKey(), e.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new mutable object with the members of this one, with its
+     * objects and arrays converted as well.
+     */
+    public JsonObject toJsonObject() {
+        JsonObject result = new JsonObject();
+        for (Entry e : entries()) {
+            result.putInternal(e.key, mutable(e.value));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of members of this object.
+     */
+    public int length() {
+        return size;
+    }
+
+    public boolean has(String name) {
+        return get(name) != null;
+    }
+
+    /**
+     * Returns the value mapped by {@code name}, or null if there is none.
+     */
+    public JsonElement get(String name) {
+        if (root == null || name == null) {
+            return null;
+        }
+        Entry entry = root.find(name, spread(name.hashCode()), 0);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * Returns a version of this object that maps {@code name} to
+     * {@code value}. A new name is added after the existing ones.
+     *
+     * @param value the value to map. A {@link JsonObject} or {@link JsonArray}
+     *              is copied into a persistent one, and null is mapped to
+     *              {@link JsonNull}.
+     */
+    public PersistentJsonObject with(String name, JsonElement value) {
+        if (name == null) {
+            throw new NullPointerException("name == null");
+        }
+        value = persistent(value);
+        int hash = spread(name.hashCode());
+        Entry existing = root != null ? root.find(name, hash, 0) : null;
+        if (existing != null) {
+            if (existing.value == value) {
+                return this;
+            }
+            Entry entry = new Entry(name, value, hash, existing.order);
+            return new PersistentJsonObject(root.with(entry, 0), size, nextOrder);
+        }
+        Entry entry = new Entry(name, value, hash, nextOrder);
+        Node newRoot = root != null ? root.with(entry, 0) : new BitmapNode(entry, 0);
+        return new PersistentJsonObject(newRoot, size + 1, nextOrder + 1);
+    }
+
+    /**
+     * Returns a version of this object without the member {@code name}.
+     */
+    public PersistentJsonObject without(String name) {
+        if (root == null || name == null) {
+            return this;
+        }
+        int hash = spread(name.hashCode());
+        if (root.find(name, hash, 0) == null) {
+            return this;
+        }
+        if (size == 1) {
+            return EMPTY;
+        }
+        Object newRoot = root.without(name, hash, 0);
+        if (newRoot instanceof Entry) {
+            newRoot = new BitmapNode((Entry) newRoot, 0);
+        }
+        return new PersistentJsonObject((Node) newRoot, size - 1, nextOrder);
+    }
+
+    /**
+     * Returns the members in the order they were added.
+     */
+    @Override
+    public Iterator<Map.Entry<String, JsonElement>> iterator() {
+        final Entry[] entries = entries();
+        return new Iterator<Map.Entry<String, JsonElement>>() {
+            int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < entries.length;
+            }
+
+            @Override
+            public Map.Entry<String, JsonElement> next() {
+                if (next == entries.length) {
+                    throw new NoSuchElementException();
+                }
+                return entries[next++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private Entry[] entries() {
+        Entry[] result = new Entry[size];
+        if (root != null) {
+            root.collect(result, 0);
+            Arrays.sort(result, IN_ORDER);
+        }
+        return result;
+    }
+
+    @Override
+    public void write(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        for (Entry e : entries()) {
+            writer.memberName(e.key);
+            e.value.write(writer);
+        }
+        writer.endObject();
+    }
+
+    @Override
+    public String getJsonType() {
+        return TYPE_OBJECT;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof PersistentJsonObject)) {
+            return false;
+        }
+        PersistentJsonObject other = (PersistentJsonObject) o;
+        if (other.size != size || other.hashCode() != hashCode()) {
+            return false;
+        }
+        for (Entry e : entries()) {
+            if (!e.value.equals(other.get(e.key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the hash code of a {@link Map} with the same members.
+     */
+    @Override
+    public int hashCode() {
+        int result = hashCode;
+        if (result == 0 && root != null) {
+            Entry[] entries = new Entry[size];
+            root.collect(entries, 0);
+            for (Entry e : entries) {
+                result += e.hashCode();
+            }
+            hashCode = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns {@code value} with the objects and arrays in it made persistent.
+     */
+    static JsonElement persistent(JsonElement value) {
+        if (value == null) {
+            return JsonNull.JSON_NULL;
+        }
+        if (value instanceof JsonObject) {
+            return from((JsonObject) value);
+        }
+        if (value instanceof JsonArray) {
+            return PersistentJsonArray.from((JsonArray) value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns {@code value} with the persistent objects and arrays in it made
+     * mutable.
+     */
+    static JsonElement mutable(JsonElement value) {
+        if (value instanceof PersistentJsonObject) {
+            return ((PersistentJsonObject) value).toJsonObject();
+        }
+        if (value instanceof PersistentJsonArray) {
+            return ((PersistentJsonArray) value).toJsonArray();
+        }
+        return value;
+    }
+
+    /**
+     * Mixes the high bits of {@code h} into the low ones, which pick the
+     * branch at the top of the trie.
+     */
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Entry implements Map.Entry<String, JsonElement> {
+        final String key;
+        final JsonElement value;
+        final int hash;
+        final long order;
+
+        Entry(String key, JsonElement value, int hash, long order) {
+            this.key = key;
+            this.value = value;
+            this.hash = hash;
+            this.order = order;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public JsonElement getValue() {
+            return value;
+        }
+
+        @Override
+        public JsonElement setValue(JsonElement value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return key.equals(e.getKey()) && value.equals(e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    private abstract static class Node {
+        abstract Entry find(String key, int hash, int shift);
+
+        /**
+         * Returns a copy of this node with {@code entry} added, or replacing
+         * the entry with the same key.
+         */
+        abstract Node with(Entry entry, int shift);
+
+        /**
+         * Returns a copy of this node without {@code key}, which it contains,
+         * or the one entry that is left.
+         */
+        abstract Object without(String key, int hash, int shift);
+
+        /**
+         * Copies the entries of this node into {@code out} at {@code pos} and
+         * returns the position after them.
+         */
+        abstract int collect(Entry[] out, int pos);
+    }
+
+    /**
+     * A node with up to 32 slots, one for each value of the five hash bits at
+     * its level, holding either an entry or a node for the next level. Only
+     * the slots that are in use take up space.
+     */
+    private static final class BitmapNode extends Node {
+        final int bitmap;
+        final Object[] slots;
+
+        BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        BitmapNode(Entry entry, int shift) {
+            this(bit(entry.hash, shift), new Object[]{entry});
+        }
+
+        static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & 31);
+        }
+
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Entry find(String key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = slots[index(bit)];
+            if (slot instanceof Entry) {
+                Entry entry = (Entry) slot;
+                return entry.hash == hash && entry.key.equals(key) ? entry : null;
+            }
+            return ((Node) slot).find(key, hash, shift + 5);
+        }
+
+        @Override
+        Node with(Entry entry, int shift) {
+            int bit = bit(entry.hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, index);
+                newSlots[index] = entry;
+                System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+                return new BitmapNode(bitmap | bit, newSlots);
+            }
+            Object slot = slots[index];
+            Object newSlot;
+            if (slot instanceof Node) {
+                newSlot = ((Node) slot).with(entry, shift + 5);
+            } else {
+                Entry existing = (Entry) slot;
+                if (existing.hash == entry.hash && existing.key.equals(entry.key)) {
+                    newSlot = entry;
+                } else {
+                    newSlot = merge(existing, entry, shift + 5);
+                }
+            }
+            Object[] newSlots = slots.clone();
+            newSlots[index] = newSlot;
+            return new BitmapNode(bitmap, newSlots);
+        }
+
+        /**
+         * Returns a node holding two entries with different keys whose hashes
+         * agree below {@code shift}.
+         */
+        private static Node merge(Entry a, Entry b, int shift) {
+            if (shift > 30 || a.hash == b.hash) {
+                return new CollisionNode(a.hash, new Entry[]{a, b});
+            }
+            int bitA = bit(a.hash, shift);
+            int bitB = bit(b.hash, shift);
+            if (bitA == bitB) {
+                return new BitmapNode(bitA, new Object[]{merge(a, b, shift + 5)});
+            }
+            boolean aFirst = ((a.hash >>> shift) & 31) < ((b.hash >>> shift) & 31);
+            return new BitmapNode(bitA | bitB, aFirst ? new Object[]{a, b} : new Object[]{b, a});
+        }
+
+        @Override
+        Object without(String key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            Object slot = slots[index];
+            Object newSlot = slot instanceof Node ? ((Node) slot).without(key, hash, shift + 5) : null;
+            if (newSlot == null) {
+                if (slots.length == 2 && slots[1 - index] instanceof Entry) {
+                    return slots[1 - index];
+                }
+                Object[] newSlots = new Object[slots.length - 1];
+                System.arraycopy(slots, 0, newSlots, 0, index);
+                System.arraycopy(slots, index + 1, newSlots, index, newSlots.length - index);
+                return new BitmapNode(bitmap & ~bit, newSlots);
+            }
+            if (newSlot instanceof Entry && slots.length == 1) {
+                return newSlot;
+            }
+            Object[] newSlots = slots.clone();
+            newSlots[index] = newSlot;
+            return new BitmapNode(bitmap, newSlots);
+        }
+
+        @Override
+        int collect(Entry[] out, int pos) {
+            for (Object slot : slots) {
+                if (slot instanceof Entry) {
+                    out[pos++] = (Entry) slot;
+                } else {
+                    pos = ((Node) slot).collect(out, pos);
+                }
+            }
+            return pos;
+        }
+    }
+
+    /**
+     * The entries whose keys have the same hash.
+     */
+    private static final class CollisionNode extends Node {
+        final int hash;
+        final Entry[] entries;
+
+        CollisionNode(int hash, Entry[] entries) {
+            this.hash = hash;
+            this.entries = entries;
+        }
+
+        private int indexOf(String key) {
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i].key.equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Entry find(String key, int hash, int shift) {
+            int index = hash == this.hash ? indexOf(key) : -1;
+            return index >= 0 ? entries[index] : null;
+        }
+
+        @Override
+        Node with(Entry entry, int shift) {
+            if (entry.hash != hash) {
+                // the hashes differ past this level, so this node moves down one
+                return new BitmapNode(BitmapNode.bit(hash, shift), new Object[]{this}).with(entry, shift);
+            }
+            int index = indexOf(entry.key);
+            Entry[] newEntries;
+            if (index >= 0) {
+                newEntries = entries.clone();
+                newEntries[index] = entry;
+            } else {
+                newEntries = Arrays.copyOf(entries, entries.length + 1);
+                newEntries[entries.length] = entry;
+            }
+            return new CollisionNode(hash, newEntries);
+        }
+
+        @Override
+        Object without(String key, int hash, int shift) {
+            int index = indexOf(key);
+            if (entries.length == 2) {
+                return entries[1 - index];
+            }
+            Entry[] newEntries = new Entry[entries.length - 1];
+            System.arraycopy(entries, 0, newEntries, 0, index);
+            System.arraycopy(entries, index + 1, newEntries, index, newEntries.length - index);
+            return new CollisionNode(hash, newEntries);
+        }
+
+        @Override
+        int collect(Entry[] out, int pos) {
+            System.arraycopy(entries, 0, out, pos, entries.length);
+            return pos + entries.length;
+        }
+    }
+}
@@ -0,0 +1,545 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Backing store of a {@link JsonArray} whose values are all longs, all doubles
+ * or all booleans. The values are kept in a primitive array and an element is
+ * only created when it is asked for, so a large numeric array costs 8 bytes per
+ * value instead of an object per value.
+ *
+ * <p>The list can remove values and store values of its own kind. It is up to
+ * {@link JsonArray} to replace it with a regular list before storing anything
+ * else, see {@link #accepts(JsonElement)}.
+ */
+abstract class PrimitiveList extends AbstractList<JsonElement> implements RandomAccess {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Numbers of larger magnitude may not survive a round trip through a double. */
+    static final long MAX_EXACT_DOUBLE = 1L << 53;
+
+    int size;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if {@code value} can be stored in this list without losing
+     * anything.
+     */
+    abstract boolean accepts(JsonElement value);
+
+    abstract void write(JsonWriter writer) throws IOException;
+
+    /**
+     * Returns a list with the same values that can be changed independently.
+     */
+    abstract PrimitiveList copy();
+
+    void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range [0.." + size + ")");
+        }
+    }
+
+    /**
+     * Returns the capacity to grow an array of {@code length} to.
+     */
+    static int grow(int length) {
+        return length == 0 ? INITIAL_CAPACITY : length + (length >> 1);
+    }
+
+    /**
+     * Reads the values of the array {@code in} is positioned in for as long as
+     * they are all longs, all doubles or all booleans. The reader is left
+     * before the first value that doesn't fit, or before the end of the array.
+     * If a number had to be consumed to find out it doesn't fit, it is returned
+     * through {@code pending}.
+     *
+     * @return the values read, or null if the first value is not a number or a
+     * boolean.
+     */
+    static PrimitiveList read(JsonReader in, JsonElement[] pending) throws IOException {
+        switch (in.peek()) {
+            case NUMBER:
+                return readNumbers(in, pending);
+            case BOOLEAN:
+                OfBoolean booleans = new OfBoolean();
+                while (in.hasNext() && in.peek() == JsonToken.BOOLEAN) {
+                    booleans.addBoolean(in.nextBoolean());
+                }
+                return booleans;
+            default:
+                return null;
+        }
+    }
+
+    private static PrimitiveList readNumbers(JsonReader in, JsonElement[] pending) throws IOException {
+        PrimitiveList list = new OfLong();
+        while (in.hasNext() && in.peek() == JsonToken.NUMBER) {
+            PrimitiveList next = null;
+            if (in.hasPeekedLong()) {
+                long value = in.nextLong();
+                next = addLong(list, value);
+                if (next == null) {
+                    pending[0] = new JsonNumber(value);
+                }
+            } else {
+                // decided like JsonNumber.isLong() and isDouble() would, see add()
+                String literal = in.nextString();
+                if (JsonNumber.isIntegral(literal)) {
+                    try {
+                        next = addLong(list, Long.parseLong(literal));
+                    } catch (NumberFormatException e) {
+                        // too large for a long
+                    }
+                } else {
+                    double value = Double.parseDouble(literal);
+                    if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+                        next = addDouble(list, value);
+                    }
+                }
+                if (next == null) {
+                    pending[0] = new JsonNumber(literal);
+                }
+            }
+            if (next == null) {
+                return list;
+            }
+            list = next;
+        }
+        return list;
+    }
+
+    /**
+     * Adds a value that was read on its own to {@code list}, as {@link #read}
+     * would have read it. This lets arrays that are not read in one go, like
+     * by {@link NonBlockingJsonReader#nextElement()}, end up with the same
+     * backing store.
+     *
+     * @param list the values so far, or null to start a list.
+     * @return the list the value was added to, which replaces {@code list}
+     * when longs had to become doubles, or null if the value doesn't fit and
+     * the array needs a regular list from here on.
+     */
+    static PrimitiveList add(PrimitiveList list, JsonElement value) {
+        if (value instanceof JsonBoolean) {
+            if (list == null) {
+                list = new OfBoolean();
+            } else if (!(list instanceof OfBoolean)) {
+                return null;
+            }
+            ((OfBoolean) list).addBoolean(value.asBoolean());
+            return list;
+        }
+        if (!(value instanceof JsonNumber) || list instanceof OfBoolean) {
+            return null;
+        }
+        JsonNumber number = (JsonNumber) value;
+        if (number.isLong()) {
+            return addLong(list, number.asLong());
+        } else if (number.isDouble()) {
+            return addDouble(list, number.asDouble());
+        }
+        return null;
+    }
+
+    private static PrimitiveList addLong(PrimitiveList list, long value) {
+        if (list == null) {
+            list = new OfLong();
+        }
+        if (list instanceof OfLong) {
+            ((OfLong) list).addLong(value);
+            return list;
+        }
+        return ((OfDouble) list).addIntegral(value) ? list : null;
+    }
+
+    private static PrimitiveList addDouble(PrimitiveList list, double value) {
+        OfDouble doubles;
+        if (list instanceof OfDouble) {
+            doubles = (OfDouble) list;
+        } else if (list == null) {
+            doubles = new OfDouble();
+        } else {
+            doubles = OfDouble.from((OfLong) list);
+            if (doubles == null) {
+                return null;
+            }
+        }
+        doubles.addDouble(value);
+        return doubles;
+    }
+
+    static final class OfLong extends PrimitiveList {
+        long[] values = new long[0];
+
+        OfLong() {
+        }
+
+        OfLong(long[] values) {
+            this.values = values;
+            this.size = values.length;
+        }
+
+        void addLong(long value) {
+            if (size == values.length) {
+                long[] newValues = new long[grow(size)];
+                System.arraycopy(values, 0, newValues, 0, size);
+                values = newValues;
+            }
+            values[size++] = value;
+        }
+
+        @Override
+        boolean accepts(JsonElement value) {
+            return value instanceof JsonNumber && ((JsonNumber) value).isLong();
+        }
+
+        @Override
+        public JsonElement get(int index) {
+            checkIndex(index);
+            return new JsonNumber(values[index]);
+        }
+
+        @Override
+        public JsonElement set(int index, JsonElement element) {
+            JsonElement result = get(index);
+            values[index] = element.asLong();
+            return result;
+        }
+
+        @Override
+        public void add(int index, JsonElement element) {
+            if (index != size) {
+                checkIndex(index);
+            }
+            addLong(0);
+            System.arraycopy(values, index, values, index + 1, size - 1 - index);
+            values[index] = element.asLong();
+            modCount++;
+        }
+
+        @Override
+        public JsonElement remove(int index) {
+            JsonElement result = get(index);
+            System.arraycopy(values, index + 1, values, index, --size - index);
+            modCount++;
+            return result;
+        }
+
+        @Override
+        public void clear() {
+            size = 0;
+            modCount++;
+        }
+
+        @Override
+        void write(JsonWriter writer) throws IOException {
+            for (int i = 0; i < size; i++) {
+                writer.value(values[i]);
+            }
+        }
+
+        double[] toDoubleArray() {
+            double[] result = new double[size];
+            for (int i = 0; i < size; i++) {
+                result[i] = values[i];
+            }
+            return result;
+        }
+
+        long[] toLongArray() {
+            long[] result = new long[size];
+            System.arraycopy(values, 0, result, 0, size);
+            return result;
+        }
+
+        @Override
+        OfLong copy() {
+            return new OfLong(toLongArray());
+        }
+    }
+
+    /**
+     * Doubles, possibly mixed with integers small enough to be exact as a double.
+     * A bit set marks which values were integers so they are still written as
+     * such.
+     */
+    static final class OfDouble extends PrimitiveList {
+        double[] values = new double[0];
+        /** One bit per value that was added as an integer, or null if none was. */
+        long[] integral;
+
+        OfDouble() {
+        }
+
+        OfDouble(double[] values) {
+            this.values = values;
+            this.size = values.length;
+        }
+
+        /**
+         * Returns the longs as a list of doubles, or null if one of them is too
+         * large to be exact.
+         */
+        static OfDouble from(OfLong longs) {
+            OfDouble result = new OfDouble();
+            result.values = new double[Math.max(longs.values.length, INITIAL_CAPACITY)];
+            for (int i = 0; i < longs.size; i++) {
+                if (!result.addIntegral(longs.values[i])) {
+                    return null;
+                }
+            }
+            return result;
+        }
+
+        void addDouble(double value) {
+            if (size == values.length) {
+                double[] newValues = new double[grow(size)];
+                System.arraycopy(values, 0, newValues, 0, size);
+                values = newValues;
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * Adds an integer, or returns false if it's too large to be exact as a
+         * double.
+         */
+        boolean addIntegral(long value) {
+            if (value > MAX_EXACT_DOUBLE || value < -MAX_EXACT_DOUBLE) {
+                return false;
+            }
+            addDouble(value);
+            setIntegral(size - 1, true);
+            return true;
+        }
+
+        boolean isIntegral(int index) {
+            return integral != null && index >> 6 < integral.length
+                    && (integral[index >> 6] & (1L << index)) != 0;
+        }
+
+        private void setIntegral(int index, boolean value) {
+            if (integral == null || index >> 6 >= integral.length) {
+                if (!value) {
+                    return;
+                }
+                long[] newIntegral = new long[(values.length + 63) >> 6];
+                if (integral != null) {
+                    System.arraycopy(integral, 0, newIntegral, 0, integral.length);
+                }
+                integral = newIntegral;
+            }
+            if (value) {
+                integral[index >> 6] |= 1L << index;
+            } else {
+                integral[index >> 6] &= ~(1L << index);
+            }
+        }
+
+        @Override
+        boolean accepts(JsonElement value) {
+            if (!(value instanceof JsonNumber)) {
+                return false;
+            }
+            JsonNumber number = (JsonNumber) value;
+            if (number.isLong()) {
+                long l = number.asLong();
+                return l <= MAX_EXACT_DOUBLE && l >= -MAX_EXACT_DOUBLE;
+            }
+            return number.isDouble();
+        }
+
+        @Override
+        public JsonElement get(int index) {
+            checkIndex(index);
+            if (isIntegral(index)) {
+                return new JsonNumber((long) values[index]);
+            }
+            return new JsonNumber(values[index]);
+        }
+
+        @Override
+        public JsonElement set(int index, JsonElement element) {
+            JsonElement result = get(index);
+            boolean integral = ((JsonNumber) element).isLong();
+            values[index] = element.asDouble();
+            setIntegral(index, integral);
+            return result;
+        }
+
+        @Override
+        public void add(int index, JsonElement element) {
+            if (index != size) {
+                checkIndex(index);
+            }
+            addDouble(0);
+            for (int i = size - 1; i > index; i--) {
+                values[i] = values[i - 1];
+                setIntegral(i, isIntegral(i - 1));
+            }
+            values[index] = element.asDouble();
+            setIntegral(index, ((JsonNumber) element).isLong());
+            modCount++;
+        }
+
+        @Override
+        public JsonElement remove(int index) {
+            JsonElement result = get(index);
+            for (int i = index; i < size - 1; i++) {
+                values[i] = values[i + 1];
+                setIntegral(i, isIntegral(i + 1));
+            }
+            setIntegral(--size, false);
+            modCount++;
+            return result;
+        }
+
+        @Override
+        public void clear() {
+            size = 0;
+            integral = null;
+            modCount++;
+        }
+
+        @Override
+        void write(JsonWriter writer) throws IOException {
+            for (int i = 0; i < size; i++) {
+                if (isIntegral(i)) {
+                    writer.value((long) values[i]);
+                } else {
+                    writer.value(values[i]);
+                }
+            }
+        }
+
+        double[] toDoubleArray() {
+            double[] result = new double[size];
+            System.arraycopy(values, 0, result, 0, size);
+            return result;
+        }
+
+        long[] toLongArray() {
+            long[] result = new long[size];
+            for (int i = 0; i < size; i++) {
+                result[i] = (long) values[i];
+            }
+            return result;
+        }
+
+        @Override
+        OfDouble copy() {
+            OfDouble result = new OfDouble(toDoubleArray());
+            result.integral = integral != null ? integral.clone() : null;
+            return result;
+        }
+    }
+
+    static final class OfBoolean extends PrimitiveList {
+        private static final JsonBoolean TRUE = new JsonBoolean(true);
+        private static final JsonBoolean FALSE = new JsonBoolean(false);
+
+        boolean[] values = new boolean[0];
+
+        OfBoolean() {
+        }
+
+        OfBoolean(boolean[] values) {
+            this.values = values;
+            this.size = values.length;
+        }
+
+        void addBoolean(boolean value) {
+            if (size == values.length) {
+                boolean[] newValues = new boolean[grow(size)];
+                System.arraycopy(values, 0, newValues, 0, size);
+                values = newValues;
+            }
+            values[size++] = value;
+        }
+
+        @Override
+        boolean accepts(JsonElement value) {
+            return value instanceof JsonBoolean;
+        }
+
+        @Override
+        public JsonElement get(int index) {
+            checkIndex(index);
+            return values[index] ? TRUE : FALSE;
+        }
+
+        @Override
+        public JsonElement set(int index, JsonElement element) {
+            JsonElement result = get(index);
+            values[index] = element.asBoolean();
+            return result;
+        }
+
+        @Override
+        public void add(int index, JsonElement element) {
+            if (index != size) {
+                checkIndex(index);
+            }
+            addBoolean(false);
+            System.arraycopy(values, index, values, index + 1, size - 1 - index);
+            values[index] = element.asBoolean();
+            modCount++;
+        }
+
+        @Override
+        public JsonElement remove(int index) {
+            JsonElement result = get(index);
+            System.arraycopy(values, index + 1, values, index, --size - index);
+            modCount++;
+            return result;
+        }
+
+        @Override
+        public void clear() {
+            size = 0;
+            modCount++;
+        }
+
+        @Override
+        void write(JsonWriter writer) throws IOException {
+            for (int i = 0; i < size; i++) {
+                writer.value(values[i]);
+            }
+        }
+
+        boolean[] toBooleanArray() {
+            boolean[] result = new boolean[size];
+            System.arraycopy(values, 0, result, 0, size);
+            return result;
+        }
+
+        @Override
+        OfBoolean copy() {
+            return new OfBoolean(toBooleanArray());
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.apptik.json.util.StringPool;
+
+/**
+ * A set of paths to read from a document, see
+ * {@link JsonElement#readFrom(JsonReader, Projection)}. Everything that is not
+ * on one of the paths is skipped by the reader without creating elements for
+ * it.
+ *
+ * <p>Paths are written like {@code $.user.id}, {@code $.items[*].price} or
+ * {@code $['odd name'][0]}; {@code *} matches every member of an object and
+ * every element of an array. A path that ends at an object or array selects
+ * all of it.
+ *
+ * <p>The projected tree keeps the shape of the document: objects only have the
+ * projected members and arrays only the projected elements, in document
+ * order. Members whose value does not have the type the path expects are left
+ * out, while projected objects and arrays are kept even if none of their
+ * content matched, so that elements selected with {@code [*]} keep their
+ * positions.
+ *
+ * <p>A projection is immutable and can be shared between threads.
+ */
+public final class Projection {
+
+    private final Node root = new Node();
+    /** Shared by the readers this projection creates, so repeated names are not allocated again. */
+    private final StringPool namePool = new StringPool();
+
+    private Projection(Collection<String> paths) {
+        for (String path : paths) {
+            Node node = root;
+            for (PathSegment segment : PathSegment.parse(path)) {
+                if (segment.descendant) {
+                    throw new IllegalArgumentException("Descendant segments can't be projected: " + path);
+                }
+                node = node.child(segment);
+            }
+            node.all = true;
+        }
+        root.mergeWildcards();
+    }
+
+    /**
+     * @throws IllegalArgumentException if a path is malformed or uses
+     *                                  {@code ..}.
+     */
+    public static Projection of(String... paths) {
+        return new Projection(Arrays.asList(paths));
+    }
+
+    /**
+     * @throws IllegalArgumentException if a path is malformed or uses
+     *                                  {@code ..}.
+     */
+    public static Projection of(Collection<String> paths) {
+        return new Projection(paths);
+    }
+
+    StringPool namePool() {
+        return namePool;
+    }
+
+    /**
+     * Reads the projected parts of the next value of {@code in}.
+     *
+     * @return the projected value, or null if the value does not have the type
+     * the projection expects.
+     */
+    JsonElement read(JsonReader in) throws IOException {
+        return read(in, root);
+    }
+
+    private static JsonElement read(JsonReader in, Node node) throws IOException {
+        if (node.all) {
+            return JsonElement.readFrom(in);
+        }
+        switch (in.peek()) {
+            case BEGIN_OBJECT:
+                if (node.names == null && node.any == null) {
+                    break;
+                }
+                JsonObject object = new JsonObject();
+                in.beginObject();
+                while (in.hasNext()) {
+                    String name = in.nextName();
+                    Node child = node.member(name);
+                    JsonElement value = child != null ? read(in, child) : null;
+                    if (child == null) {
+                        in.skipValue();
+                    } else if (value != null) {
+                        object.putInternal(name, value);
+                    }
+                }
+                in.endObject();
+                return object;
+            case BEGIN_ARRAY:
+                if (node.indices == null && node.any == null) {
+                    break;
+                }
+                JsonArray array = new JsonArray();
+                in.beginArray();
+                for (int index = 0; in.hasNext(); index++) {
+                    Node child = node.element(index);
+                    JsonElement value = child != null ? read(in, child) : null;
+                    if (child == null) {
+                        in.skipValue();
+                    } else if (value != null) {
+                        array.putInternal(value);
+                    }
+                }
+                in.endArray();
+                return array;
+            default:
+                break;
+        }
+        in.skipValue();
+        return null;
+    }
+
+    /**
+     * The paths that continue from one value.
+     */
+    private static final class Node {
+        /** True if a path ends here, which selects the whole value. */
+        boolean all;
+        Map<String, Node> names;
+        Map<Integer, Node> indices;
+        Node any;
+
+        Node child(PathSegment segment) {
+            if (segment.isWildcard()) {
+                return any != null ? any : (any = new Node());
+            }
+            if (segment.name != null) {
+                if (names == null) {
+                    names = new HashMap<String, Node>();
+                }
+                Node result = names.get(segment.name);
+                if (result == null) {
+                    names.put(segment.name, result = new Node());
+                }
+                return result;
+            }
+            if (indices == null) {
+                indices = new HashMap<Integer, Node>();
+            }
+            Node result = indices.get(segment.index);
+            if (result == null) {
+                indices.put(segment.index, result = new Node());
+            }
+            return result;
+        }
+
+        Node member(String name) {
+            Node result = names != null ? names.get(name) : null;
+            return result != null ? result : any;
+        }
+
+        Node element(int index) {
+            Node result = indices != null ? indices.get(index) : null;
+            return result != null ? result : any;
+        }
+
+        /**
+         * Adds the paths that continue from a wildcard to every named or
+         * indexed child, so that a lookup only has to find one node.
+         */
+        void mergeWildcards() {
+            if (any != null) {
+                any.mergeWildcards();
+                if (names != null) {
+                    for (Node child : names.values()) {
+                        child.merge(any);
+                    }
+                }
+                if (indices != null) {
+                    for (Node child : indices.values()) {
+                        child.merge(any);
+                    }
+                }
+            }
+            if (names != null) {
+                for (Node child : names.values()) {
+                    child.mergeWildcards();
+                }
+            }
+            if (indices != null) {
+                for (Node child : indices.values()) {
+                    child.mergeWildcards();
+                }
+            }
+        }
+
+        private void merge(Node other) {
+            all |= other.all;
+            if (other.any != null) {
+                child(PathSegment.WILDCARD).merge(other.any);
+            }
+            if (other.names != null) {
+                for (Map.Entry<String, Node> entry : other.names.entrySet()) {
+                    if (names == null) {
+                        names = new HashMap<String, Node>();
+                    }
+                    Node child = names.get(entry.getKey());
+                    if (child == null) {
+                        names.put(entry.getKey(), child = new Node());
+                    }
+                    child.merge(entry.getValue());
+                }
+            }
+            if (other.indices != null) {
+                for (Map.Entry<Integer, Node> entry : other.indices.entrySet()) {
+                    if (indices == null) {
+                        indices = new HashMap<Integer, Node>();
+                    }
+                    Node child = indices.get(entry.getKey());
+                    if (child == null) {
+                        indices.put(entry.getKey(), child = new Node());
+                    }
+                    child.merge(entry.getValue());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+
+/**
+ * A property name that is quoted and escaped once, so that
+ * {@link JsonWriter#name(SerializedName)} writes it with a single copy instead
+ * of escaping it char by char each time. Create one per name of a fixed
+ * vocabulary and keep it in a constant:
+ * <pre>   {@code
+ *   static final SerializedName ID = SerializedName.of("id");
+ *   ...
+ *   writer.name(ID).value(id);
+ * }</pre>
+ * Instances are immutable and may be shared by threads.
+ */
+public final class SerializedName {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String name;
+    private final String quoted;
+    private final String htmlSafeQuoted;
+
+    /** The UTF-8 encodings of the quoted names, or null until first needed. */
+    private volatile byte[] utf8;
+    private volatile byte[] htmlSafeUtf8;
+
+    private SerializedName(String name) {
+        this.name = name;
+        this.quoted = quote(name, false);
+        String htmlSafe = quote(name, true);
+        this.htmlSafeQuoted = htmlSafe.equals(quoted) ? quoted : htmlSafe;
+    }
+
+    /**
+     * Returns the serialized form of {@code name}.
+     */
+    public static SerializedName of(String name) {
+        if (name == null) {
+            throw new NullPointerException("name == null");
+        }
+        return new SerializedName(name);
+    }
+
+    private static String quote(String name, boolean htmlSafe) {
+        StringWriter out = new StringWriter(name.length() + 2);
+        JsonWriter writer = new JsonWriter(out);
+        writer.setHtmlSafe(htmlSafe);
+        try {
+            writer.string(name);
+        } catch (IOException e) {
+            // StringWriter does not throw IOExceptions
+            throw new RuntimeException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Returns the name, quoted and escaped for a writer that is
+     * {@link JsonWriter#setHtmlSafe HTML safe} or not.
+     */
+    String quoted(boolean htmlSafe) {
+        return htmlSafe ? htmlSafeQuoted : quoted;
+    }
+
+    byte[] utf8(boolean htmlSafe) {
+        if (htmlSafe && htmlSafeQuoted != quoted) {
+            byte[] result = htmlSafeUtf8;
+            if (result == null) {
+                result = htmlSafeUtf8 = htmlSafeQuoted.getBytes(UTF_8);
+            }
+            return result;
+        }
+        byte[] result = utf8;
+        if (result == null) {
+            result = utf8 = quoted.getBytes(UTF_8);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SerializedName && ((SerializedName) o).name.equals(name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    /**
+     * Returns the name, without quotes or escapes.
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * The content of a string that has no escapes, read straight from the input it
+ * was parsed from. ASCII content is read from the source as is; anything else
+ * is decoded the first time its chars are needed. {@link #hashCode()} is the
+ * same as that of the equal {@link String}.
+ */
+final class SourceString implements CharSequence {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private final char[] chars;
+    private final ByteBuffer bytes;
+    private final int start;
+    /** The length in chars, or in bytes if the bytes are not all ASCII. */
+    private final int length;
+    private final boolean ascii;
+
+    /** The decoded content, or null if it has not been needed yet. */
+    private String string;
+    private int hash;
+
+    SourceString(char[] chars, int start, int length) {
+        this.chars = chars;
+        this.bytes = null;
+        this.start = start;
+        this.length = length;
+        this.ascii = true;
+    }
+
+    /**
+     * Refers to {@code length} UTF-8 bytes of {@code bytes} at {@code start}.
+     * The position and limit of {@code bytes} are ignored.
+     */
+    SourceString(ByteBuffer bytes, int start, int length, boolean ascii) {
+        this.chars = null;
+        this.bytes = bytes;
+        this.start = start;
+        this.length = length;
+        this.ascii = ascii;
+    }
+
+    @Override
+    public int length() {
+        return chars != null || ascii ? length : toString().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (chars == null && !ascii) {
+            return toString().charAt(index);
+        }
+        if (index < 0 || index >= length) {
+            throw new StringIndexOutOfBoundsException(index);
+        }
+        return chars != null ? chars[start + index] : (char) bytes.get(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        if (chars == null && !ascii) {
+            return toString().subSequence(from, to);
+        }
+        if (from < 0 || to > length || from > to) {
+            throw new StringIndexOutOfBoundsException("[" + from + ", " + to + ") of " + length);
+        }
+        return chars != null
+                ? new SourceString(chars, start + from, to - from)
+                : new SourceString(bytes, start + from, to - from, true);
+    }
+
+    @Override
+    public String toString() {
+        String result = string;
+        if (result == null) {
+            result = string = decode();
+        }
+        return result;
+    }
+
+    private String decode() {
+        if (chars != null) {
+            return new String(chars, start, length);
+        }
+        if (bytes.hasArray()) {
+            return new String(bytes.array(), bytes.arrayOffset() + start, length, ascii ? ISO_8859_1 : UTF_8);
+        }
+        ByteBuffer slice = bytes.duplicate();
+        slice.limit(start + length);
+        slice.position(start);
+        return UTF_8.decode(slice).toString();
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0 && length > 0) {
+            if (chars == null && !ascii) {
+                h = toString().hashCode();
+            } else {
+                for (int i = 0; i < length; i++) {
+                    h = 31 * h + (chars != null ? chars[start + i] : bytes.get(start + i));
+                }
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SourceString && contentEquals(this, (SourceString) o);
+    }
+
+    /**
+     * Returns true if {@code a} and {@code b} hold the same chars. Slices of
+     * UTF-8 input are compared byte by byte before decoding them.
+     */
+    static boolean contentEquals(CharSequence a, CharSequence b) {
+        if (a == b) {
+            return true;
+        }
+        if (a instanceof String && b instanceof String) {
+            return a.equals(b);
+        }
+        if (a instanceof SourceString && b instanceof SourceString) {
+            SourceString x = (SourceString) a;
+            SourceString y = (SourceString) b;
+            if (x.bytes != null && y.bytes != null && x.ascii == y.ascii) {
+                if (x.length == y.length && sameBytes(x, y)) {
+                    return true;
+                }
+                if (x.ascii) {
+                    return false;
+                }
+                // malformed input decodes to the same replacement char from different bytes
+            }
+        }
+        int length = a.length();
+        if (length != b.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (a.charAt(i) != b.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameBytes(SourceString x, SourceString y) {
+        for (int i = 0; i < x.length; i++) {
+            if (x.bytes.get(x.start + i) != y.bytes.get(y.start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
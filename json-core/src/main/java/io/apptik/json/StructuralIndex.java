@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import io.apptik.json.exception.MalformedJsonException;
+
+/**
+ * The first pass of {@link JsonTape}: finds the offsets of all structural
+ * characters, of both quotes of every string and of the first byte of every
+ * other value in UTF-8 encoded JSON.
+ *
+ * <p>The input is classified 64 bytes at a time. Each byte class is computed
+ * eight bytes at a time with word-wide arithmetic and gathered into a 64 bit
+ * mask with one bit per byte. Escaped quotes and the inside of strings are
+ * then found with a handful of operations on these masks, without looking at
+ * the bytes of the block again.
+ */
+final class StructuralIndex {
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW7 = 0x7f7f7f7f7f7f7f7fL;
+    private static final long HIGH = 0x8080808080808080L;
+    private static final long ODD_BITS = 0xaaaaaaaaaaaaaaaaL;
+    /** Moves the high bit of each byte to the bit of the top byte with the byte's index. */
+    private static final long GATHER = 0x0102040810204080L;
+
+    private static final long QUOTES = '"' * ONES;
+    private static final long BACKSLASHES = '\\' * ONES;
+    private static final long COLONS = ':' * ONES;
+    private static final long COMMAS = ',' * ONES;
+    /** '[' and ']' with bit 5 set are '{' and '}'. */
+    private static final long OPEN_BRACES = '{' * ONES;
+    private static final long CLOSE_BRACES = '}' * ONES;
+    private static final long BIT5 = 0x20 * ONES;
+    private static final long SPACES = ' ' * ONES;
+    private static final long TABS = '\t' * ONES;
+    private static final long NEWLINES = '\n' * ONES;
+    private static final long RETURNS = '\r' * ONES;
+
+    /** Offsets in order, followed by {@code end} as a sentinel. */
+    final int[] offsets;
+    /** Number of offsets, not counting the sentinel. */
+    final int count;
+    /** One bit per 64 byte block that has a backslash in it. */
+    private final long[] backslashBlocks;
+    private final int start;
+
+    private StructuralIndex(int[] offsets, int count, long[] backslashBlocks, int start) {
+        this.offsets = offsets;
+        this.count = count;
+        this.backslashBlocks = backslashBlocks;
+        this.start = start;
+    }
+
+    /**
+     * Indexes {@code bytes} from {@code start} to {@code end}.
+     *
+     * @throws MalformedJsonException if a string is not terminated.
+     */
+    static StructuralIndex build(byte[] bytes, int start, int end) throws MalformedJsonException {
+        ByteBuffer words = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int[] offsets = new int[Math.max(64, (end - start) >> 2)];
+        int count = 0;
+        long[] backslashBlocks = new long[((end - start) >> 12) + 1];
+
+        long prevInString = 0;
+        long prevScalar = 0;
+        long nextIsEscaped = 0;
+        for (int base = start, block = 0; base < end; base += 64, block++) {
+            ByteBuffer in = words;
+            int at = base;
+            if (end - base < 64) {
+                byte[] tail = new byte[64];
+                System.arraycopy(bytes, base, tail, 0, end - base);
+                for (int i = end - base; i < 64; i++) {
+                    tail[i] = ' ';
+                }
+                in = ByteBuffer.wrap(tail).order(ByteOrder.LITTLE_ENDIAN);
+                at = 0;
+            }
+
+            long quote = 0;
+            long backslash = 0;
+            long op = 0;
+            long space = 0;
+            for (int i = 0; i < 8; i++) {
+                long word = in.getLong(at + (i << 3));
+                int shift = i << 3;
+                quote |= gather(equal(word, QUOTES)) << shift;
+                backslash |= gather(equal(word, BACKSLASHES)) << shift;
+                long braces = word | BIT5;
+                op |= gather(equal(braces, OPEN_BRACES) | equal(braces, CLOSE_BRACES)
+                        | equal(word, COLONS) | equal(word, COMMAS)) << shift;
+                space |= gather(equal(word, SPACES) | equal(word, TABS)
+                        | equal(word, NEWLINES) | equal(word, RETURNS)) << shift;
+            }
+
+            long escaped;
+            if (backslash == 0) {
+                escaped = nextIsEscaped;
+                nextIsEscaped = 0;
+            } else {
+                backslashBlocks[block >> 6] |= 1L << block;
+                // A backslash escapes the next byte unless it is escaped itself,
+                // so only odd runs of backslashes escape the byte after them.
+                long potentialEscape = backslash & ~nextIsEscaped;
+                long maybeEscaped = potentialEscape << 1;
+                long escapeAndTerminal = ((maybeEscaped | ODD_BITS) - potentialEscape) ^ ODD_BITS;
+                escaped = escapeAndTerminal ^ (backslash | nextIsEscaped);
+                nextIsEscaped = (escapeAndTerminal & backslash) >>> 63;
+            }
+            quote &= ~escaped;
+
+            // the inside of strings is every byte with an odd number of quotes
+            // at or before it: the opening quote is inside, the closing one not
+            long inString = prefixXor(quote) ^ prevInString;
+            prevInString = inString >> 63;
+
+            long scalar = ~(op | space | quote | inString);
+            long scalarStart = scalar & ~((scalar << 1) | prevScalar);
+            prevScalar = scalar >>> 63;
+
+            long structural = (op & ~inString) | quote | scalarStart;
+            if (count + 64 > offsets.length) {
+                int[] newOffsets = new int[Math.max(offsets.length << 1, count + 65)];
+                System.arraycopy(offsets, 0, newOffsets, 0, count);
+                offsets = newOffsets;
+            }
+            while (structural != 0) {
+                offsets[count++] = base + Long.numberOfTrailingZeros(structural);
+                structural &= structural - 1;
+            }
+        }
+        if (prevInString != 0) {
+            throw new MalformedJsonException("Unterminated string");
+        }
+        if (count == offsets.length) {
+            int[] newOffsets = new int[count + 1];
+            System.arraycopy(offsets, 0, newOffsets, 0, count);
+            offsets = newOffsets;
+        }
+        offsets[count] = end;
+        return new StructuralIndex(offsets, count, backslashBlocks, start);
+    }
+
+    /**
+     * Returns true if there may be a backslash from offset {@code from} to
+     * {@code to}.
+     */
+    boolean mayHaveBackslash(int from, int to) {
+        for (int block = (from - start) >> 6, last = (to - 1 - start) >> 6; block <= last; block++) {
+            if ((backslashBlocks[block >> 6] & (1L << block)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a word with the high bit set in exactly the bytes of {@code word}
+     * that equal the bytes of {@code pattern}.
+     */
+    private static long equal(long word, long pattern) {
+        long x = word ^ pattern;
+        return ~(((x & LOW7) + LOW7) | x | LOW7);
+    }
+
+    /**
+     * Returns the high bits of the bytes of {@code word} as an 8 bit mask.
+     */
+    private static long gather(long word) {
+        return ((word & HIGH) >>> 7) * GATHER >>> 56;
+    }
+
+    private static long prefixXor(long mask) {
+        mask ^= mask << 1;
+        mask ^= mask << 2;
+        mask ^= mask << 4;
+        mask ^= mask << 8;
+        mask ^= mask << 16;
+        mask ^= mask << 32;
+        return mask;
+    }
+}
@@ -0,0 +1,1146 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A {@link JsonReader} that reads UTF-8 encoded JSON directly from bytes.
+ * Structural characters, keywords and numbers are scanned as bytes and only
+ * the contents of strings and names are decoded to chars, so there is no need
+ * to wrap the input in an {@link java.io.InputStreamReader}:
+ * <pre>   {@code
+ *   JsonElement json = JsonElement.readFrom(new Utf8JsonReader(in));
+ * }</pre>
+ *
+ * <p>Input that is not valid UTF-8 is decoded leniently: each maximal subpart
+ * of a malformed byte sequence is replaced with one {@code U+FFFD}, just as an
+ * {@code InputStreamReader} would do. The columns in syntax errors count
+ * bytes, not chars.
+ *
+ * <p>When created for a byte array or a {@link ByteBuffer} the reader scans the
+ * given bytes in place and never modifies them. Instances of this class are not
+ * thread safe.
+ */
+public class Utf8JsonReader extends JsonReader {
+
+    private static final byte[] NON_EXECUTE_PREFIX = {')', ']', '}', '\'', '\n'};
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final char REPLACEMENT_CHAR = '\ufffd';
+
+    /**
+     * The input JSON, or null if all of it is already in {@link #buffer} or is
+     * supplied by {@link #nextWindow(int)}.
+     */
+    private final InputStream in;
+
+    /**
+     * The bytes being scanned; {@link #pos} and {@link #limit} index into it.
+     * When reading from a stream this wraps {@link #array}, which is refilled
+     * the same way as the char buffer of {@link JsonReader}.
+     */
+    ByteBuffer buffer;
+    private final byte[] array;
+
+    /** Scratch space for strings that have to be decoded char by char. */
+    private char[] chars = new char[64];
+
+    private boolean zeroCopyStrings;
+
+    /**
+     * Creates a new instance that reads UTF-8 encoded JSON from {@code in}.
+     */
+    public Utf8JsonReader(InputStream in) {
+        if (in == null) {
+            throw new NullPointerException("in == null");
+        }
+        this.in = in;
+        this.array = new byte[8192];
+        this.buffer = ByteBuffer.wrap(array);
+    }
+
+    /**
+     * Creates a new instance that reads UTF-8 encoded JSON from {@code bytes}.
+     */
+    public Utf8JsonReader(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Creates a new instance that reads {@code length} bytes of UTF-8 encoded
+     * JSON from {@code bytes}, starting at {@code offset}.
+     */
+    public Utf8JsonReader(byte[] bytes, int offset, int length) {
+        this(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * Creates a new instance that reads the remaining bytes of {@code bytes} as
+     * UTF-8 encoded JSON. The position of {@code bytes} is not changed.
+     */
+    public Utf8JsonReader(ByteBuffer bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes == null");
+        }
+        this.in = null;
+        this.array = null;
+        this.buffer = bytes.slice();
+        this.limit = buffer.limit();
+        skipByteOrderMark();
+    }
+
+    /**
+     * Creates a reader for subclasses that map their input into {@link #buffer}
+     * themselves.
+     */
+    Utf8JsonReader() {
+        this.in = null;
+        this.array = null;
+    }
+
+    /**
+     * Configure this reader to leave string values without escapes in the
+     * input when building a {@link JsonElement}. Such a {@link JsonString}
+     * refers to the bytes it was read from until its {@link String} value is
+     * first needed, see {@link JsonString#asCharSequence()}, so the input must
+     * not be modified while the element is in use, and it is kept from being
+     * garbage collected. This has no effect when reading from a stream or from
+     * fed chunks, whose bytes are reused as more input arrives.
+     */
+    public final void setZeroCopyStrings(boolean zeroCopyStrings) {
+        this.zeroCopyStrings = zeroCopyStrings;
+    }
+
+    /**
+     * Returns true if string values refer to the input instead of being copied.
+     */
+    public final boolean isZeroCopyStrings() {
+        return zeroCopyStrings;
+    }
+
+    @Override
+    @SuppressWarnings("fallthrough")
+    int doPeek() throws IOException {
+        int peekStack = stack[stackSize - 1];
+        if (peekStack == JsonScope.EMPTY_ARRAY) {
+            stack[stackSize - 1] = JsonScope.NONEMPTY_ARRAY;
+        } else if (peekStack == JsonScope.NONEMPTY_ARRAY) {
+            // Look for a comma before the next element.
+            int c = nextNonWhitespace(true);
+            switch (c) {
+                case ']':
+                    return peeked = PEEKED_END_ARRAY;
+                case ';':
+                    checkLenient(); // fall-through
+                case ',':
+                    break;
+                default:
+                    throw syntaxError("Unterminated array");
+            }
+        } else if (peekStack == JsonScope.EMPTY_OBJECT || peekStack == JsonScope.NONEMPTY_OBJECT) {
+            stack[stackSize - 1] = JsonScope.DANGLING_NAME;
+            // Look for a comma before the next element.
+            if (peekStack == JsonScope.NONEMPTY_OBJECT) {
+                int c = nextNonWhitespace(true);
+                switch (c) {
+                    case '}':
+                        return peeked = PEEKED_END_OBJECT;
+                    case ';':
+                        checkLenient(); // fall-through
+                    case ',':
+                        break;
+                    default:
+                        throw syntaxError("Unterminated object");
+                }
+            }
+            int c = nextNonWhitespace(true);
+            switch (c) {
+                case '"':
+                    return peeked = PEEKED_DOUBLE_QUOTED_NAME;
+                case '\'':
+                    checkLenient();
+                    return peeked = PEEKED_SINGLE_QUOTED_NAME;
+                case '}':
+                    if (peekStack != JsonScope.NONEMPTY_OBJECT) {
+                        return peeked = PEEKED_END_OBJECT;
+                    } else {
+                        throw syntaxError("Expected name");
+                    }
+                default:
+                    checkLenient();
+                    pos--; // Don't consume the first character in an unquoted string.
+                    if (isLiteral((char) c)) {
+                        return peeked = PEEKED_UNQUOTED_NAME;
+                    } else {
+                        throw syntaxError("Expected name");
+                    }
+            }
+        } else if (peekStack == JsonScope.DANGLING_NAME) {
+            stack[stackSize - 1] = JsonScope.NONEMPTY_OBJECT;
+            // Look for a colon before the value.
+            int c = nextNonWhitespace(true);
+            switch (c) {
+                case ':':
+                    break;
+                case '=':
+                    checkLenient();
+                    if ((pos < limit || fillBuffer(1)) && buffer.get(pos) == '>') {
+                        pos++;
+                    }
+                    break;
+                default:
+                    throw syntaxError("Expected ':'");
+            }
+        } else if (peekStack == JsonScope.EMPTY_DOCUMENT) {
+            if (lenient) {
+                consumeNonExecutePrefix();
+            }
+            stack[stackSize - 1] = JsonScope.NONEMPTY_DOCUMENT;
+        } else if (peekStack == JsonScope.NONEMPTY_DOCUMENT) {
+            int line = lineNumber;
+            int c = nextNonWhitespace(false);
+            if (c == -1) {
+                return peeked = PEEKED_EOF;
+            } else {
+                if (!lineDelimited || lineNumber == line) {
+                    checkLenient();
+                }
+                pos--;
+            }
+        } else if (peekStack == JsonScope.CLOSED) {
+            throw new IllegalStateException("JsonReader is closed");
+        }
+
+        int c = nextNonWhitespace(true);
+        switch (c) {
+            case ']':
+                if (peekStack == JsonScope.EMPTY_ARRAY) {
+                    return peeked = PEEKED_END_ARRAY;
+                }
+                // fall-through to handle ",]"
+            case ';':
+            case ',':
+                // In lenient mode, a 0-length literal in an array means 'null'.
+                if (peekStack == JsonScope.EMPTY_ARRAY || peekStack == JsonScope.NONEMPTY_ARRAY) {
+                    checkLenient();
+                    pos--;
+                    return peeked = PEEKED_NULL;
+                } else {
+                    throw syntaxError("Unexpected value");
+                }
+            case '\'':
+                checkLenient();
+                return peeked = PEEKED_SINGLE_QUOTED;
+            case '"':
+                return peeked = PEEKED_DOUBLE_QUOTED;
+            case '[':
+                return peeked = PEEKED_BEGIN_ARRAY;
+            case '{':
+                return peeked = PEEKED_BEGIN_OBJECT;
+            default:
+                pos--; // Don't consume the first character in a literal value.
+        }
+
+        int result = peekKeyword();
+        if (result != PEEKED_NONE) {
+            return result;
+        }
+
+        result = peekNumber();
+        if (result != PEEKED_NONE) {
+            return result;
+        }
+
+        if (!isLiteral((char) buffer.get(pos))) {
+            throw syntaxError("Expected value");
+        }
+
+        checkLenient();
+        return peeked = PEEKED_UNQUOTED;
+    }
+
+    private int peekKeyword() throws IOException {
+        // Figure out which keyword we're matching against by its first character.
+        byte c = buffer.get(pos);
+        String keyword;
+        String keywordUpper;
+        int peeking;
+        if (c == 't' || c == 'T') {
+            keyword = "true";
+            keywordUpper = "TRUE";
+            peeking = PEEKED_TRUE;
+        } else if (c == 'f' || c == 'F') {
+            keyword = "false";
+            keywordUpper = "FALSE";
+            peeking = PEEKED_FALSE;
+        } else if (c == 'n' || c == 'N') {
+            keyword = "null";
+            keywordUpper = "NULL";
+            peeking = PEEKED_NULL;
+        } else {
+            return PEEKED_NONE;
+        }
+
+        // Confirm that bytes [1..length) match the keyword.
+        int length = keyword.length();
+        for (int i = 1; i < length; i++) {
+            if (pos + i >= limit && !fillBuffer(i + 1)) {
+                return PEEKED_NONE;
+            }
+            c = buffer.get(pos + i);
+            if (c != keyword.charAt(i) && c != keywordUpper.charAt(i)) {
+                return PEEKED_NONE;
+            }
+        }
+
+        if ((pos + length < limit || fillBuffer(length + 1))
+                && isLiteral((char) buffer.get(pos + length))) {
+            return PEEKED_NONE; // Don't match trues, falsey or nullsoft!
+        }
+
+        // We've found the keyword followed either by EOF or by a non-literal character.
+        pos += length;
+        return peeked = peeking;
+    }
+
+    private int peekNumber() throws IOException {
+        // Like nextNonWhitespace, this uses locals 'p' and 'l' to save inner-loop field access.
+        ByteBuffer buffer = this.buffer;
+        int p = pos;
+        int l = limit;
+
+        long value = 0; // Negative to accommodate Long.MIN_VALUE more easily.
+        boolean negative = false;
+        boolean fitsInLong = true;
+        int last = NUMBER_CHAR_NONE;
+
+        int i = 0;
+
+        charactersOfNumber:
+        for (; true; i++) {
+            if (p + i == l) {
+                if (i == capacity()) {
+                    // Though this looks like a well-formed number, it's too long to continue reading. Give up
+                    // and let the application handle this as an unquoted literal.
+                    return PEEKED_NONE;
+                }
+                if (!fillBuffer(i + 1)) {
+                    break;
+                }
+                buffer = this.buffer;
+                p = pos;
+                l = limit;
+            }
+
+            byte c = buffer.get(p + i);
+            switch (c) {
+                case '-':
+                    if (last == NUMBER_CHAR_NONE) {
+                        negative = true;
+                        last = NUMBER_CHAR_SIGN;
+                        continue;
+                    } else if (last == NUMBER_CHAR_EXP_E) {
+                        last = NUMBER_CHAR_EXP_SIGN;
+                        continue;
+                    }
+                    return PEEKED_NONE;
+
+                case '+':
+                    if (last == NUMBER_CHAR_EXP_E) {
+                        last = NUMBER_CHAR_EXP_SIGN;
+                        continue;
+                    }
+                    return PEEKED_NONE;
+
+                case 'e':
+                case 'E':
+                    if (last == NUMBER_CHAR_DIGIT || last == NUMBER_CHAR_FRACTION_DIGIT) {
+                        last = NUMBER_CHAR_EXP_E;
+                        continue;
+                    }
+                    return PEEKED_NONE;
+
+                case '.':
+                    if (last == NUMBER_CHAR_DIGIT) {
+                        last = NUMBER_CHAR_DECIMAL;
+                        continue;
+                    }
+                    return PEEKED_NONE;
+
+                default:
+                    if (c < '0' || c > '9') {
+                        if (!isLiteral((char) c)) {
+                            break charactersOfNumber;
+                        }
+                        return PEEKED_NONE;
+                    }
+                    if (last == NUMBER_CHAR_SIGN || last == NUMBER_CHAR_NONE) {
+                        value = -(c - '0');
+                        last = NUMBER_CHAR_DIGIT;
+                    } else if (last == NUMBER_CHAR_DIGIT) {
+                        if (value == 0) {
+                            return PEEKED_NONE; // Leading '0' prefix is not allowed (since it could be octal).
+                        }
+                        long newValue = value * 10 - (c - '0');
+                        fitsInLong &= value > MIN_INCOMPLETE_INTEGER
+                                || (value == MIN_INCOMPLETE_INTEGER && newValue < value);
+                        value = newValue;
+                    } else if (last == NUMBER_CHAR_DECIMAL) {
+                        last = NUMBER_CHAR_FRACTION_DIGIT;
+                    } else if (last == NUMBER_CHAR_EXP_E || last == NUMBER_CHAR_EXP_SIGN) {
+                        last = NUMBER_CHAR_EXP_DIGIT;
+                    }
+            }
+        }
+
+        // We've read a complete number. Decide if it's a PEEKED_LONG or a PEEKED_NUMBER.
+        if (last == NUMBER_CHAR_DIGIT && fitsInLong && (value != Long.MIN_VALUE || negative)) {
+            peekedLong = negative ? value : -value;
+            pos += i;
+            return peeked = PEEKED_LONG;
+        } else if (last == NUMBER_CHAR_DIGIT || last == NUMBER_CHAR_FRACTION_DIGIT
+                || last == NUMBER_CHAR_EXP_DIGIT) {
+            peekedNumberLength = i;
+            return peeked = PEEKED_NUMBER;
+        } else {
+            return PEEKED_NONE;
+        }
+    }
+
+    @Override
+    String nextNumberLiteral() throws IOException {
+        String result = ascii(pos, peekedNumberLength);
+        pos += peekedNumberLength;
+        return result;
+    }
+
+    /**
+     * Returns the string up to but not including {@code quote}, unescaping any
+     * character escape sequences encountered along the way. The opening quote
+     * should have already been read. This consumes the closing quote, but does
+     * not include it in the returned string.
+     *
+     * @param quote either ' or ".
+     * @throws NumberFormatException if any unicode escape sequences are
+     *     malformed.
+     */
+    @Override
+    CharSequence nextQuotedChars(char quote) throws IOException {
+        if (zeroCopyStrings && in == null && stableInput()) {
+            ByteBuffer buffer = this.buffer;
+            boolean ascii = true;
+            for (int p = pos, l = limit; p < l; p++) {
+                int c = buffer.get(p);
+                if (c == quote) {
+                    CharSequence result = new SourceString(buffer, pos, p - pos, ascii);
+                    pos = p + 1;
+                    return result;
+                } else if (c == '\\' || c == '\n') {
+                    break;
+                } else if (c < 0) {
+                    ascii = false;
+                }
+            }
+        }
+        return nextQuotedValue(quote);
+    }
+
+    @Override
+    String nextQuotedValue(char quote) throws IOException {
+        // Fast path: the whole value is already buffered and has no escapes, so
+        // it can be decoded in one go.
+        if (buffer.hasArray()) {
+            ByteBuffer buffer = this.buffer;
+            boolean ascii = true;
+            for (int p = pos, l = limit; p < l; p++) {
+                int c = buffer.get(p);
+                if (c == quote) {
+                    String result = ascii ? ascii(pos, p - pos) : decode(pos, p - pos);
+                    pos = p + 1;
+                    return result;
+                } else if (c == '\\' || c == '\n') {
+                    break;
+                } else if (c < 0) {
+                    ascii = false;
+                }
+            }
+        }
+        int length = decodeQuotedValue(quote);
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * Names are decoded into the scratch buffer and looked up in the pool from
+     * there, so a pooled name costs no allocation at all.
+     */
+    @Override
+    String nextQuotedName(char quote) throws IOException {
+        if (namePool == null) {
+            return nextQuotedValue(quote);
+        }
+        int length = decodeQuotedValue(quote);
+        return namePool.get(chars, 0, length);
+    }
+
+    /**
+     * Decodes a quoted value char by char into the scratch buffer and returns
+     * the number of chars decoded. This handles escapes and values that span
+     * more than one fill of the buffer.
+     */
+    private int decodeQuotedValue(char quote) throws IOException {
+        char[] chars = this.chars;
+        int length = 0;
+        while (true) {
+            ByteBuffer buffer = this.buffer;
+            int p = pos;
+            int l = limit;
+            while (p < l) {
+                if (length + 2 > chars.length) {
+                    char[] newChars = new char[chars.length * 2];
+                    System.arraycopy(chars, 0, newChars, 0, length);
+                    this.chars = chars = newChars;
+                }
+                int c = buffer.get(p++);
+                if (c == quote) {
+                    pos = p;
+                    return length;
+                } else if (c == '\\') {
+                    pos = p;
+                    chars[length++] = readEscapeCharacter();
+                    buffer = this.buffer;
+                    p = pos;
+                    l = limit;
+                } else if (c >= 0) {
+                    if (c == '\n') {
+                        lineNumber++;
+                        lineStart = p;
+                    }
+                    chars[length++] = (char) c;
+                } else {
+                    int sequenceLength = sequenceLength(c);
+                    if (p - 1 + sequenceLength > l) {
+                        pos = p - 1;
+                        boolean loaded = fillBuffer(sequenceLength);
+                        buffer = this.buffer;
+                        p = pos + 1;
+                        l = limit;
+                        if (!loaded) {
+                            // the input ends inside the sequence
+                            chars[length++] = REPLACEMENT_CHAR;
+                            p += malformedLength(buffer, p - 1, c, l - p + 1) - 1;
+                            continue;
+                        }
+                    }
+                    int codePoint = decodeSequence(buffer, p - 1, c, sequenceLength);
+                    if (codePoint < 0) {
+                        chars[length++] = REPLACEMENT_CHAR;
+                        p += malformedLength(buffer, p - 1, c, sequenceLength) - 1;
+                    } else {
+                        p += sequenceLength - 1;
+                        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                            chars[length++] = (char) codePoint;
+                        } else {
+                            chars[length++] = (char) ((codePoint >>> 10)
+                                    + (Character.MIN_HIGH_SURROGATE - (Character.MIN_SUPPLEMENTARY_CODE_POINT >>> 10)));
+                            chars[length++] = (char) ((codePoint & 0x3ff) + Character.MIN_LOW_SURROGATE);
+                        }
+                    }
+                }
+            }
+
+            pos = p;
+            if (!fillBuffer(1)) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the UTF-8 sequence starting with the (negative)
+     * byte {@code lead}, or 1 if it cannot start a sequence.
+     */
+    private static int sequenceLength(int lead) {
+        int b = lead & 0xff;
+        if (b >= 0xc2 && b <= 0xdf) {
+            return 2;
+        } else if (b >= 0xe0 && b <= 0xef) {
+            return 3;
+        } else if (b >= 0xf0 && b <= 0xf4) {
+            return 4;
+        }
+        return 1;
+    }
+
+    /**
+     * Decodes the UTF-8 sequence of {@code length} bytes at {@code start}, or
+     * returns -1 if it is malformed.
+     */
+    private static int decodeSequence(ByteBuffer buffer, int start, int lead, int length) {
+        int codePoint;
+        int minimum;
+        switch (length) {
+            case 2:
+                codePoint = lead & 0x1f;
+                minimum = 0x80;
+                break;
+            case 3:
+                codePoint = lead & 0x0f;
+                minimum = 0x800;
+                break;
+            case 4:
+                codePoint = lead & 0x07;
+                minimum = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+                break;
+            default:
+                return -1;
+        }
+        for (int i = 1; i < length; i++) {
+            int b = buffer.get(start + i);
+            if ((b & 0xc0) != 0x80) {
+                return -1;
+            }
+            codePoint = (codePoint << 6) | (b & 0x3f);
+        }
+        if (codePoint < minimum || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            return -1;
+        }
+        return codePoint;
+    }
+
+    /**
+     * Returns the number of bytes of the malformed sequence at {@code start}
+     * that are replaced by a single {@code U+FFFD}, looking at no more than
+     * {@code available} bytes. This follows the UTF-8 decoder of the JDK: the
+     * lead byte and the continuation bytes after it that could still be part
+     * of a well formed sequence are replaced together, and so is an encoded
+     * surrogate.
+     */
+    private static int malformedLength(ByteBuffer buffer, int start, int lead, int available) {
+        int length = Math.min(sequenceLength(lead), available);
+        if (length < 2) {
+            return 1;
+        }
+        int b1 = lead & 0xff;
+        int b2 = buffer.get(start + 1) & 0xff;
+        if ((b2 & 0xc0) != 0x80
+                || b1 == 0xe0 && b2 < 0xa0
+                || b1 == 0xf0 && b2 < 0x90
+                || b1 == 0xf4 && b2 > 0x8f) {
+            return 1;
+        }
+        if (length < 3 || (buffer.get(start + 2) & 0xc0) != 0x80) {
+            return 2;
+        }
+        // either a surrogate, or four bytes that end early
+        return 3;
+    }
+
+    /**
+     * Returns an unquoted value as a string.
+     */
+    @Override
+    @SuppressWarnings("fallthrough")
+    String nextUnquotedValue() throws IOException {
+        StringBuilder builder = null;
+        int i = 0;
+
+        findNonLiteralCharacter:
+        while (true) {
+            for (; pos + i < limit; i++) {
+                switch (buffer.get(pos + i)) {
+                    case '/':
+                    case '\\':
+                    case ';':
+                    case '#':
+                    case '=':
+                        checkLenient(); // fall-through
+                    case '{':
+                    case '}':
+                    case '[':
+                    case ']':
+                    case ':':
+                    case ',':
+                    case ' ':
+                    case '\t':
+                    case '\f':
+                    case '\r':
+                    case '\n':
+                        break findNonLiteralCharacter;
+                }
+            }
+
+            // Attempt to load the entire literal into the buffer at once.
+            if (i < capacity()) {
+                if (fillBuffer(i + 1)) {
+                    continue;
+                } else {
+                    break;
+                }
+            }
+
+            // use a StringBuilder when the value is too long, taking care not to
+            // split a multi-byte sequence between two chunks.
+            if (builder == null) {
+                builder = new StringBuilder();
+            }
+            int end = sequenceBoundary(pos, pos + i);
+            builder.append(decode(pos, end - pos));
+            i -= end - pos;
+            pos = end;
+            if (!fillBuffer(i + 1)) {
+                break;
+            }
+        }
+
+        String result;
+        if (builder == null) {
+            result = decode(pos, i);
+        } else {
+            builder.append(decode(pos, i));
+            result = builder.toString();
+        }
+        pos += i;
+        return result;
+    }
+
+    /**
+     * Returns {@code end}, or the start of the last UTF-8 sequence before it if
+     * that sequence does not end before {@code end}.
+     */
+    private int sequenceBoundary(int start, int end) {
+        for (int p = end - 1; p >= start && p >= end - 3; p--) {
+            int b = buffer.get(p);
+            if ((b & 0xc0) != 0x80) {
+                return b < 0 && p + sequenceLength(b) > end ? p : end;
+            }
+        }
+        return end;
+    }
+
+    @Override
+    void skipQuotedValue(char quote) throws IOException {
+        // Like nextNonWhitespace, this uses locals 'p' and 'l' to save inner-loop field access.
+        do {
+            ByteBuffer buffer = this.buffer;
+            int p = pos;
+            int l = limit;
+            while (p < l) {
+                int c = buffer.get(p++);
+                if (c == quote) {
+                    pos = p;
+                    return;
+                } else if (c == '\\') {
+                    pos = p;
+                    readEscapeCharacter();
+                    buffer = this.buffer;
+                    p = pos;
+                    l = limit;
+                } else if (c == '\n') {
+                    lineNumber++;
+                    lineStart = p;
+                }
+            }
+            pos = p;
+        } while (fillBuffer(1));
+        throw syntaxError("Unterminated string");
+    }
+
+    @Override
+    @SuppressWarnings("fallthrough")
+    void skipUnquotedValue() throws IOException {
+        do {
+            int i = 0;
+            for (; pos + i < limit; i++) {
+                switch (buffer.get(pos + i)) {
+                    case '/':
+                    case '\\':
+                    case ';':
+                    case '#':
+                    case '=':
+                        checkLenient(); // fall-through
+                    case '{':
+                    case '}':
+                    case '[':
+                    case ']':
+                    case ':':
+                    case ',':
+                    case ' ':
+                    case '\t':
+                    case '\f':
+                    case '\r':
+                    case '\n':
+                        pos += i;
+                        return;
+                }
+            }
+            pos += i;
+        } while (fillBuffer(1));
+    }
+
+    /**
+     * Closes this JSON reader and the underlying {@link InputStream}, if any.
+     */
+    @Override
+    public void close() throws IOException {
+        peeked = PEEKED_NONE;
+        stack[0] = JsonScope.CLOSED;
+        stackSize = 1;
+        if (in != null) {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns true once {@code limit - pos >= minimum}. If the data is
+     * exhausted before that many bytes are available, this returns false.
+     */
+    private boolean fillBuffer(int minimum) throws IOException {
+        if (in == null) {
+            return nextWindow(minimum);
+        }
+        byte[] array = this.array;
+        lineStart -= pos;
+        if (limit != pos) {
+            limit -= pos;
+            System.arraycopy(array, pos, array, 0, limit);
+        } else {
+            limit = 0;
+        }
+
+        pos = 0;
+        int total;
+        while ((total = in.read(array, limit, array.length - limit)) != -1) {
+            limit += total;
+
+            // if this is the first read, consume an optional byte order mark (BOM) if it exists
+            if (lineNumber == 0 && lineStart == 0 && skipByteOrderMark()) {
+                minimum += pos;
+            }
+
+            if (limit >= minimum) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true once {@code limit - pos >= minimum} for input that is not
+     * read from a stream. Subclasses that expose their input one window at a
+     * time replace {@link #buffer} with the next window here, keeping the bytes
+     * from {@code pos} onwards and rebasing {@code pos} and {@code lineStart}
+     * like a stream refill does.
+     */
+    boolean nextWindow(int minimum) throws IOException {
+        return limit - pos >= minimum;
+    }
+
+    /**
+     * Returns false if the bytes of {@link #buffer} are overwritten as more
+     * input arrives, so strings can't refer to them.
+     */
+    boolean stableInput() {
+        return true;
+    }
+
+    /**
+     * Returns the longest token, in bytes, that this reader can hold in its
+     * buffer at once.
+     */
+    int capacity() {
+        return array != null ? array.length : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Consumes the UTF-8 byte order mark at {@code pos} if there is one.
+     */
+    boolean skipByteOrderMark() {
+        if (pos == 0 && limit >= 3 && buffer.get(0) == (byte) 0xef
+                && buffer.get(1) == (byte) 0xbb && buffer.get(2) == (byte) 0xbf) {
+            pos += 3;
+            lineStart += 3;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the next byte in the stream that is neither whitespace nor a
+     * part of a comment. When this returns, the returned byte is always at
+     * {@code buffer[pos-1]}; this means the caller can always push back the
+     * returned byte by decrementing {@code pos}.
+     */
+    private int nextNonWhitespace(boolean throwOnEof) throws IOException {
+        // See JsonReader#nextNonWhitespace for why this uses the locals 'p' and 'l'.
+        ByteBuffer buffer = this.buffer;
+        int p = pos;
+        int l = limit;
+        while (true) {
+            if (p == l) {
+                pos = p;
+                if (!fillBuffer(1)) {
+                    break;
+                }
+                buffer = this.buffer;
+                p = pos;
+                l = limit;
+            }
+
+            int c = buffer.get(p++);
+            if (c == '\n') {
+                lineNumber++;
+                lineStart = p;
+                continue;
+            } else if (c == ' ' || c == '\r' || c == '\t') {
+                continue;
+            }
+
+            if (c == '/') {
+                pos = p;
+                if (p == l) {
+                    pos--; // push back '/' so it's still in the buffer when this method returns
+                    boolean charsLoaded = fillBuffer(2);
+                    buffer = this.buffer;
+                    pos++; // consume the '/' again
+                    if (!charsLoaded) {
+                        return c;
+                    }
+                }
+
+                checkLenient();
+                byte peek = buffer.get(pos);
+                switch (peek) {
+                    case '*':
+                        // skip a /* c-style comment */
+                        pos++;
+                        if (!skipTo("*/")) {
+                            throw syntaxError("Unterminated comment");
+                        }
+                        buffer = this.buffer;
+                        p = pos + 2;
+                        l = limit;
+                        continue;
+
+                    case '/':
+                        // skip a // end-of-line comment
+                        pos++;
+                        skipToEndOfLine();
+                        buffer = this.buffer;
+                        p = pos;
+                        l = limit;
+                        continue;
+
+                    default:
+                        return c;
+                }
+            } else if (c == '#') {
+                pos = p;
+                // Skip a # hash end-of-line comment, see JsonReader#nextNonWhitespace.
+                checkLenient();
+                skipToEndOfLine();
+                buffer = this.buffer;
+                p = pos;
+                l = limit;
+            } else {
+                pos = p;
+                return c;
+            }
+        }
+        if (throwOnEof) {
+            throw new EOFException("End of input" + locationString());
+        } else {
+            return -1;
+        }
+    }
+
+    /**
+     * Advances the position until after the next newline character. If the line
+     * is terminated by "\r\n", the '\n' must be consumed as whitespace by the
+     * caller.
+     */
+    private void skipToEndOfLine() throws IOException {
+        while (pos < limit || fillBuffer(1)) {
+            byte c = buffer.get(pos++);
+            if (c == '\n') {
+                lineNumber++;
+                lineStart = pos;
+                break;
+            } else if (c == '\r') {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @param toFind a string to search for. Must not contain a newline.
+     */
+    private boolean skipTo(String toFind) throws IOException {
+        outer:
+        for (; pos + toFind.length() <= limit || fillBuffer(toFind.length()); pos++) {
+            if (buffer.get(pos) == '\n') {
+                lineNumber++;
+                lineStart = pos + 1;
+                continue;
+            }
+            for (int c = 0; c < toFind.length(); c++) {
+                if (buffer.get(pos + c) != toFind.charAt(c)) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    CharSequence getSnippet() {
+        StringBuilder snippet = new StringBuilder();
+        if (pos == 0 && limit == 0) {
+            snippet.append("EOF");
+        } else {
+            int beforePos = Math.min(pos, 20);
+            snippet.append(decode(pos - beforePos, beforePos));
+            int afterPos = Math.min(limit - pos, 20);
+            snippet.append(decode(pos, afterPos));
+        }
+        return snippet;
+    }
+
+    /**
+     * Unescapes the character identified by the character or characters that
+     * immediately follow a backslash. The backslash '\' should have already
+     * been read. This supports both unicode escapes "u000A" and two-character
+     * escapes "\n".
+     *
+     * @throws NumberFormatException if any unicode escape sequences are
+     *     malformed.
+     */
+    @SuppressWarnings("fallthrough")
+    private char readEscapeCharacter() throws IOException {
+        if (pos == limit && !fillBuffer(1)) {
+            throw syntaxError("Unterminated escape sequence");
+        }
+
+        byte escaped = buffer.get(pos++);
+        switch (escaped) {
+            case 'u':
+                if (pos + 4 > limit && !fillBuffer(4)) {
+                    throw syntaxError("Unterminated escape sequence");
+                }
+                char result = 0;
+                for (int i = pos, end = i + 4; i < end; i++) {
+                    byte c = buffer.get(i);
+                    result <<= 4;
+                    if (c >= '0' && c <= '9') {
+                        result += (c - '0');
+                    } else if (c >= 'a' && c <= 'f') {
+                        result += (c - 'a' + 10);
+                    } else if (c >= 'A' && c <= 'F') {
+                        result += (c - 'A' + 10);
+                    } else {
+                        throw new NumberFormatException("\\u" + decode(pos, 4));
+                    }
+                }
+                pos += 4;
+                return result;
+
+            case 't':
+                return '\t';
+
+            case 'b':
+                return '\b';
+
+            case 'n':
+                return '\n';
+
+            case 'r':
+                return '\r';
+
+            case 'f':
+                return '\f';
+
+            case '\n':
+                lineNumber++;
+                lineStart = pos;
+                // fall-through
+
+            case '\'':
+            case '"':
+            case '\\':
+            case '/':
+                return (char) escaped;
+            default:
+                // throw error when none of the above cases are matched
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    /**
+     * Consumes the non-execute prefix if it exists.
+     */
+    private void consumeNonExecutePrefix() throws IOException {
+        // fast forward through the leading whitespace
+        nextNonWhitespace(true);
+        pos--;
+
+        if (pos + NON_EXECUTE_PREFIX.length > limit && !fillBuffer(NON_EXECUTE_PREFIX.length)) {
+            return;
+        }
+
+        for (int i = 0; i < NON_EXECUTE_PREFIX.length; i++) {
+            if (buffer.get(pos + i) != NON_EXECUTE_PREFIX[i]) {
+                return; // not a security token!
+            }
+        }
+
+        // we consumed a security token!
+        pos += NON_EXECUTE_PREFIX.length;
+    }
+
+    /**
+     * Returns the {@code length} ASCII bytes at {@code start} as a string.
+     */
+    private String ascii(int start, int length) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, length, ISO_8859_1);
+        }
+        char[] chars = length <= this.chars.length ? this.chars : new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (buffer.get(start + i) & 0xff);
+        }
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * Decodes the {@code length} UTF-8 bytes at {@code start}.
+     */
+    private String decode(int start, int length) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, length, UTF_8);
+        }
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.limit(start + length);
+        bytes.position(start);
+        return UTF_8.decode(bytes).toString();
+    }
+}
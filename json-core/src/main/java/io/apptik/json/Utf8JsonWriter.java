@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link JsonWriter} that encodes JSON as UTF-8 straight into bytes, without
+ * going through a {@link java.io.Writer}. Use it in place of a
+ * {@code JsonWriter} wrapping an {@link java.io.OutputStreamWriter}:
+ * <pre>   {@code
+ *   JsonWriter writer = new Utf8JsonWriter(out);
+ *   element.write(writer);
+ *   writer.flush();
+ * }</pre>
+ *
+ * <p>Output to a stream is collected in a buffer that is written out when it
+ * is full and on {@link #flush()}. Output to a {@link ByteBuffer} is encoded
+ * into it directly, and fails with a {@link BufferOverflowException} if the
+ * document does not fit. Instances of this class are not thread safe.
+ */
+public class Utf8JsonWriter extends JsonWriter {
+
+    /** The most bytes one char, or one surrogate pair, can be written as. */
+    private static final int MAX_CHAR_BYTES = 6;
+
+    private OutputStream out;
+
+    /**
+     * The buffer written to, or null when writing to a stream. Heap buffers
+     * are written to through {@link #bytes} and direct ones are filled from it.
+     */
+    private ByteBuffer target;
+
+    /** Bytes are written to {@code bytes[count]} up to {@code bytes[end]}. */
+    private byte[] bytes;
+    private int count;
+    private int end;
+
+    /** The buffer for output that is not written into a heap buffer directly. */
+    private byte[] scratch;
+
+    /**
+     * Creates a new instance that writes UTF-8 encoded JSON to {@code out}.
+     */
+    public Utf8JsonWriter(OutputStream out) {
+        this(out, 8192);
+    }
+
+    /**
+     * Creates a new instance that writes UTF-8 encoded JSON to {@code out}
+     * through a buffer of {@code bufferSize} bytes.
+     */
+    public Utf8JsonWriter(OutputStream out, int bufferSize) {
+        if (bufferSize < 16) {
+            throw new IllegalArgumentException("bufferSize < 16: " + bufferSize);
+        }
+        scratch = new byte[bufferSize];
+        reset(out);
+    }
+
+    /**
+     * Creates a new instance that writes UTF-8 encoded JSON into the remaining
+     * space of {@code target}, advancing its position on {@link #flush()}.
+     */
+    public Utf8JsonWriter(ByteBuffer target) {
+        reset(target);
+    }
+
+    /**
+     * Makes this writer write a new document to {@code out}, as if it had just
+     * been created, keeping its settings and its buffer. Output to the previous
+     * destination that was not flushed yet is dropped.
+     */
+    public void reset(OutputStream out) {
+        if (out == null) {
+            throw new NullPointerException("out == null");
+        }
+        this.out = out;
+        this.target = null;
+        if (scratch == null) {
+            scratch = new byte[8192];
+        }
+        bytes = scratch;
+        count = 0;
+        end = scratch.length;
+        resetState();
+    }
+
+    /**
+     * Makes this writer write a new document into {@code target}, as if it had
+     * just been created, keeping its settings. Output to the previous
+     * destination that was not flushed yet is dropped.
+     */
+    public void reset(ByteBuffer target) {
+        if (target == null) {
+            throw new NullPointerException("target == null");
+        }
+        if (target.isReadOnly()) {
+            throw new IllegalArgumentException("target is read only");
+        }
+        this.out = null;
+        this.target = target;
+        if (target.hasArray()) {
+            bytes = target.array();
+            count = target.arrayOffset() + target.position();
+            end = target.arrayOffset() + target.limit();
+        } else {
+            if (scratch == null) {
+                scratch = new byte[8192];
+            }
+            bytes = scratch;
+            count = 0;
+            end = scratch.length;
+        }
+        resetState();
+    }
+
+    @Override
+    void write(String value) throws IOException {
+        encode(value, null);
+    }
+
+    @Override
+    void write(char c) throws IOException {
+        if (count == end) {
+            makeRoom(1);
+        }
+        bytes[count++] = (byte) c;
+    }
+
+    @Override
+    void write(char[] chars, int offset, int length) throws IOException {
+        if (end - count < length) {
+            drain();
+            if (end - count < length) {
+                for (int i = offset, e = offset + length; i < e; i++) {
+                    write(chars[i]);
+                }
+                return;
+            }
+        }
+        byte[] bytes = this.bytes;
+        int count = this.count;
+        for (int i = offset, e = offset + length; i < e; i++) {
+            bytes[count++] = (byte) chars[i];
+        }
+        this.count = count;
+    }
+
+    /**
+     * Copies the cached text as UTF-8, which is encoded once per value.
+     */
+    @Override
+    void writeCached(CachedJson json) throws IOException {
+        write(json.utf8());
+    }
+
+    @Override
+    void writeName(SerializedName name) throws IOException {
+        write(name.utf8(isHtmlSafe()));
+    }
+
+    private void write(byte[] utf8) throws IOException {
+        int offset = 0;
+        int length = utf8.length;
+        while (true) {
+            int n = Math.min(length - offset, end - count);
+            System.arraycopy(utf8, offset, bytes, count, n);
+            count += n;
+            offset += n;
+            if (offset == length) {
+                return;
+            }
+            drain();
+            if (out != null && length - offset >= bytes.length) {
+                out.write(utf8, offset, length - offset);
+                return;
+            }
+            if (count == end) {
+                throw new BufferOverflowException();
+            }
+        }
+    }
+
+    @Override
+    void string(String value) throws IOException {
+        write('"');
+        encode(value, isHtmlSafe() ? HTML_SAFE_REPLACEMENT_CHARS : REPLACEMENT_CHARS);
+        write('"');
+    }
+
+    /**
+     * Encodes {@code value} as UTF-8, escaping the chars that have a
+     * replacement in {@code replacements} and the JavaScript line terminators.
+     * If {@code replacements} is null nothing is escaped.
+     */
+    private void encode(String value, String[] replacements) throws IOException {
+        byte[] bytes = this.bytes;
+        int count = this.count;
+        int end = this.end;
+        int length = value.length();
+        int i = 0;
+        while (i < length) {
+            if (end - count < MAX_CHAR_BYTES) {
+                this.count = count;
+                drain();
+                bytes = this.bytes;
+                count = this.count;
+                end = this.end;
+                // near the end of a target buffer, check each char on its own
+                if (end - count < MAX_CHAR_BYTES && end - count < encodedLength(value, i, replacements)) {
+                    throw new BufferOverflowException();
+                }
+            }
+
+            // Copy plain ASCII chars as long as there is room to spare.
+            for (int stop = Math.min(length, i + end - count - MAX_CHAR_BYTES); i < stop; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x80 || replacements != null && replacements[c] != null) {
+                    break;
+                }
+                bytes[count++] = (byte) c;
+            }
+            if (i == length) {
+                break;
+            }
+
+            // There is room for the next char, see above.
+            char c = value.charAt(i++);
+            if (c < 0x80) {
+                String replacement = replacements != null ? replacements[c] : null;
+                if (replacement == null) {
+                    bytes[count++] = (byte) c;
+                } else {
+                    for (int j = 0, n = replacement.length(); j < n; j++) {
+                        bytes[count++] = (byte) replacement.charAt(j);
+                    }
+                }
+            } else if (c < 0x800) {
+                bytes[count++] = (byte) (0xc0 | c >> 6);
+                bytes[count++] = (byte) (0x80 | c & 0x3f);
+            } else if ((c == '\u2028' || c == '\u2029') && replacements != null) {
+                bytes[count++] = '\\';
+                bytes[count++] = 'u';
+                bytes[count++] = '2';
+                bytes[count++] = '0';
+                bytes[count++] = '2';
+                bytes[count++] = c == '\u2028' ? (byte) '8' : (byte) '9';
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i < length && Character.isLowSurrogate(value.charAt(i))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(i++));
+                    bytes[count++] = (byte) (0xf0 | codePoint >> 18);
+                    bytes[count++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                    bytes[count++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                    bytes[count++] = (byte) (0x80 | codePoint & 0x3f);
+                } else {
+                    // an unpaired surrogate can't be encoded, like OutputStreamWriter does
+                    bytes[count++] = '?';
+                }
+            } else {
+                bytes[count++] = (byte) (0xe0 | c >> 12);
+                bytes[count++] = (byte) (0x80 | c >> 6 & 0x3f);
+                bytes[count++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        this.count = count;
+    }
+
+    /**
+     * Returns the number of bytes {@link #encode} writes for the char at
+     * {@code i}, together with the low surrogate that follows it if any.
+     */
+    private static int encodedLength(String value, int i, String[] replacements) {
+        char c = value.charAt(i);
+        if (c < 0x80) {
+            String replacement = replacements != null ? replacements[c] : null;
+            return replacement != null ? replacement.length() : 1;
+        } else if (c < 0x800) {
+            return 2;
+        } else if ((c == '\u2028' || c == '\u2029') && replacements != null) {
+            return 6;
+        } else if (Character.isSurrogate(c)) {
+            return Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1)) ? 4 : 1;
+        }
+        return 3;
+    }
+
+    /**
+     * Makes room for at least {@code minimum} more bytes by writing out what
+     * is buffered.
+     */
+    private void makeRoom(int minimum) throws IOException {
+        drain();
+        if (end - count < minimum) {
+            throw new BufferOverflowException();
+        }
+    }
+
+    /**
+     * Hands the buffered bytes to the destination.
+     */
+    private void drain() throws IOException {
+        if (out != null) {
+            out.write(bytes, 0, count);
+            count = 0;
+        } else if (target.hasArray()) {
+            target.position(count - target.arrayOffset());
+        } else {
+            target.put(bytes, 0, count);
+            count = 0;
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the stream and flushes it, or advances the
+     * position of the target buffer past the bytes written so far.
+     */
+    @Override
+    void flushOutput() throws IOException {
+        drain();
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    @Override
+    void closeOutput() throws IOException {
+        flushOutput();
+        if (out != null) {
+            out.close();
+        }
+    }
+}
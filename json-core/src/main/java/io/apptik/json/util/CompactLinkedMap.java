@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2014 Kalin Maldzhanski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apptik.json.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map of non-null keys to values that uses insertion order for iteration
+ * order, like {@link LinkedTreeMap}, but is optimized for maps with only a few
+ * entries.
+ *
+ * <p>Small maps keep their keys and values interleaved in a single flat array
+ * and look keys up with a linear scan, which needs no node per entry. Once a map
+ * grows past {@link #THRESHOLD} entries it is promoted to a {@link LinkedHashMap}
+ * and stays hashed from then on.
+ */
+public final class CompactLinkedMap<K, V> extends AbstractMap<K, V> {
+
+    /** The largest number of entries kept in the flat array. */
+    public static final int THRESHOLD = 8;
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    /** Keys at even and values at odd indices, or null if never used. */
+    Object[] table;
+    int size = 0;
+    int modCount = 0;
+
+    /** The hashed map holding all entries once this map has been promoted. */
+    LinkedHashMap<K, V> map;
+
+    private EntrySet entrySet;
+
+    @Override
+    public int size() {
+        return map != null ? map.size() : size;
+    }
+
+    @Override
+    public V get(Object key) {
+        if (map != null) {
+            return map.get(key);
+        }
+        int index = indexOf(key);
+        return index >= 0 ? this.<V>valueAt(index) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (map != null) {
+            return map.containsKey(key);
+        }
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+        if (map != null) {
+            return map.put(key, value);
+        }
+        int index = indexOf(key);
+        if (index >= 0) {
+            V result = valueAt(index);
+            table[(index << 1) + 1] = value;
+            return result;
+        }
+
+        if (size == THRESHOLD) {
+            promote().put(key, value);
+            return null;
+        }
+        Object[] table = this.table;
+        if (table == null) {
+            table = this.table = new Object[INITIAL_CAPACITY << 1];
+        } else if (size << 1 == table.length) {
+            Object[] newTable = new Object[table.length << 1];
+            System.arraycopy(table, 0, newTable, 0, table.length);
+            table = this.table = newTable;
+        }
+        table[size << 1] = key;
+        table[(size << 1) + 1] = value;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (map != null) {
+            return map.remove(key);
+        }
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V result = valueAt(index);
+        removeAt(index);
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        if (map != null) {
+            map.clear();
+            return;
+        }
+        if (table != null) {
+            for (int i = 0, length = size << 1; i < length; i++) {
+                table[i] = null;
+            }
+        }
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        EntrySet result = entrySet;
+        return result != null ? result : (entrySet = new EntrySet());
+    }
+
+    /**
+     * Returns the index of the entry for {@code key}, or -1 if there is none.
+     */
+    private int indexOf(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        Object[] table = this.table;
+        int length = size << 1;
+        // identity first: pooled names make this the common case
+        for (int i = 0; i < length; i += 2) {
+            if (table[i] == key) {
+                return i >> 1;
+            }
+        }
+        for (int i = 0; i < length; i += 2) {
+            if (key.equals(table[i])) {
+                return i >> 1;
+            }
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T keyAt(int index) {
+        return (T) table[index << 1];
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T valueAt(int index) {
+        return (T) table[(index << 1) + 1];
+    }
+
+    private void removeAt(int index) {
+        int from = (index + 1) << 1;
+        int length = size << 1;
+        System.arraycopy(table, from, table, index << 1, length - from);
+        table[length - 2] = null;
+        table[length - 1] = null;
+        size--;
+        modCount++;
+    }
+
+    /**
+     * Moves all entries to a {@link LinkedHashMap} and releases the flat array.
+     */
+    private LinkedHashMap<K, V> promote() {
+        LinkedHashMap<K, V> map = new LinkedHashMap<K, V>(THRESHOLD << 2);
+        for (int i = 0; i < size; i++) {
+            map.put(this.<K>keyAt(i), this.<V>valueAt(i));
+        }
+        this.map = map;
+        table = null;
+        size = 0;
+        modCount++;
+        return map;
+    }
+
+    final class EntrySet extends AbstractSet<Entry<K, V>> {
+        @Override
+        public int size() {
+            return CompactLinkedMap.this.size();
+        }
+
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            if (map != null) {
+                return map.entrySet().iterator();
+            }
+            return new ArrayIterator();
+        }
+
+        @Override
+        public void clear() {
+            CompactLinkedMap.this.clear();
+        }
+    }
+
+    final class ArrayIterator implements Iterator<Entry<K, V>> {
+        int next = 0;
+        int lastReturned = -1;
+        int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            // the size of the whole map, so that a map promoted meanwhile
+            // fails in next() instead of ending the iteration early
+            return next < CompactLinkedMap.this.size();
+        }
+
+        public Entry<K, V> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next++;
+            return new ArrayEntry(CompactLinkedMap.this.<K>keyAt(lastReturned),
+                    CompactLinkedMap.this.<V>valueAt(lastReturned));
+        }
+
+        public void remove() {
+            if (lastReturned < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(lastReturned);
+            next = lastReturned;
+            lastReturned = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * An entry of the flat array. It holds its own key and value, as the
+     * entries in the array move when the map is changed; setting the value
+     * writes it through to the map for as long as the key is in it.
+     */
+    final class ArrayEntry implements Entry<K, V> {
+        final K key;
+        V value;
+
+        ArrayEntry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V value) {
+            V result = this.value;
+            this.value = value;
+            if (containsKey(key)) {
+                put(key, value);
+            }
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+            Object value = getValue();
+            return getKey().equals(other.getKey())
+                    && (value == null ? other.getValue() == null : value.equals(other.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
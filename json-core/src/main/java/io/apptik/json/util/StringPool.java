@@ -20,11 +20,37 @@ package io.apptik.json.util;
 /**
  * A pool of string instances. Unlike the {@link String#intern() VM's
  * interned strings}, this pool provides no guarantee of reference equality.
- * It is intended only to save allocations. This class is not thread safe.
+ * It is intended only to save allocations.
+ *
+ * <p>A pool may be shared between threads, for example by many readers that
+ * parse documents with the same property names. Pooled strings are immutable
+ * and a racing lookup at worst misses the pool and allocates a new string.
  */
 public final class StringPool {
 
-    private final String[] pool = new String[512];
+    /** The number of slots in a pool created with {@link #StringPool()}. */
+    public static final int DEFAULT_SIZE = 512;
+
+    private final String[] pool;
+
+    /**
+     * Creates a pool with {@link #DEFAULT_SIZE} slots.
+     */
+    public StringPool() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Creates a pool with at least {@code size} slots. The size is rounded up
+     * to a power of two.
+     */
+    public StringPool(int size) {
+        if (size <= 0 || size > 1 << 30) {
+            throw new IllegalArgumentException("size: " + size);
+        }
+        int length = Integer.highestOneBit(size);
+        pool = new String[length == size ? size : length << 1];
+    }
 
     private static boolean contentEquals(String s, char[] chars, int start, int length) {
         if (s.length() != length) {
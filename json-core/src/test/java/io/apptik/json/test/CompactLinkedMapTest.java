@@ -0,0 +1,72 @@
+package io.apptik.json.test;
+
+
+import org.junit.Test;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+
+import io.apptik.json.util.CompactLinkedMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class CompactLinkedMapTest {
+
+    @Test
+    public void entriesOutliveChanges() {
+        CompactLinkedMap<String, Integer> map = new CompactLinkedMap<String, Integer>();
+        map.put("a", 1);
+        map.put("b", 2);
+        Iterator<Map.Entry<String, Integer>> entries = map.entrySet().iterator();
+        Map.Entry<String, Integer> a = entries.next();
+        Map.Entry<String, Integer> b = entries.next();
+
+        map.remove("a");
+        assertEquals("a", a.getKey());
+        assertEquals(1, (int) a.getValue());
+        assertEquals("b", b.getKey());
+
+        for (int i = 0; i < CompactLinkedMap.THRESHOLD; i++) {
+            map.put("k" + i, i);
+        }
+        assertEquals("b", b.getKey());
+        assertEquals(2, (int) b.getValue());
+        assertEquals(2, (int) b.setValue(3));
+        assertEquals(3, (int) map.get("b"));
+
+        // a removed key is not put back
+        a.setValue(4);
+        assertFalse(map.containsKey("a"));
+    }
+
+    @Test
+    public void iteratorFailsWhenMapGrows() {
+        CompactLinkedMap<String, Integer> map = new CompactLinkedMap<String, Integer>();
+        for (int i = 0; i < CompactLinkedMap.THRESHOLD; i++) {
+            map.put("k" + i, i);
+        }
+        Iterator<Map.Entry<String, Integer>> entries = map.entrySet().iterator();
+        entries.next();
+        map.put("more", -1);
+        try {
+            while (entries.hasNext()) {
+                entries.next();
+            }
+            fail();
+        } catch (ConcurrentModificationException expected) {
+        }
+
+        map = new CompactLinkedMap<String, Integer>();
+        map.put("a", 1);
+        entries = map.entrySet().iterator();
+        map.put("b", 2);
+        try {
+            entries.next();
+            fail();
+        } catch (ConcurrentModificationException expected) {
+        }
+    }
+}
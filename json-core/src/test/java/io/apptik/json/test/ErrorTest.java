@@ -4,8 +4,10 @@ package io.apptik.json.test;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.StringReader;
 
 import io.apptik.json.JsonElement;
+import io.apptik.json.JsonReader;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.TestCase.fail;
@@ -444,6 +446,20 @@ public class ErrorTest {
 
     }
 
+    @Test
+    public void noValueToRead() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("[1]"));
+        reader.beginArray();
+        reader.nextInt();
+        try {
+            JsonElement.readFrom(reader);
+            fail("must fail");
+        } catch (IllegalStateException e) {
+            assertEquals("Expected a value but was END_ARRAY at line: 1, column: 4, path: $[1], near: .. [1] ..",
+                    e.getMessage());
+        }
+    }
+
     @Test
     public void unexpectedEndOfObject() {
         String obj = "{\"foo\":[5,[]]";
@@ -5,11 +5,17 @@ import io.apptik.json.JsonArray;
 import io.apptik.json.JsonElement;
 import io.apptik.json.JsonObject;
 import io.apptik.json.JsonString;
+import io.apptik.json.JsonWriter;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.HashSet;
 
 import static junit.framework.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -316,4 +322,82 @@ public class FreezingTest {
         }
     }
 
+    @Test
+    public void frozenContainersCacheTheirJson() throws IOException {
+        String json = "{\"a\":[1,2.5,\"<x>\"],\"b\":{\"c\":null},\"d\":\"caf\u00e9\"}";
+        JsonObject object = JsonElement.readFrom(json).asJsonObject();
+        try {
+            object.cacheJson();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        object.freeze().cacheJson();
+        object.get("b").asJsonObject().cacheJson();
+        assertEquals(json, object.toString());
+        assertTrue(object.toString() == object.toString());
+
+        JsonArray array = new JsonArray().put(object).put(object);
+        assertEquals("[" + json + "," + json + "]", array.toString());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        array.writeTo(bytes);
+        assertEquals(array.toString(), bytes.toString("UTF-8"));
+
+        StringWriter pretty = new StringWriter();
+        JsonWriter writer = new JsonWriter(pretty);
+        writer.setIndent(" ");
+        writer.setHtmlSafe(true);
+        writer.setSerializeNulls(false);
+        object.write(writer);
+        assertEquals("{\n \"a\": [\n  1,\n  2.5,\n  \"\\u003cx\\u003e\"\n ],\n \"b\": {},\n \"d\": \"caf\u00e9\"\n}",
+                pretty.toString());
+        assertEquals(JsonElement.readFrom(json), object.cloneAsThawed());
+    }
+
+    @Test
+    public void thawedCopiesShareWhatIsNotChanged() throws IOException {
+        String json = "{\"s\":\"x\",\"o\":{\"a\":{\"b\":1},\"c\":[1,2]},\"arr\":[{\"d\":true},[1.5,2]]}";
+        JsonObject frozen = JsonElement.readFrom(json).asJsonObject().freeze();
+        JsonObject thawed = frozen.cloneAsThawed();
+        assertFalse(thawed.isFrozen());
+        assertEquals(json, thawed.toString());
+
+        thawed.getJsonObject("o").getJsonObject("a").put("b", 2);
+        thawed.getJsonArray("arr").getJsonArray(1).put(3);
+        thawed.getJsonArray("arr").getJsonObject(0).put("e", false);
+        assertEquals(json, frozen.toString());
+        assertEquals("{\"s\":\"x\",\"o\":{\"a\":{\"b\":2},\"c\":[1,2]},\"arr\":[{\"d\":true,\"e\":false},[1.5,2,3]]}",
+                thawed.toString());
+        assertTrue(thawed.get("s") == frozen.get("s"));
+        assertFalse(thawed.getJsonObject("o").isFrozen());
+
+        JsonObject mutable = JsonElement.readFrom(json).asJsonObject();
+        JsonObject copy = mutable.cloneAsThawed();
+        mutable.getJsonObject("o").getJsonArray("c").put(3);
+        assertEquals(json, copy.toString());
+        assertEquals(JsonElement.readFrom(json), copy);
+    }
+
+    @Test
+    public void structuralHashCodes() throws IOException {
+        String json = "{\"a\":[1,2.5,\"x\"],\"b\":{\"c\":null,\"d\":[true]}}";
+        String reordered = "{\"b\":{\"d\":[true],\"c\":null},\"a\":[1,2.5,\"x\"]}";
+        JsonObject mutable = JsonElement.readFrom(json).asJsonObject();
+        JsonObject frozen = JsonElement.readFrom(reordered).asJsonObject().freeze();
+        assertEquals(mutable, frozen);
+        assertEquals(mutable.hashCode(), frozen.hashCode());
+        assertEquals(frozen.hashCode(), frozen.cloneAsThawed().hashCode());
+
+        int before = mutable.hashCode();
+        mutable.getJsonObject("b").getJsonArray("d").put(false);
+        assertFalse(before == mutable.hashCode());
+        assertFalse(frozen.equals(mutable));
+        assertFalse(mutable.freeze().equals(frozen));
+
+        HashSet<JsonElement> unique = new HashSet<JsonElement>();
+        for (int i = 0; i < 100; i++) {
+            unique.add(JsonElement.readFrom(i % 2 == 0 ? json : reordered).asJsonObject().freeze());
+            unique.add(JsonElement.readFrom("[" + (i % 3) + "]").asJsonArray().freeze());
+        }
+        assertEquals(4, unique.size());
+    }
 }
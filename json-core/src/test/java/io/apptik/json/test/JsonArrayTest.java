@@ -28,6 +28,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import io.apptik.json.JsonArray;
+import io.apptik.json.JsonElement;
 import io.apptik.json.JsonObject;
 import io.apptik.json.exception.JsonException;
 
@@ -475,4 +476,41 @@ public class JsonArrayTest extends TestCase {
         JsonArray a2 = new JsonArray(MyEnum.values());
         assertEquals("[\"A\",\"B\",\"C\"]", a2.toString());
     }
+
+    @Test
+    public void testPrimitiveArrays() throws IOException {
+        JsonArray longs = JsonElement.readFrom("[1, -2, 9223372036854775807]").asJsonArray();
+        assertTrue(Arrays.equals(new long[]{1, -2, Long.MAX_VALUE}, longs.toLongArray()));
+        assertEquals("[1,-2,9223372036854775807]", longs.toString());
+
+        JsonArray mixed = JsonElement.readFrom("[1, 2.5, -3, 1e3]").asJsonArray();
+        assertTrue(Arrays.equals(new double[]{1, 2.5, -3, 1000}, mixed.toDoubleArray()));
+        assertEquals("[1,2.5,-3,1000.0]", mixed.toString());
+        assertEquals("integer", mixed.get(0).getJsonType());
+        assertEquals("number", mixed.get(1).getJsonType());
+
+        JsonArray booleans = JsonElement.readFrom("[true, false]").asJsonArray();
+        assertTrue(Arrays.equals(new boolean[]{true, false}, booleans.toBooleanArray()));
+
+        assertEquals(new JsonArray(new double[]{1.5, 2}).toString(), "[1.5,2.0]");
+        assertEquals(new JsonArray(new int[]{1, 2}), JsonElement.readFrom("[1,2]"));
+    }
+
+    @Test
+    public void testPrimitiveArrayAcceptsOtherValues() throws IOException {
+        JsonArray array = JsonElement.readFrom("[1, 2, 3]").asJsonArray();
+        array.put(4);
+        array.remove(0);
+        array.set(0, new JsonArray());
+        array.put("five");
+        assertEquals("[[],3,4,\"five\"]", array.toString());
+
+        array = JsonElement.readFrom("[1.5, 2, \"x\", true]").asJsonArray();
+        assertEquals("[1.5,2,\"x\",true]", array.toString());
+        try {
+            array.toDoubleArray();
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+    }
 }
@@ -0,0 +1,86 @@
+package io.apptik.json.test;
+
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import io.apptik.json.JsonElement;
+import io.apptik.json.JsonLinesReader;
+import io.apptik.json.JsonLinesWriter;
+import io.apptik.json.JsonObject;
+import io.apptik.json.Projection;
+import io.apptik.json.exception.JsonException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonLinesTest {
+
+    private static final String LINES = "{\"id\":1,\"tags\":[\"a\"]}\n"
+            + "\n"
+            + "  {\"id\":2,\"msg\":\"caf\\u00e9\"}\r\n"
+            + "[1,2]\n"
+            + "\"text\"\n"
+            + "42\n";
+
+    @Test
+    public void readsRecords() throws IOException {
+        JsonLinesReader reader = new JsonLinesReader(new StringReader(LINES));
+        assertEquals(1, reader.next().asJsonObject().getInt("id").intValue());
+        assertEquals("caf\u00e9", reader.next().asJsonObject().getString("msg"));
+        assertEquals(2, reader.next().asJsonArray().length());
+        assertEquals("text", reader.next().asString());
+        assertEquals(42, reader.next().asInt());
+        assertFalse(reader.hasNext());
+        reader.close();
+    }
+
+    @Test
+    public void writesWhatItReads() throws IOException {
+        StringWriter out = new StringWriter();
+        JsonLinesWriter writer = new JsonLinesWriter(out);
+        JsonLinesReader reader = new JsonLinesReader(new StringReader(LINES));
+        while (reader.hasNext()) {
+            writer.write(reader.next());
+        }
+        writer.getWriter().beginObject().name("id").value(3).endObject();
+        writer.endRecord().flush();
+        assertEquals("{\"id\":1,\"tags\":[\"a\"]}\n{\"id\":2,\"msg\":\"caf\u00e9\"}\n[1,2]\n\"text\"\n42\n{\"id\":3}\n",
+                out.toString());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JsonLinesWriter utf8 = new JsonLinesWriter(bytes);
+        utf8.write(new JsonObject().put("msg", "caf\u00e9"));
+        utf8.close();
+        reader = new JsonLinesReader(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals("caf\u00e9", reader.next().asJsonObject().getString("msg"));
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void projectsRecords() {
+        JsonLinesReader reader = new JsonLinesReader(new StringReader(LINES));
+        Projection projection = Projection.of("$.id");
+        assertEquals("{\"id\":1}", reader.next(projection).toString());
+        assertEquals("{\"id\":2}", reader.next(projection).toString());
+        assertTrue(reader.hasNext());
+    }
+
+    @Test
+    public void recordsMustStartOnNewLine() {
+        JsonLinesReader reader = new JsonLinesReader(new StringReader("{\"id\":1} {\"id\":2}\n"));
+        reader.next();
+        try {
+            reader.next();
+            fail();
+        } catch (JsonException expected) {
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package io.apptik.json.test;
+
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+
+import io.apptik.json.JsonArray;
+import io.apptik.json.JsonElement;
+import io.apptik.json.JsonNumber;
+import io.apptik.json.JsonObject;
+import io.apptik.json.JsonWriter;
+import io.apptik.json.Utf8JsonWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonNumberTest {
+
+    @Test
+    public void readNumbers() throws IOException {
+        JsonArray array = JsonElement.readFrom(
+                "[42, -7, 1.5e10, 3.0e-2, 12345678901234567890, 9223372036854775807]").asJsonArray();
+        assertEquals(42, array.get(0).asInt());
+        assertEquals(-7L, array.get(1).asLong());
+        assertEquals(1.5e10, array.get(2).asDouble(), 0);
+        assertEquals(15000000000L, array.get(2).asLong());
+        assertEquals(0.03, array.get(3).asDouble(), 0);
+        assertEquals(1.2345678901234567e19, array.get(4).asDouble(), 0);
+        assertEquals(Long.MAX_VALUE, array.get(5).asLong());
+        assertEquals("[42,-7,1.5E10,0.03,12345678901234567890,9223372036854775807]", array.toString());
+    }
+
+    @Test
+    public void hugeExponentsAreWrittenAsRead() throws IOException {
+        String json = "[1e99999999999,-2.5E+99999999999]";
+        JsonArray array = JsonElement.readFrom(json).asJsonArray();
+        assertEquals(json, array.toString());
+        assertEquals(Double.POSITIVE_INFINITY, array.get(0).asDouble(), 0);
+        assertEquals(Double.NEGATIVE_INFINITY, array.get(1).asDouble(), 0);
+        assertEquals("{\"a\":1e99999999999}", JsonElement.readFrom("{\"a\":1e99999999999}").toString());
+    }
+
+    @Test
+    public void literalKeepsItsText() {
+        JsonNumber number = new JsonNumber("1.50");
+        assertEquals("1.50", number.toString());
+        assertEquals(1.5, number.asDouble(), 0);
+        assertEquals(1, number.asInt());
+        assertEquals(JsonElement.TYPE_NUMBER, number.getJsonType());
+        assertEquals(JsonElement.TYPE_INTEGER, new JsonNumber("2.0").getJsonType());
+    }
+
+    @Test
+    public void equalsBoxedValues() {
+        assertTrue(new JsonNumber(5).equals(5));
+        assertTrue(new JsonNumber(5).equals(5L));
+        assertTrue(new JsonNumber("5").equals(5));
+        assertTrue(new JsonNumber(0.5).equals(0.5));
+        assertTrue(new JsonNumber(5).equals(new JsonNumber("5")));
+        assertFalse(new JsonNumber(5).equals(6));
+        assertEquals(new JsonNumber(5).hashCode(), new JsonNumber("5").hashCode());
+    }
+
+    @Test
+    public void equalsByValue() throws IOException {
+        assertEquals(new JsonNumber(1000), new JsonNumber("1e3"));
+        assertEquals(new JsonNumber(1000.0), new JsonNumber("1000"));
+        assertEquals(new JsonNumber("2.50"), new JsonNumber(2.5));
+        assertEquals(new JsonNumber(0), new JsonNumber("-0.0"));
+        assertEquals(new JsonNumber(new BigDecimal("12345678901234567890.0")),
+                new JsonNumber("12345678901234567890"));
+        assertFalse(new JsonNumber(9007199254740993L).equals(new JsonNumber(9007199254740992.0)));
+        assertFalse(new JsonNumber("0.1").equals(new JsonNumber(0.1f)));
+        for (String[] same : new String[][]{{"1000", "1e3"}, {"2.5", "2.50"}, {"0", "-0.0"},
+                {"18446744073709551616", "1.8446744073709552E19"}}) {
+            assertEquals(new JsonNumber(same[0]), new JsonNumber(same[1]));
+            assertEquals(new JsonNumber(same[0]).hashCode(), new JsonNumber(same[1]).hashCode());
+        }
+
+        JsonArray array = JsonElement.readFrom("[1e3,2]").asJsonArray();
+        JsonElement member = JsonElement.readFrom("{\"a\":1e3}").asJsonObject().get("a");
+        assertEquals(member, array.get(0));
+        assertEquals(array.get(0), member);
+        JsonElement read = JsonElement.readFrom("{\"a\":[1e3,2.50]}");
+        JsonElement built = new JsonObject().put("a", new JsonArray().put(new JsonNumber("1e3"))
+                .put(new JsonNumber("2.50")));
+        assertEquals(read, built);
+        assertEquals(read.hashCode(), built.hashCode());
+    }
+
+    @Test
+    public void invalidLiteral() {
+        try {
+            new JsonNumber("0x10").asInt();
+            fail();
+        } catch (NumberFormatException expected) {
+        }
+        try {
+            new JsonNumber(Double.NaN);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void writesNumbersLikeToString() throws IOException {
+        double[] doubles = {0.0, -0.0, 1.0, -2.5, 0.1, 0.001, 0.00099, 9999999.5, 1e7, 123.456,
+                0.1 + 0.2, 1.0 / 3, Math.PI, 1e-300, Double.MAX_VALUE, Double.MIN_VALUE};
+        long[] longs = {0, 7, -10, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE};
+        StringBuilder expected = new StringBuilder("[");
+        for (double d : doubles) {
+            expected.append(Double.toString(d)).append(',').append(Double.toString(d)).append(',');
+        }
+        for (long l : longs) {
+            expected.append(Long.toString(l)).append(',').append(Long.toString(l)).append(',');
+        }
+        expected.append("1.5,10,NaN]");
+
+        StringWriter chars = new StringWriter();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (JsonWriter writer : new JsonWriter[]{new JsonWriter(chars), new Utf8JsonWriter(bytes, 16)}) {
+            writer.setLenient(true);
+            writer.beginArray();
+            for (double d : doubles) {
+                writer.value(d).value(Double.valueOf(d));
+            }
+            for (long l : longs) {
+                writer.value(l).value(Long.valueOf(l));
+            }
+            writer.value(1.5f).value(Integer.valueOf(10)).value(Double.valueOf(Double.NaN));
+            writer.endArray();
+            writer.flush();
+        }
+        assertEquals(expected.toString(), chars.toString());
+        assertEquals(expected.toString(), bytes.toString("UTF-8"));
+    }
+}
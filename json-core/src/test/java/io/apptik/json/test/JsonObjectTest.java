@@ -124,9 +124,12 @@ public class JsonObjectTest extends TestCase {
         JsonObject a = new JsonObject();
         JsonObject b = new JsonObject();
 
-        // Json object override equals
+        // Json object overrides equals and hashCode
         assertTrue(a.equals(b));
-        assertEquals(a.hashCode(), System.identityHashCode(a));
+        assertEquals(a.hashCode(), b.hashCode());
+        a.put("foo", 1);
+        b.put("foo", 1);
+        assertEquals(a.hashCode(), b.hashCode());
     }
 
     @Test
@@ -928,4 +931,57 @@ public class JsonObjectTest extends TestCase {
         } catch (JsonException e) {
         }
     }
+
+    @Test
+    public void testInsertionOrderKeptWhenGrowing() throws JsonException {
+        JsonObject object = new JsonObject();
+        StringBuilder expected = new StringBuilder("{");
+        for (int i = 0; i < 20; i++) {
+            object.put("k" + i, i);
+            expected.append(i == 0 ? "" : ",").append("\"k").append(i).append("\":").append(i);
+            assertEquals(i + 1, object.length());
+            assertEquals(i, object.getInt("k" + i).intValue());
+        }
+        assertEquals(expected.append("}").toString(), object.toString());
+        object.put("k3", 33);
+        assertEquals(20, object.length());
+        assertEquals(33, object.getInt("k3").intValue());
+    }
+
+    @Test
+    public void testRemoveFromSmallObject() throws JsonException {
+        JsonObject object = new JsonObject();
+        object.put("a", 1);
+        object.put("b", 2);
+        object.put("c", 3);
+        assertEquals(2, ((JsonNumber) object.remove("b")).asInt());
+        assertNull(object.remove("b"));
+        assertEquals("{\"a\":1,\"c\":3}", object.toString());
+
+        Iterator<String> keys = object.keys();
+        keys.next();
+        keys.remove();
+        assertEquals("c", keys.next());
+        assertFalse(keys.hasNext());
+        assertEquals("{\"c\":3}", object.toString());
+        object.put("a", 1);
+        assertEquals("{\"c\":3,\"a\":1}", object.toString());
+    }
+
+    @Test
+    public void testSmallAndLargeObjectsEqual() throws JsonException {
+        JsonObject small = new JsonObject();
+        JsonObject large = new JsonObject();
+        for (int i = 0; i < 12; i++) {
+            large.put("k" + i, i);
+        }
+        for (int i = 11; i >= 3; i--) {
+            large.remove("k" + i);
+        }
+        for (int i = 0; i < 3; i++) {
+            small.put("k" + i, i);
+        }
+        assertEquals(small, large);
+        assertEquals(large, small);
+    }
 }
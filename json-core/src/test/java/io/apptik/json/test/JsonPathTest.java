@@ -0,0 +1,85 @@
+package io.apptik.json.test;
+
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import io.apptik.json.JsonElement;
+import io.apptik.json.JsonPath;
+import io.apptik.json.JsonReader;
+import io.apptik.json.JsonToken;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class JsonPathTest {
+
+    private static final String JSON = "{\"store\": {\"book\": [{\"title\": \"A\", \"price\": 8.95},"
+            + " {\"title\": \"B\", \"price\": 12, \"tags\": [\"x\", \"y\"]}],"
+            + " \"bicycle\": {\"color\": \"red\", \"price\": 19.95}}, \"title\": \"Store\"}";
+
+    private static List<String> find(String path, String json) throws IOException {
+        final List<String> result = new ArrayList<String>();
+        JsonPath.compile(path).find(new JsonReader(new StringReader(json)), new JsonPath.Callback() {
+            @Override
+            public void onMatch(String path, JsonElement value) {
+                result.add(path + "=" + value);
+            }
+        });
+        return result;
+    }
+
+    @Test
+    public void namesIndicesAndWildcards() throws IOException {
+        assertEquals("[$.store.book[1].title=B]", find("$.store.book[1].title", JSON).toString());
+        assertEquals("[$.store.book[0].price=8.95, $.store.book[1].price=12]",
+                find("$.store.book[*].price", JSON).toString());
+        assertEquals("[$.store.bicycle.color=red]", find("$['store'].*.color", JSON).toString());
+        assertEquals("[$.store.book[1].tags[0]=x]", find("$.store.book[*].tags[0]", JSON).toString());
+        assertEquals(1, find("$", JSON).size());
+        assertEquals(0, find("$.store.book.title", JSON).size());
+    }
+
+    @Test
+    public void descendants() throws IOException {
+        assertEquals("[$.store.book[0].price=8.95, $.store.book[1].price=12, $.store.bicycle.price=19.95]",
+                find("$..price", JSON).toString());
+        assertEquals("[$.store.book[0].title=A, $.store.book[1].title=B, $.title=Store]",
+                find("$..title", JSON).toString());
+        assertEquals("[$.store.book[1].tags[1]=y]", find("$.store..tags[1]", JSON).toString());
+        // the outer match is read as a whole
+        assertEquals("[$.a={\"a\":1}]", find("$..a", "{\"a\": {\"a\": 1}}").toString());
+    }
+
+    @Test
+    public void iteratorReadsLazily() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("[" + JSON + ", 5]"));
+        reader.beginArray();
+        Iterator<JsonElement> matches = JsonPath.compile("$..price").iterator(reader);
+        assertEquals(8.95, matches.next().asDouble(), 0);
+        assertEquals(12, matches.next().asInt());
+        assertEquals(19.95, matches.next().asDouble(), 0);
+        assertFalse(matches.hasNext());
+        assertEquals(5, reader.nextInt());
+        reader.endArray();
+        assertEquals(JsonToken.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    public void malformedPath() {
+        String[] malformed = {"$..", "$...a", "$[-1]", "$.a[?(@.b)]"};
+        for (String path : malformed) {
+            try {
+                JsonPath.compile(path);
+                fail(path);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package io.apptik.json.test;
+
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import io.apptik.json.JsonArray;
+import io.apptik.json.JsonElement;
+import io.apptik.json.JsonReader;
+import io.apptik.json.JsonToken;
+import io.apptik.json.Utf8JsonReader;
+import io.apptik.json.util.StringPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonReaderTest {
+
+    private static final String RECORDS = "[{\"id\":1,\"caf\u00e9\":2},{\"id\":3,\"caf\u00e9\":4},{\"i\\u0064\":5}]";
+
+    @Test
+    public void pooledNamesAreShared() throws IOException {
+        StringPool pool = new StringPool();
+        JsonReader chars = new JsonReader(new StringReader(RECORDS));
+        chars.setNamePool(pool);
+        JsonReader bytes = new Utf8JsonReader(RECORDS.getBytes("UTF-8"));
+        bytes.setNamePool(pool);
+
+        String[] names = readNames(chars);
+        assertEquals("id", names[0]);
+        assertEquals("caf\u00e9", names[1]);
+        assertSame(names[0], names[2]);
+        assertSame(names[1], names[3]);
+        assertEquals("id", names[4]);
+
+        String[] shared = readNames(bytes);
+        for (int i = 0; i < 4; i++) {
+            assertSame(names[i], shared[i]);
+        }
+    }
+
+    @Test
+    public void namesAreNotPooledByDefault() throws IOException {
+        String[] names = readNames(new JsonReader(new StringReader(RECORDS)));
+        assertEquals(names[0], names[2]);
+        assertNotSame(names[0], names[2]);
+    }
+
+    @Test
+    public void readsDeeplyNestedValuesWithoutRecursion() throws IOException {
+        int depth = 100000;
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            json.append(i % 2 == 0 ? "[" : "{\"a\":");
+        }
+        json.append("1");
+        for (int i = depth - 1; i >= 0; i--) {
+            json.append(i % 2 == 0 ? "]" : "}");
+        }
+        JsonElement element = JsonElement.readFrom(json.toString());
+        for (int i = 0; i < depth; i++) {
+            element = i % 2 == 0 ? element.asJsonArray().get(0) : element.asJsonObject().get("a");
+        }
+        assertEquals(1, element.asInt());
+    }
+
+    @Test
+    public void readingValueKeepsReaderPath() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("{\"a\": [{\"b\": [1, 2]}, \"c\"], \"d\": true}"));
+        reader.beginObject();
+        assertEquals("a", reader.nextName());
+        JsonArray a = (JsonArray) JsonElement.readFrom(reader);
+        assertEquals("[{\"b\":[1,2]},\"c\"]", a.toString());
+        assertEquals("$.a", reader.getPath());
+        assertEquals("d", reader.nextName());
+        assertEquals(true, JsonElement.readFrom(reader).asBoolean());
+        reader.endObject();
+        assertEquals(JsonToken.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    public void validatesWellFormedDocuments() throws IOException {
+        String[] wellFormed = {RECORDS, "1", " \"a\\u0041\\n\" ", "{}", "[[], {\"a\": [-0.5e+10, true, null]}]"};
+        for (String json : wellFormed) {
+            new JsonReader(new StringReader(json)).validate();
+            new Utf8JsonReader(json.getBytes("UTF-8")).validate();
+        }
+        JsonReader lenient = new JsonReader(new StringReader("1 {'a': b}"));
+        lenient.setLenient(true);
+        lenient.validate();
+    }
+
+    @Test
+    public void validationReportsErrorsWhereReadingDoes() throws IOException {
+        String[] malformed = {"", "[1,]", "{\"a\" 1}", "[\"a\\x\"]", "[\"\\u12g4\"]", "[01]", "[1] 2",
+                "{\"a\": [1, 2}", "[\"abc", "{\"a\":\n  tru}", "[1, 2", "NaN"};
+        for (String json : malformed) {
+            for (int utf8 = 0; utf8 < 2; utf8++) {
+                String readError = null;
+                try {
+                    JsonReader reader = reader(json, utf8 == 1);
+                    JsonElement.readFrom(reader);
+                    reader.peek();
+                } catch (Exception e) {
+                    readError = e.getMessage();
+                }
+                try {
+                    reader(json, utf8 == 1).validate();
+                    fail(json);
+                } catch (IOException e) {
+                    if (readError != null && readError.contains(" at line: ")) {
+                        String location = readError.substring(readError.indexOf(" at line: "), readError.indexOf(", path"));
+                        assertTrue(json + ": " + e.getMessage(), e.getMessage().contains(location));
+                    }
+                }
+            }
+        }
+    }
+
+    private static JsonReader reader(String json, boolean utf8) throws IOException {
+        return utf8 ? new Utf8JsonReader(json.getBytes("UTF-8")) : new JsonReader(new StringReader(json));
+    }
+
+    private static String[] readNames(JsonReader reader) throws IOException {
+        String[] names = new String[5];
+        int i = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                names[i++] = reader.nextName();
+                reader.skipValue();
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+        return names;
+    }
+}
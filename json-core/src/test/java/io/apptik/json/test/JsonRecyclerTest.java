@@ -0,0 +1,94 @@
+package io.apptik.json.test;
+
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import io.apptik.json.JsonElement;
+import io.apptik.json.JsonReader;
+import io.apptik.json.JsonRecycler;
+import io.apptik.json.JsonToken;
+import io.apptik.json.JsonWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class JsonRecyclerTest {
+
+    @Test
+    public void recycledReaderReadsNewDocument() throws IOException {
+        JsonReader reader = JsonRecycler.obtainReader(new StringReader("{\"a\": [1, "));
+        reader.beginObject();
+        assertEquals("a", reader.nextName());
+        reader.beginArray();
+        reader.nextInt();
+        JsonRecycler.recycle(reader);
+
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            json.append(i).append(',');
+        }
+        assertSame(reader, JsonRecycler.obtainReader(new StringReader(json.append("\"x\"]").toString())));
+        assertEquals("$", reader.getPath());
+        reader.beginArray();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, reader.nextInt());
+        }
+        assertEquals("x", reader.nextString());
+        reader.endArray();
+        assertEquals(JsonToken.END_DOCUMENT, reader.peek());
+        JsonRecycler.recycle(reader);
+    }
+
+    @Test
+    public void recycledWriterWritesNewDocument() throws IOException {
+        StringWriter first = new StringWriter();
+        JsonWriter writer = JsonRecycler.obtainWriter(first);
+        writer.beginObject().name("a");
+        JsonRecycler.recycle(writer);
+        StringWriter second = new StringWriter();
+        assertSame(writer, JsonRecycler.obtainWriter(second));
+        writer.beginArray().value(1).endArray();
+        writer.flush();
+        JsonRecycler.recycle(writer);
+        assertEquals("{", first.toString());
+        assertEquals("[1]", second.toString());
+    }
+
+    @Test
+    public void recycledInstancesHaveDefaultSettings() throws IOException {
+        JsonReader reader = JsonRecycler.obtainReader(new StringReader("1"));
+        reader.setLenient(true);
+        JsonReader nested = JsonRecycler.obtainReader(new StringReader("2"));
+        assertNotSame(reader, nested);
+        JsonRecycler.recycle(reader);
+        assertSame(reader, JsonRecycler.obtainReader(new StringReader("[]")));
+        assertFalse(reader.isLenient());
+        JsonRecycler.recycle(reader);
+
+        StringWriter out = new StringWriter();
+        JsonWriter writer = JsonRecycler.obtainWriter(new StringWriter());
+        writer.setIndent("  ");
+        JsonRecycler.recycle(writer);
+        assertSame(writer, JsonRecycler.obtainWriter(out));
+        writer.beginObject().name("a").value(true).endObject();
+        JsonRecycler.recycle(writer);
+        assertEquals("{\"a\":true}", out.toString());
+    }
+
+    @Test
+    public void nestedReadsAndWrites() throws IOException {
+        String json = "{\"a\":[1,{\"b\":\"c\"}],\"d\":null}";
+        JsonElement element = JsonElement.readFrom(json);
+        assertEquals(json, element.toString());
+        assertEquals(element, JsonElement.readFrom(new StringReader(element.toString())));
+        StringWriter out = new StringWriter();
+        element.writeTo(out);
+        assertEquals(json, out.toString());
+    }
+}
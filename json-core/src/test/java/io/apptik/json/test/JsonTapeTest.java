@@ -0,0 +1,91 @@
+package io.apptik.json.test;
+
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import io.apptik.json.JsonArray;
+import io.apptik.json.JsonElement;
+import io.apptik.json.JsonObject;
+import io.apptik.json.JsonTape;
+import io.apptik.json.JsonToken;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonTapeTest {
+
+    private static final String JSON = "{\"id\": 7, \"name\": \"caf\\u00e9 \u20ac\", \"tags\": [\"a\", \"b\\\"\"],"
+            + " \"values\": [1, 2.5, 3], \"big\": [12345678901234567890, 1e400, 0.1234567890123456789],"
+            + " \"nested\": {\"deep\": {\"flag\": true}}, \"empty\": {}, \"none\": null}";
+
+    @Test
+    public void readsSameTreeAsEagerReader() throws IOException {
+        JsonElement expected = JsonElement.readFrom(JSON);
+        JsonElement actual = JsonTape.parse(JSON).toJsonElement();
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(expected, actual);
+
+        JsonObject object = actual.asJsonObject();
+        assertEquals("caf\u00e9 \u20ac", object.getString("name"));
+        assertEquals("b\"", object.getJsonArray("tags").getString(1));
+        JsonArray values = object.getJsonArray("values");
+        assertEquals(2.5, values.getDouble(1), 0);
+        assertEquals(3, values.toDoubleArray().length);
+        assertTrue(object.getJsonObject("nested").getJsonObject("deep").getBoolean("flag"));
+    }
+
+    @Test
+    public void cursor() throws IOException {
+        JsonTape.Cursor cursor = JsonTape.parse(JSON).cursor();
+        cursor.beginObject();
+        assertEquals("id", cursor.nextName());
+        assertEquals(7, cursor.nextInt());
+        assertEquals(JsonToken.NAME, cursor.peek());
+        cursor.skipValue();
+        assertEquals("tags", cursor.nextName());
+        cursor.skipValue();
+        assertEquals("values", cursor.nextName());
+        cursor.beginArray();
+        assertEquals(1L, cursor.nextLong());
+        assertEquals(2.5, cursor.nextDouble(), 0);
+        assertEquals("3", cursor.nextString());
+        assertFalse(cursor.hasNext());
+        cursor.endArray();
+        assertEquals("big", cursor.nextName());
+        assertEquals("[12345678901234567890,1E+400,0.12345678901234568]", cursor.nextElement().toString());
+        while (cursor.hasNext()) {
+            cursor.skipValue();
+        }
+        cursor.endObject();
+        assertEquals(JsonToken.END_DOCUMENT, cursor.peek());
+    }
+
+    @Test
+    public void escapesAcrossBlocks() throws IOException {
+        StringBuilder json = new StringBuilder("[\"");
+        for (int i = 0; i < 60; i++) {
+            json.append('a');
+        }
+        json.append("\\\\\\\\\\\"x\", \"y\"]");
+        JsonArray array = JsonTape.parse(json.toString()).toJsonElement().asJsonArray();
+        assertEquals(2, array.length());
+        assertTrue(array.getString(0).endsWith("a\\\\\"x"));
+    }
+
+    @Test
+    public void malformedDocumentFailsUpFront() {
+        String[] malformed = {"", "{\"a\": {\"b\": [1, 2}}", "[1,]", "{\"a\" 1}", "[01]", "[\"\\x\"]",
+                "[tru]", "[1] [2]", "\"abc", "[1.]", "{\"a\":1,}"};
+        for (String json : malformed) {
+            try {
+                JsonTape.parse(json);
+                fail(json);
+            } catch (IOException expected) {
+            }
+        }
+    }
+}
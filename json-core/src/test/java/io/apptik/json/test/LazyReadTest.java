@@ -0,0 +1,53 @@
+package io.apptik.json.test;
+
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import io.apptik.json.JsonArray;
+import io.apptik.json.JsonElement;
+import io.apptik.json.JsonObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LazyReadTest {
+
+    private static final String JSON = "{\"id\": 7, \"name\": \"caf\\u00e9 \u20ac\", \"tags\": [\"a\", \"b\"],"
+            + " \"values\": [1, 2.5, 3], \"nested\": {\"deep\": {\"flag\": true}}, \"empty\": {}}";
+
+    @Test
+    public void readsSameTreeAsEagerReader() throws IOException {
+        JsonElement expected = JsonElement.readFrom(JSON);
+        assertEquals(expected.toString(), JsonElement.readLazily(JSON).toString());
+        assertEquals(expected.toString(), JsonElement.readLazily(new StringReader(JSON)).toString());
+        assertEquals(expected.toString(), JsonElement.readLazily(JSON.getBytes("UTF-8")).toString());
+        assertEquals(expected, JsonElement.readLazily(JSON));
+    }
+
+    @Test
+    public void accessors() throws IOException {
+        JsonObject object = JsonElement.readLazily(JSON.getBytes("UTF-8")).asJsonObject();
+        assertEquals(7, object.getInt("id").intValue());
+        assertEquals("caf\u00e9 \u20ac", object.getString("name"));
+        assertTrue(object.getJsonObject("nested").getJsonObject("deep").getBoolean("flag"));
+        JsonArray values = object.getJsonArray("values");
+        assertEquals(3, values.length());
+        assertEquals(2.5, values.getDouble(1), 0);
+        object.getJsonArray("tags").put("c");
+        assertEquals("[\"a\",\"b\",\"c\"]", object.getJsonArray("tags").toString());
+        assertEquals(0, object.getJsonObject("empty").length());
+    }
+
+    @Test
+    public void malformedDocumentFailsUpFront() {
+        try {
+            JsonElement.readLazily("{\"a\": {\"b\": [1, 2}}");
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+}
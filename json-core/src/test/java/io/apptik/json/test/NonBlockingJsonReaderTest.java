@@ -0,0 +1,172 @@
+package io.apptik.json.test;
+
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import io.apptik.json.JsonElement;
+import io.apptik.json.JsonToken;
+import io.apptik.json.NonBlockingJsonReader;
+import io.apptik.json.exception.MalformedJsonException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NonBlockingJsonReaderTest {
+
+    private static final String JSON = "\ufeff{\"name\": \"caf\u00e9 \\\"\\u20ac\\\" \ud83d\ude00\", \"n\": -12.5e-3,"
+            + " \"big\": 12345678901234567890, \"list\": [1, true, null, false, [], {}], \"o\": {\"x\": \"\"}} ";
+
+    @Test
+    public void readsElementFedOneByteAtATime() throws IOException {
+        byte[] bytes = JSON.getBytes("UTF-8");
+        NonBlockingJsonReader reader = new NonBlockingJsonReader();
+        JsonElement element = null;
+        for (int i = 0; i < bytes.length && element == null; i++) {
+            reader.feed(bytes, i, 1);
+            element = reader.nextElement();
+        }
+        assertEquals(JsonElement.readFrom(bytes), element);
+        assertEquals(JsonToken.NEED_MORE_INPUT, reader.peek());
+        reader.endOfInput();
+        assertEquals(JsonToken.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    public void readsArraysLikeReadFrom() throws IOException {
+        byte[] bytes = "{\"a\": [1e3, 2.50, 7], \"b\": [1, 2, \"x\"], \"c\": [true, false]}".getBytes("UTF-8");
+        NonBlockingJsonReader reader = new NonBlockingJsonReader();
+        JsonElement element = null;
+        for (int i = 0; i < bytes.length && element == null; i++) {
+            reader.feed(bytes, i, 1);
+            element = reader.nextElement();
+        }
+        JsonElement expected = JsonElement.readFrom(bytes);
+        assertEquals(expected, element);
+        assertEquals(expected.toString(), element.toString());
+    }
+
+    @Test
+    public void readsDeeplyNestedElements() throws IOException {
+        // around and past the size of the reader's own stack
+        for (int depth : new int[]{15, 16, 17, 32, 40}) {
+            StringBuilder json = new StringBuilder();
+            for (int i = 0; i < depth; i++) {
+                json.append(i % 2 == 0 ? "[" : "{\"a\":");
+            }
+            json.append(1);
+            for (int i = depth - 1; i >= 0; i--) {
+                json.append(i % 2 == 0 ? "]" : "}");
+            }
+            byte[] bytes = json.toString().getBytes("UTF-8");
+            NonBlockingJsonReader reader = new NonBlockingJsonReader();
+            JsonElement element = null;
+            for (int i = 0; i < bytes.length && element == null; i += 3) {
+                reader.feed(bytes, i, Math.min(3, bytes.length - i));
+                element = reader.nextElement();
+            }
+            assertEquals(JsonElement.readFrom(bytes), element);
+        }
+    }
+
+    @Test
+    public void unicodeEscapeIsBufferedWhole() throws IOException {
+        NonBlockingJsonReader reader = new NonBlockingJsonReader();
+        feed(reader, "[\"\\u0\"]");
+        reader.beginArray();
+        assertEquals(JsonToken.NEED_MORE_INPUT, reader.peek());
+        reader.endOfInput();
+        assertEquals(JsonToken.STRING, reader.peek());
+        try {
+            reader.nextString();
+            fail();
+        } catch (MalformedJsonException expected) {
+            assertTrue(expected.getMessage().startsWith("Unterminated escape sequence"));
+        }
+
+        // the quote is one of the four digits, so the string doesn't end there
+        byte[] bytes = "[\"\\u00\"9\"]".getBytes("UTF-8");
+        reader = new NonBlockingJsonReader();
+        reader.feed(bytes, 0, 2);
+        reader.beginArray();
+        for (int i = 2; i < bytes.length - 1; i++) {
+            assertEquals(JsonToken.NEED_MORE_INPUT, reader.peek());
+            reader.feed(bytes, i, 1);
+        }
+        assertEquals(JsonToken.STRING, reader.peek());
+        try {
+            reader.nextString();
+            fail();
+        } catch (NumberFormatException expected) {
+        }
+    }
+
+    @Test
+    public void peekWaitsForCompleteTokens() throws IOException {
+        NonBlockingJsonReader reader = new NonBlockingJsonReader();
+        assertEquals(JsonToken.NEED_MORE_INPUT, reader.peek());
+        feed(reader, "[\"ab");
+        reader.beginArray();
+        assertEquals(JsonToken.NEED_MORE_INPUT, reader.peek());
+        feed(reader, "c\\");
+        assertEquals(JsonToken.NEED_MORE_INPUT, reader.peek());
+        feed(reader, "\"\", 12");
+        assertEquals("abc\"", reader.nextString());
+        assertEquals(JsonToken.NEED_MORE_INPUT, reader.peek());
+        try {
+            reader.nextInt();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        feed(reader, "3, tr");
+        assertEquals(123, reader.nextInt());
+        assertEquals(JsonToken.NEED_MORE_INPUT, reader.peek());
+        feed(reader, "ue]");
+        assertEquals(true, reader.nextBoolean());
+        reader.endArray();
+        assertEquals(JsonToken.NEED_MORE_INPUT, reader.peek());
+        reader.endOfInput();
+        assertEquals(JsonToken.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    public void skipsValueAcrossFeeds() throws IOException {
+        NonBlockingJsonReader reader = new NonBlockingJsonReader();
+        feed(reader, "[{\"a\": [1, \"]");
+        reader.beginArray();
+        reader.skipValue();
+        assertEquals(JsonToken.NEED_MORE_INPUT, reader.peek());
+        feed(reader, "\"]}, 2");
+        assertEquals(JsonToken.NEED_MORE_INPUT, reader.peek());
+        feed(reader, "]");
+        assertEquals(2, reader.nextInt());
+        reader.endArray();
+        assertEquals("$", reader.getPath());
+    }
+
+    @Test
+    public void endOfInputReportsTruncatedDocument() throws IOException {
+        NonBlockingJsonReader reader = new NonBlockingJsonReader();
+        feed(reader, "{\"a\": [1, 2");
+        assertNull(reader.nextElement());
+        reader.endOfInput();
+        try {
+            reader.nextElement();
+            fail();
+        } catch (IOException expected) {
+        }
+        try {
+            feed(reader, "]}");
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    private static void feed(NonBlockingJsonReader reader, String json) throws IOException {
+        byte[] bytes = json.getBytes("UTF-8");
+        reader.feed(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,107 @@
+package io.apptik.json.test;
+
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.apptik.json.JsonArray;
+import io.apptik.json.JsonElement;
+import io.apptik.json.ParallelJsonArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelJsonArrayTest {
+
+    private static byte[] array(int count) throws IOException {
+        StringBuilder json = new StringBuilder("\ufeff [");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(i % 3 == 0 ? ",\n" : ", ");
+            }
+            switch (i % 4) {
+                case 0:
+                    json.append("{\"id\": ").append(i).append(", \"name\": \"a],\\\"b{\", \"tags\": [[], {}]}");
+                    break;
+                case 1:
+                    json.append("[").append(i).append(", 1.5e3, null, \"\\u00e9\"]");
+                    break;
+                case 2:
+                    json.append("\"x\\\\\"");
+                    break;
+                default:
+                    json.append(i % 2 == 0 ? "true" : "-12.25");
+                    break;
+            }
+        }
+        return json.append("] ").toString().getBytes("UTF-8");
+    }
+
+    @Test
+    public void readsSameArrayAsSequentialReader() throws IOException {
+        byte[] bytes = array(1000);
+        JsonArray expected = (JsonArray) JsonElement.readFrom(bytes);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (int sliceSize : new int[]{1, 100, 5000, ParallelJsonArray.DEFAULT_SLICE_SIZE}) {
+                JsonArray actual = new ParallelJsonArray().setSliceSize(sliceSize).setExecutor(executor).read(bytes);
+                assertEquals(expected, actual);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(expected, new ParallelJsonArray().setSliceSize(64).read(bytes));
+    }
+
+    @Test
+    public void readsPrimitiveArraysLikeSequentialReader() throws IOException {
+        String[] arrays = {"[1e3,2.50,7]", "[1,2,3]", "[1,2,\"x\",3.5]", "[true,false,true]", "[true,1]",
+                "[9007199254740993,0.5]", "[1,12345678901234567890,2]", "[1e99999,1]"};
+        ParallelJsonArray reader = new ParallelJsonArray().setSliceSize(1);
+        for (String json : arrays) {
+            byte[] bytes = json.getBytes("UTF-8");
+            JsonArray expected = (JsonArray) JsonElement.readFrom(bytes);
+            JsonArray actual = reader.read(bytes);
+            assertEquals(json, expected, actual);
+            assertEquals(json, expected.toString(), actual.toString());
+        }
+    }
+
+    @Test
+    public void readsSmallArrays() throws IOException {
+        ParallelJsonArray reader = new ParallelJsonArray().setSliceSize(1);
+        assertEquals(0, reader.read("[]".getBytes("UTF-8")).size());
+        assertEquals(0, reader.read(" [ \n ] ".getBytes("UTF-8")).size());
+        assertEquals("[1]", reader.read("[1]".getBytes("UTF-8")).toString());
+        assertEquals("[\"a\",[]]", reader.read("[\"a\" , [ ]]".getBytes("UTF-8")).toString());
+        byte[] bytes = "xx[1,2]xx".getBytes("UTF-8");
+        assertEquals("[1,2]", reader.read(bytes, 2, 5).toString());
+    }
+
+    @Test
+    public void rejectsMalformedArrays() throws IOException {
+        String[] malformed = {"", "{}", "1", "[", "[1", "[1,]", "[,1]", "[1,,2]", "[1 2]", "[\"a\" \"b\"]",
+                "[1]]", "[1] 2", "[{\"a\":1]}]", "[[}]", "[{\"a\" 1}]", "[tru]", "[1, \"a]", "[a:1]"};
+        for (String json : malformed) {
+            try {
+                new ParallelJsonArray().setSliceSize(1).read(json.getBytes("UTF-8"));
+                fail(json);
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void errorsHaveIndexOfElement() throws IOException {
+        try {
+            new ParallelJsonArray().setSliceSize(1).read("[1, 2, {\"a\": x}]".getBytes("UTF-8"));
+            fail();
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("$[2].a"));
+        }
+    }
+}
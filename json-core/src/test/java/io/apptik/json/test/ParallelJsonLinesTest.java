@@ -0,0 +1,95 @@
+package io.apptik.json.test;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.apptik.json.JsonElement;
+import io.apptik.json.JsonLinesWriter;
+import io.apptik.json.JsonObject;
+import io.apptik.json.ParallelJsonLines;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelJsonLinesTest {
+
+    private static final int RECORDS = 5000;
+
+    private File file;
+
+    @Before
+    public void writeFile() throws IOException {
+        file = File.createTempFile("records", ".ndjson");
+        JsonLinesWriter writer = new JsonLinesWriter(new FileOutputStream(file));
+        for (int i = 0; i < RECORDS; i++) {
+            writer.write(new JsonObject().put("id", i).put("name", "record \u20ac" + i));
+        }
+        writer.close();
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    private static List<Integer> ids(ParallelJsonLines lines) throws IOException {
+        final List<Integer> result = Collections.synchronizedList(new ArrayList<Integer>());
+        lines.read(new ParallelJsonLines.Handler() {
+            @Override
+            public void onRecord(JsonElement record) {
+                result.add(record.asJsonObject().getInt("id"));
+            }
+        });
+        return result;
+    }
+
+    @Test
+    public void readsInOrder() throws IOException {
+        List<Integer> ids = ids(new ParallelJsonLines(file).setChunkSize(1000).setMaxPendingChunks(3));
+        assertEquals(RECORDS, ids.size());
+        for (int i = 0; i < RECORDS; i++) {
+            assertEquals(i, ids.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void readsUnorderedOnGivenExecutor() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<Integer> ids = ids(new ParallelJsonLines(file).setChunkSize(777).setOrdered(false)
+                    .setExecutor(executor));
+            Collections.sort(ids);
+            assertEquals(RECORDS, ids.size());
+            for (int i = 0; i < RECORDS; i++) {
+                assertEquals(i, ids.get(i).intValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void malformedRecordFailsRead() throws IOException {
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write("{\"id\": }\n".getBytes("UTF-8"));
+        out.close();
+        try {
+            ids(new ParallelJsonLines(file).setChunkSize(4096));
+            fail();
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().startsWith("Cannot read chunk"));
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package io.apptik.json.test;
+
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import io.apptik.json.JsonArray;
+import io.apptik.json.JsonElement;
+import io.apptik.json.JsonNumber;
+import io.apptik.json.JsonObject;
+import io.apptik.json.JsonString;
+import io.apptik.json.PersistentJsonArray;
+import io.apptik.json.PersistentJsonObject;
+import io.apptik.json.exception.JsonException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PersistentJsonTest {
+
+    @Test
+    public void objectVersionsAreIndependent() {
+        PersistentJsonObject v1 = PersistentJsonObject.empty().with("a", new JsonNumber(1));
+        PersistentJsonObject v2 = v1.with("b", new JsonString("x"));
+        PersistentJsonObject v3 = v2.with("a", new JsonNumber(2)).without("b");
+        assertEquals("{\"a\":1}", v1.toString());
+        assertEquals("{\"a\":1,\"b\":\"x\"}", v2.toString());
+        assertEquals("{\"a\":2}", v3.toString());
+        assertEquals(1, v1.length());
+        assertEquals(2, v2.length());
+        assertNull(v3.get("b"));
+        assertSame(v2, v2.without("missing"));
+        assertSame(PersistentJsonObject.empty(), v1.without("a"));
+    }
+
+    @Test
+    public void objectMatchesHashMap() {
+        // "Aa" and "BB" have the same hash code, and so do their concatenations
+        String[] colliding = {"Aa", "BB", "AaAa", "AaBB", "BBAa", "BBBB"};
+        Map<String, JsonElement> expected = new HashMap<String, JsonElement>();
+        List<PersistentJsonObject> versions = new ArrayList<PersistentJsonObject>();
+        List<Map<String, JsonElement>> snapshots = new ArrayList<Map<String, JsonElement>>();
+        PersistentJsonObject object = PersistentJsonObject.empty();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            String key = random.nextInt(4) == 0
+                    ? colliding[random.nextInt(colliding.length)]
+                    : "k" + random.nextInt(3000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                object = object.without(key);
+            } else {
+                JsonElement value = new JsonNumber(i);
+                expected.put(key, value);
+                object = object.with(key, value);
+            }
+            if (i % 2000 == 0) {
+                versions.add(object);
+                snapshots.add(new HashMap<String, JsonElement>(expected));
+            }
+        }
+        assertContains(expected, object);
+        for (int i = 0; i < versions.size(); i++) {
+            assertContains(snapshots.get(i), versions.get(i));
+        }
+    }
+
+    private static void assertContains(Map<String, JsonElement> expected, PersistentJsonObject object) {
+        assertEquals(expected.size(), object.length());
+        assertEquals(expected.hashCode(), object.hashCode());
+        for (Map.Entry<String, JsonElement> e : expected.entrySet()) {
+            assertEquals(e.getValue(), object.get(e.getKey()));
+        }
+        int count = 0;
+        for (Map.Entry<String, JsonElement> e : object) {
+            assertEquals(expected.get(e.getKey()), e.getValue());
+            count++;
+        }
+        assertEquals(expected.size(), count);
+    }
+
+    @Test
+    public void objectKeepsInsertionOrder() {
+        PersistentJsonObject object = PersistentJsonObject.empty();
+        for (int i = 0; i < 100; i++) {
+            object = object.with("n" + (i * 7919 % 100), new JsonNumber(i));
+        }
+        object = object.with("n50", new JsonString("replaced")).without("n0");
+        JsonObject mutable = object.toJsonObject();
+        List<String> names = new ArrayList<String>();
+        for (Map.Entry<String, JsonElement> e : object) {
+            names.add(e.getKey());
+        }
+        List<String> mutableNames = new ArrayList<String>();
+        for (Map.Entry<String, JsonElement> e : mutable) {
+            mutableNames.add(e.getKey());
+        }
+        assertEquals(99, names.size());
+        assertEquals("n19", names.get(0));
+        assertEquals(names, mutableNames);
+        assertEquals(object.toString(), mutable.toString());
+    }
+
+    @Test
+    public void arrayVersionsAreIndependent() {
+        List<PersistentJsonArray> versions = new ArrayList<PersistentJsonArray>();
+        PersistentJsonArray array = PersistentJsonArray.empty();
+        for (int i = 0; i < 40000; i++) {
+            if (i % 1000 == 0) {
+                versions.add(array);
+            }
+            array = array.append(new JsonNumber(i));
+        }
+        assertEquals(40000, array.length());
+        for (int v = 0; v < versions.size(); v++) {
+            PersistentJsonArray version = versions.get(v);
+            assertEquals(v * 1000, version.length());
+            for (int i = 0; i < version.length(); i += 7) {
+                assertEquals(i, version.get(i).asInt());
+            }
+        }
+
+        PersistentJsonArray changed = array;
+        for (int i = 0; i < 40000; i += 13) {
+            changed = changed.with(i, new JsonString("s" + i));
+        }
+        int i = 0;
+        for (JsonElement value : changed) {
+            if (i % 13 == 0) {
+                assertEquals("s" + i, value.asString());
+            } else {
+                assertEquals(i, value.asInt());
+            }
+            assertEquals(i, array.get(i).asInt());
+            i++;
+        }
+        assertEquals(40000, i);
+        assertNull(array.opt(40000));
+        try {
+            array.get(-1);
+            fail();
+        } catch (JsonException expected) {
+        }
+    }
+
+    @Test
+    public void convertsTrees() throws IOException {
+        JsonObject mutable = JsonElement.readFrom(
+                "{\"a\":[1,{\"b\":[true,null]},\"c\"],\"d\":{\"e\":{}},\"f\":[]}").asJsonObject();
+        PersistentJsonObject object = PersistentJsonObject.from(mutable);
+        assertTrue(object.get("a") instanceof PersistentJsonArray);
+        assertTrue(object.get("d") instanceof PersistentJsonObject);
+        assertFalse(object.isJsonObject());
+        assertEquals(JsonElement.TYPE_OBJECT, object.getJsonType());
+        assertEquals(mutable.toString(), object.toString());
+
+        JsonObject back = object.toJsonObject();
+        assertTrue(back.get("a").isJsonArray());
+        assertTrue(back.getJsonArray("a").get(1).isJsonObject());
+        assertEquals(mutable, back);
+
+        // mutable values are copied in, so changing them later has no effect
+        JsonArray values = new JsonArray().put(1);
+        PersistentJsonObject withValues = object.with("g", values);
+        values.put(2);
+        assertEquals("[1]", withValues.get("g").toString());
+        assertEquals(PersistentJsonObject.from(mutable).with("g", new JsonArray().put(1)), withValues);
+        assertEquals(PersistentJsonArray.from(values), PersistentJsonArray.empty()
+                .append(new JsonNumber(1)).append(new JsonNumber(2)));
+    }
+}
@@ -0,0 +1,73 @@
+package io.apptik.json.test;
+
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import io.apptik.json.JsonElement;
+import io.apptik.json.JsonReader;
+import io.apptik.json.JsonToken;
+import io.apptik.json.Projection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ProjectionTest {
+
+    private static final String JSON = "{\"user\": {\"id\": 7, \"name\": \"Ann\", \"roles\": [\"a\", \"b\"]},"
+            + " \"items\": [{\"price\": 1.5, \"sku\": \"x\"}, {\"sku\": \"y\"}, {\"price\": 3, \"tags\": [1, 2]}],"
+            + " \"payload\": {\"huge\": [[1, 2], {\"a\": null}]}, \"odd name\": [10, 20, 30]}";
+
+    @Test
+    public void readsOnlyProjectedPaths() throws IOException {
+        Projection projection = Projection.of("$.user.id", "$.items[*].price", "$['odd name'][1]");
+        assertEquals("{\"user\":{\"id\":7},\"items\":[{\"price\":1.5},{},{\"price\":3}],\"odd name\":[20]}",
+                JsonElement.readFrom(JSON, projection).toString());
+        assertEquals(JsonElement.readFrom(JSON, projection),
+                JsonElement.readFrom(JSON.getBytes("UTF-8"), projection));
+    }
+
+    @Test
+    public void pathEndingAtContainerSelectsAllOfIt() throws IOException {
+        assertEquals("{\"user\":{\"id\":7,\"name\":\"Ann\",\"roles\":[\"a\",\"b\"]},\"items\":[{\"sku\":\"x\"}]}",
+                JsonElement.readFrom(JSON, Projection.of("user", "$.user.id", "$.items[0].sku")).toString());
+        assertEquals(JsonElement.readFrom(JSON), JsonElement.readFrom(JSON, Projection.of("$")));
+    }
+
+    @Test
+    public void wildcardsCombineWithNames() throws IOException {
+        assertEquals("{\"user\":{\"id\":7,\"name\":\"Ann\"},\"payload\":{}}",
+                JsonElement.readFrom(JSON, Projection.of("$.*.id", "$.user.name")).toString());
+    }
+
+    @Test
+    public void mismatchedTypesAreLeftOut() throws IOException {
+        assertEquals("{\"user\":{}}", JsonElement.readFrom(JSON, Projection.of("$.user.id[0]")).toString());
+        assertNull(JsonElement.readFrom("[1, 2]", Projection.of("$.a")));
+    }
+
+    @Test
+    public void leavesReaderAfterValue() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("[" + JSON + ", 5]"));
+        reader.beginArray();
+        JsonElement.readFrom(reader, Projection.of("$.user.name"));
+        assertEquals(5, reader.nextInt());
+        reader.endArray();
+        assertEquals(JsonToken.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    public void malformedPath() {
+        String[] malformed = {"$.", "$[", "$[a]", "$['a'", "$.a[1", "$x"};
+        for (String path : malformed) {
+            try {
+                Projection.of(path);
+                fail(path);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+}
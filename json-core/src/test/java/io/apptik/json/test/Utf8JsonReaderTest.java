@@ -0,0 +1,161 @@
+package io.apptik.json.test;
+
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import io.apptik.json.JsonArray;
+import io.apptik.json.JsonElement;
+import io.apptik.json.JsonObject;
+import io.apptik.json.JsonReader;
+import io.apptik.json.JsonString;
+import io.apptik.json.JsonToken;
+import io.apptik.json.MappedJsonReader;
+import io.apptik.json.Utf8JsonReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Utf8JsonReaderTest {
+
+    private static final String JSON = "{\"name\":\"caf\u00e9 \\u00e9 \u20ac \ud83d\ude00\",\"escaped\":\"a\\\"b\\\\c\\n\","
+            + "\"numbers\":[0,-1,9223372036854775807,1.5e10,12345678901234567890],"
+            + "\"flags\":[true,false,null],\"nested\":{\"\u00fcber\":{}}}";
+
+    @Test
+    public void readsSameTreeAsCharReader() throws IOException {
+        JsonElement expected = JsonElement.readFrom(JSON);
+        byte[] bytes = JSON.getBytes("UTF-8");
+
+        assertEquals(expected.toString(), JsonElement.readFrom(bytes).toString());
+        assertEquals(expected.toString(), JsonElement.readFrom(new ByteArrayInputStream(bytes)).toString());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        assertEquals(expected.toString(), JsonElement.readFrom(new Utf8JsonReader(direct)).toString());
+        assertEquals(0, direct.position());
+    }
+
+    @Test
+    public void decodesSequencesSplitBetweenReads() throws IOException {
+        byte[] bytes = JSON.getBytes("UTF-8");
+        InputStream oneByteAtATime = new FilterInputStream(new ByteArrayInputStream(bytes)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+        assertEquals(JsonElement.readFrom(JSON).toString(),
+                JsonElement.readFrom(oneByteAtATime).toString());
+    }
+
+    @Test
+    public void tokens() throws IOException {
+        JsonReader reader = new Utf8JsonReader("\ufeff{\"a\": [\"\u00e9\", 2]}".getBytes("UTF-8"));
+        reader.beginObject();
+        assertEquals("a", reader.nextName());
+        reader.beginArray();
+        assertEquals(JsonToken.STRING, reader.peek());
+        assertEquals("\u00e9", reader.nextString());
+        assertEquals(JsonToken.NUMBER, reader.peek());
+        assertEquals(2, reader.nextInt());
+        assertEquals("$.a[2]", reader.getPath());
+        reader.endArray();
+        reader.endObject();
+        assertEquals(JsonToken.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    public void malformedUtf8IsReplaced() throws IOException {
+        byte[] bytes = {'[', '"', (byte) 0xff, 'a', (byte) 0xc3, '"', ']'};
+        assertEquals("\ufffda\ufffd", JsonElement.readFrom(bytes).asJsonArray().getString(0));
+    }
+
+    @Test
+    public void malformedUtf8IsReplacedLikeInputStreamReader() throws IOException {
+        // truncated sequences, an encoded surrogate and an overlong form, after
+        // an escape so that they are decoded byte by byte
+        byte[] bytes = {'[', '"', '\\', 'n', (byte) 0xf0, (byte) 0x9f, 'a', (byte) 0xe2, (byte) 0x82, 'b',
+                (byte) 0xed, (byte) 0xa0, (byte) 0x80, (byte) 0xe0, (byte) 0x80, (byte) 0xf0, (byte) 0x9f,
+                (byte) 0x98, '"', ']'};
+        String expected = new String(bytes, 4, bytes.length - 6, "UTF-8");
+        assertEquals("\ufffda\ufffdb\ufffd\ufffd\ufffd\ufffd", expected);
+        assertEquals("\n" + expected, JsonElement.readFrom(bytes).asJsonArray().getString(0));
+        assertEquals("\n" + expected,
+                JsonElement.readFrom(new ByteArrayInputStream(bytes)).asJsonArray().getString(0));
+    }
+
+    @Test
+    public void reportsErrorLocation() throws IOException {
+        try {
+            JsonElement.readFrom("{\n\"a\" 1}".getBytes("UTF-8"));
+            fail();
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().startsWith("Expected ':' at line: 2, column: 6, path: $.a"));
+        }
+    }
+
+    @Test
+    public void readsMappedFileAcrossWindows() throws IOException {
+        File file = File.createTempFile("mapped", ".json");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(JSON.getBytes("UTF-8"));
+        out.close();
+
+        String expected = JsonElement.readFrom(JSON).toString();
+        assertEquals(expected, JsonElement.readFrom(file).toString());
+        for (int windowSize = 24; windowSize < 40; windowSize++) {
+            JsonReader reader = new MappedJsonReader(new FileInputStream(file).getChannel(), windowSize);
+            assertEquals(expected, JsonElement.readFrom(reader).toString());
+            reader.close();
+        }
+    }
+
+    @Test
+    public void zeroCopyStringsReferToInput() throws IOException {
+        byte[] bytes = "[\"abc\", \"caf\u00c3\u00a9\", \"a\\\"b\", \"abc\"]".getBytes("ISO-8859-1");
+        Utf8JsonReader reader = new Utf8JsonReader(bytes);
+        reader.setZeroCopyStrings(true);
+        JsonArray array = JsonElement.readFrom(reader).asJsonArray();
+
+        JsonString abc = (JsonString) array.get(0);
+        CharSequence chars = abc.asCharSequence();
+        assertEquals(3, chars.length());
+        assertEquals("bc", chars.subSequence(1, 3).toString());
+        assertEquals("abc".hashCode(), abc.hashCode());
+        assertTrue(abc.contentEquals("abc"));
+        assertEquals(abc, array.get(3));
+        assertEquals(new JsonString("abc"), abc);
+        assertEquals(abc, new JsonString("abc"));
+        assertEquals(abc, "abc");
+
+        assertEquals("caf\u00e9", array.getString(1));
+        assertEquals("caf\u00e9".hashCode(), array.get(1).hashCode());
+        assertEquals("a\"b", array.getString(2));
+        assertEquals(JsonElement.readFrom("[\"abc\", \"caf\u00e9\", \"a\\\"b\", \"abc\"]"), array);
+
+        bytes[2] = 'x';
+        assertEquals("xbc", chars.toString());
+    }
+
+    @Test
+    public void lazyStringsCompareWithoutCopying() throws IOException {
+        JsonObject lazy = JsonElement.readLazily(JSON.getBytes("UTF-8")).asJsonObject();
+        JsonObject eager = JsonElement.readFrom(JSON).asJsonObject();
+        JsonString name = (JsonString) lazy.get("name");
+        assertTrue(name.contentEquals(eager.getString("name")));
+        assertEquals(eager.get("name").hashCode(), name.hashCode());
+        assertEquals(eager.get("escaped"), lazy.get("escaped"));
+        assertEquals(eager.getString("name"), name.asCharSequence().toString());
+    }
+}
@@ -0,0 +1,181 @@
+package io.apptik.json.test;
+
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import io.apptik.json.JsonArray;
+import io.apptik.json.JsonElement;
+import io.apptik.json.JsonObject;
+import io.apptik.json.JsonWriter;
+import io.apptik.json.SerializedName;
+import io.apptik.json.Utf8JsonWriter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class Utf8JsonWriterTest {
+
+    private static final String JSON = "{\"name\":\"caf\u00e9 \u20ac \ud83d\ude00 \u2028 \u2028<a href='x'>&\",\"escaped\":\"a\\\"b\\\\c\\n\\u0001\","
+            + "\"numbers\":[0,-1,9223372036854775807,1.5E10,12345678901234567890],"
+            + "\"flags\":[true,false,null],\"nested\":{\"\u00fcber\":{}}}";
+
+    @Test
+    public void writesSameBytesAsEncodedCharWriter() throws IOException {
+        JsonElement element = JsonElement.readFrom(JSON);
+        for (int htmlSafe = 0; htmlSafe < 2; htmlSafe++) {
+            for (String indent : new String[]{"", "  "}) {
+                StringWriter chars = new StringWriter();
+                JsonWriter expected = new JsonWriter(chars);
+                expected.setHtmlSafe(htmlSafe == 1);
+                expected.setIndent(indent);
+                element.write(expected);
+                byte[] bytes = chars.toString().getBytes("UTF-8");
+
+                for (int bufferSize = 16; bufferSize < 40; bufferSize++) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    JsonWriter writer = new Utf8JsonWriter(out, bufferSize);
+                    writer.setHtmlSafe(htmlSafe == 1);
+                    writer.setIndent(indent);
+                    element.write(writer);
+                    writer.close();
+                    assertArrayEquals(bytes, out.toByteArray());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void encodesUnpairedSurrogatesLikeString() throws IOException {
+        String value = "a\ud83d b\ude00\ud83d";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Utf8JsonWriter(out).beginArray().value(value).endArray().flush();
+        assertArrayEquals(("[\"" + value + "\"]").getBytes("UTF-8"), out.toByteArray());
+    }
+
+    @Test
+    public void writesIntoByteBuffers() throws IOException {
+        byte[] expected = JSON.replace("\u2028", "\\u2028").getBytes("UTF-8");
+        JsonElement element = JsonElement.readFrom(JSON);
+        ByteBuffer[] targets = {ByteBuffer.allocate(1024), ByteBuffer.allocateDirect(1024)};
+        for (ByteBuffer target : targets) {
+            target.position(3);
+            Utf8JsonWriter writer = new Utf8JsonWriter(target);
+            element.write(writer);
+            writer.flush();
+            assertEquals(3 + expected.length, target.position());
+            target.flip().position(3);
+            byte[] written = new byte[target.remaining()];
+            target.get(written);
+            assertArrayEquals(expected, written);
+
+            target.clear();
+            writer.reset(target);
+            writer.value(true);
+            writer.flush();
+            assertEquals(4, target.position());
+        }
+    }
+
+    @Test
+    public void failsWhenByteBufferIsFull() throws IOException {
+        ByteBuffer target = ByteBuffer.allocate(8);
+        JsonWriter writer = new Utf8JsonWriter(target);
+        try {
+            writer.value("more than eight bytes");
+            fail();
+        } catch (BufferOverflowException expected) {
+        }
+    }
+
+    @Test
+    public void fillsByteBufferExactly() throws IOException {
+        String[] documents = {"[1]", "{\"a\":\"b\"}", JSON.replace("\u2028", "\\u2028")};
+        for (String json : documents) {
+            JsonElement element = JsonElement.readFrom(json);
+            byte[] expected = json.getBytes("UTF-8");
+            ByteBuffer[] targets = {ByteBuffer.allocate(expected.length), ByteBuffer.allocateDirect(expected.length)};
+            for (ByteBuffer target : targets) {
+                Utf8JsonWriter writer = new Utf8JsonWriter(target);
+                element.write(writer);
+                writer.flush();
+                assertEquals(json, expected.length, target.position());
+                target.flip();
+                byte[] written = new byte[target.remaining()];
+                target.get(written);
+                assertArrayEquals(json, expected, written);
+            }
+
+            targets = new ByteBuffer[]{ByteBuffer.allocate(expected.length - 1),
+                    ByteBuffer.allocateDirect(expected.length - 1)};
+            for (ByteBuffer target : targets) {
+                Utf8JsonWriter writer = new Utf8JsonWriter(target);
+                try {
+                    element.write(writer);
+                    writer.flush();
+                    fail(json);
+                } catch (BufferOverflowException expectedException) {
+                }
+            }
+        }
+    }
+
+    @Test
+    public void elementWritesToOutputStream() throws IOException {
+        JsonElement element = JsonElement.readFrom(JSON);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        element.writeTo(out);
+        element.writeTo(out);
+        byte[] once = element.toString().getBytes("UTF-8");
+        byte[] twice = out.toByteArray();
+        assertArrayEquals(once, Arrays.copyOfRange(twice, 0, once.length));
+        assertArrayEquals(once, Arrays.copyOfRange(twice, once.length, twice.length));
+    }
+
+    @Test
+    public void serializedNames() throws IOException {
+        SerializedName plain = SerializedName.of("id");
+        SerializedName escaped = SerializedName.of("<\"caf\u00e9\">");
+        assertEquals("<\"caf\u00e9\">", escaped.toString());
+        for (int htmlSafe = 0; htmlSafe < 2; htmlSafe++) {
+            StringWriter expected = new StringWriter();
+            StringWriter chars = new StringWriter();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            JsonWriter[] writers = {new JsonWriter(expected), new JsonWriter(chars), new Utf8JsonWriter(bytes, 16)};
+            for (int i = 0; i < writers.length; i++) {
+                JsonWriter writer = writers[i];
+                writer.setHtmlSafe(htmlSafe == 1);
+                writer.setSerializeNulls(false);
+                writer.beginObject();
+                if (i == 0) {
+                    writer.name("id").value(1).name("skipped").nullValue().name(escaped.toString()).value(true);
+                } else {
+                    writer.name(plain).value(1).name(SerializedName.of("skipped")).nullValue().name(escaped).value(true);
+                }
+                writer.endObject().flush();
+            }
+            assertEquals(expected.toString(), chars.toString());
+            assertEquals(expected.toString(), bytes.toString("UTF-8"));
+        }
+    }
+
+    @Test
+    public void repeatedMemberNamesAreWrittenOnce() throws IOException {
+        JsonArray array = new JsonArray();
+        for (int i = 0; i < 3; i++) {
+            array.put(new JsonObject().put("a", i).put("b\n", "<" + i + ">"));
+        }
+        String expected = "[{\"a\":0,\"b\\n\":\"<0>\"},{\"a\":1,\"b\\n\":\"<1>\"},{\"a\":2,\"b\\n\":\"<2>\"}]";
+        assertEquals(expected, array.toString());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        array.writeTo(bytes);
+        assertEquals(expected, bytes.toString("UTF-8"));
+    }
+}
@@ -0,0 +1,133 @@
+package io.apptik.json.perf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import io.apptik.json.JsonElement;
+import io.apptik.json.JsonReader;
+import io.apptik.json.MappedJsonReader;
+
+/**
+ * Compares parsing a large file through a memory mapped {@link MappedJsonReader}
+ * against the usual {@link java.io.Reader} based {@link JsonReader}. The file is
+ * a single top-level array of {@link JsonInput#MediumObject} documents. The
+ * tokens are consumed without building a tree so that the heap stays small
+ * even for the largest inputs.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class MappedReadPerf {
+
+    @Param({
+            "100",
+            "1000",
+            "5000"
+    })
+    public int megabytes;
+
+    File file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = File.createTempFile("jjson-perf", ".json");
+        file.deleteOnExit();
+        byte[] element = JsonElement.readFrom(JsonInput.MediumObject.create()).toString().getBytes("UTF-8");
+        long size = (long) megabytes * 1024 * 1024;
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        try {
+            out.write('[');
+            for (long written = 1; written < size; written += element.length + 1) {
+                if (written > 1) {
+                    out.write(',');
+                }
+                out.write(element);
+            }
+            out.write(']');
+        } finally {
+            out.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public long mappedRead() throws IOException {
+        return consume(new MappedJsonReader(file));
+    }
+
+    @Benchmark
+    public long readerRead() throws IOException {
+        return consume(new JsonReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), "UTF-8"))));
+    }
+
+    /**
+     * Reads every token of the document and returns a checksum of the values.
+     */
+    private static long consume(JsonReader reader) throws IOException {
+        long checksum = 0;
+        int depth = 0;
+        try {
+            do {
+                switch (reader.peek()) {
+                    case BEGIN_ARRAY:
+                        reader.beginArray();
+                        depth++;
+                        break;
+                    case END_ARRAY:
+                        reader.endArray();
+                        depth--;
+                        break;
+                    case BEGIN_OBJECT:
+                        reader.beginObject();
+                        depth++;
+                        break;
+                    case END_OBJECT:
+                        reader.endObject();
+                        depth--;
+                        break;
+                    case NAME:
+                        checksum += reader.nextName().length();
+                        break;
+                    case STRING:
+                    case NUMBER:
+                        checksum += reader.nextString().length();
+                        break;
+                    case BOOLEAN:
+                        checksum += reader.nextBoolean() ? 1 : 0;
+                        break;
+                    case NULL:
+                        reader.nextNull();
+                        break;
+                    default:
+                        throw new IllegalStateException();
+                }
+            } while (depth > 0);
+        } finally {
+            reader.close();
+        }
+        return checksum;
+    }
+}